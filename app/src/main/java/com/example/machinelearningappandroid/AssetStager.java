@@ -0,0 +1,192 @@
+package com.example.machinelearningappandroid;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+//Copies model files out of the APK assets into the files directory so that PyTorch can load them from a path
+//A small manifest records the size and checksum of every staged file so that a partial copy is never reused
+public class AssetStager {
+    private static final String MANIFEST_NAME = "asset_manifest.properties";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int CHECKSUM_CHUNK_SIZE = 64 * 1024;
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    private static Properties manifest = null;
+
+    //Returns the path of a fully staged copy of the asset, copying it first if it is missing or does not match the manifest
+    public static synchronized String stage(Context context, String assetName) throws IOException {
+        File file = new File(context.getFilesDir(), assetName);
+        String sourceStamp = getSourceStamp(context, assetName);
+        Properties stagedFiles = getManifest(context);
+
+        //Only a size and stamp comparison is needed here, the checksum was verified when the file was staged
+        if (file.exists() && sourceStamp.equals(stagedFiles.getProperty(assetName + ".source"))
+                && String.valueOf(file.length()).equals(stagedFiles.getProperty(assetName + ".size"))) {
+            return file.getAbsolutePath();
+        }
+
+        long startTime = System.currentTimeMillis();
+        File tempFile = new File(context.getFilesDir(), assetName + TEMP_SUFFIX);
+        long size = copyAsset(context, assetName, tempFile);
+        long checksum = checksumFile(tempFile);
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Unable to move staged asset into place: " + assetName);
+        }
+
+        stagedFiles.setProperty(assetName + ".size", String.valueOf(size));
+        stagedFiles.setProperty(assetName + ".crc32", String.valueOf(checksum));
+        stagedFiles.setProperty(assetName + ".source", sourceStamp);
+        saveManifest(context);
+        Log.i(MainActivity.APP_TAG, "Staged " + assetName + " (" + size + " bytes) in "
+                + (System.currentTimeMillis() - startTime) + "ms");
+        return file.getAbsolutePath();
+    }
+
+    //Forgets a staged file so that the next call to stage copies it again, used when a model fails to load
+    public static synchronized void invalidate(Context context, String assetName) {
+        new File(context.getFilesDir(), assetName).delete();
+        Properties stagedFiles = getManifest(context);
+        stagedFiles.remove(assetName + ".size");
+        stagedFiles.remove(assetName + ".crc32");
+        stagedFiles.remove(assetName + ".source");
+        saveManifest(context);
+    }
+
+    //Recomputes the checksum of a staged file and compares it with the one stored in the manifest
+    public static synchronized boolean verify(Context context, String assetName) {
+        File file = new File(context.getFilesDir(), assetName);
+        String expected = getManifest(context).getProperty(assetName + ".crc32");
+        if (expected == null || !file.exists()) {
+            return false;
+        }
+        try {
+            return expected.equals(String.valueOf(checksumFile(file)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static synchronized String getChecksum(Context context, String assetName) {
+        return getManifest(context).getProperty(assetName + ".crc32");
+    }
+
+    //Copies the asset into the destination file, using a channel to channel transfer when the asset is stored uncompressed
+    private static long copyAsset(Context context, String assetName, File destination) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(destination);
+             FileChannel outputChannel = outputStream.getChannel()) {
+            long size;
+            try (AssetFileDescriptor descriptor = context.getAssets().openFd(assetName);
+                 FileInputStream inputStream = descriptor.createInputStream();
+                 FileChannel inputChannel = inputStream.getChannel()) {
+                size = descriptor.getLength();
+                inputChannel.position(descriptor.getStartOffset());
+                transfer(inputChannel, outputChannel, size);
+            } catch (FileNotFoundException e) {
+                //Compressed assets can't be opened as a file descriptor so fall back to reading them as a stream
+                try (InputStream inputStream = context.getAssets().open(assetName);
+                     ReadableByteChannel inputChannel = Channels.newChannel(inputStream)) {
+                    size = transfer(inputChannel, outputChannel, Long.MAX_VALUE);
+                }
+            }
+            outputChannel.force(true);
+            return size;
+        }
+    }
+
+    //Transfers up to count bytes, transferFrom can return early so keep going until the source is exhausted
+    private static long transfer(ReadableByteChannel source, FileChannel destination, long count) throws IOException {
+        long position = 0;
+        while (position < count) {
+            long transferred = destination.transferFrom(source, position, Math.min(count - position, TRANSFER_CHUNK_SIZE));
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+        if (count != Long.MAX_VALUE && position != count) {
+            throw new IOException("Asset copy ended early after " + position + " of " + count + " bytes");
+        }
+        return position;
+    }
+
+    private static long checksumFile(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[CHECKSUM_CHUNK_SIZE];
+        try (FileInputStream inputStream = new FileInputStream(file);
+             FileChannel channel = inputStream.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.hasRemaining()) {
+                int length = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, length);
+                crc.update(chunk, 0, length);
+            }
+        }
+        return crc.getValue();
+    }
+
+    //Identifies the version of the asset in the installed APK so that an app update causes models to be staged again
+    private static String getSourceStamp(Context context, String assetName) {
+        long assetLength = -1;
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(assetName)) {
+            assetLength = descriptor.getLength();
+        } catch (IOException e) {
+            //Compressed asset, the install time alone identifies it
+        }
+
+        long installTime = 0;
+        try {
+            installTime = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(MainActivity.APP_TAG, "Unable to read package info", e);
+        }
+        return assetLength + ":" + installTime;
+    }
+
+    private static Properties getManifest(Context context) {
+        if (manifest == null) {
+            manifest = new Properties();
+            File manifestFile = new File(context.getFilesDir(), MANIFEST_NAME);
+            if (manifestFile.exists()) {
+                try (InputStream inputStream = new FileInputStream(manifestFile)) {
+                    manifest.load(inputStream);
+                } catch (IOException e) {
+                    Log.e(MainActivity.APP_TAG, "Asset manifest is unreadable, all assets will be staged again", e);
+                    manifest.clear();
+                }
+            }
+        }
+        return manifest;
+    }
+
+    //Written to a temp file and renamed so that the manifest itself can never be left half written
+    private static void saveManifest(Context context) {
+        File manifestFile = new File(context.getFilesDir(), MANIFEST_NAME);
+        File tempFile = new File(context.getFilesDir(), MANIFEST_NAME + TEMP_SUFFIX);
+        try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+            manifest.store(outputStream, null);
+        } catch (IOException e) {
+            Log.e(MainActivity.APP_TAG, "Unable to write asset manifest", e);
+            return;
+        }
+        if (!tempFile.renameTo(manifestFile)) {
+            Log.e(MainActivity.APP_TAG, "Unable to move asset manifest into place");
+        }
+    }
+}
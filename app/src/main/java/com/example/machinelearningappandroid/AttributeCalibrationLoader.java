@@ -0,0 +1,54 @@
+package com.example.machinelearningappandroid;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//Loads the attribute thresholds once per process. A calibration file in the files directory takes priority over the
+//one bundled in the assets, so thresholds can be tuned on a device with adb without rebuilding the app
+public class AttributeCalibrationLoader {
+    public static final String CALIBRATION_FILE = "attribute_calibration.txt";
+
+    private static AttributeCalibration calibration = null;
+
+    public static synchronized AttributeCalibration get(Context context) {
+        if (calibration == null) {
+            calibration = load(context);
+        }
+        return calibration;
+    }
+
+    //Makes the next call to get read the calibration file again
+    public static synchronized void reload() {
+        calibration = null;
+    }
+
+    private static AttributeCalibration load(Context context) {
+        File overrideFile = new File(context.getFilesDir(), CALIBRATION_FILE);
+        try {
+            if (overrideFile.exists()) {
+                return read(new FileInputStream(overrideFile));
+            }
+            if (Arrays.asList(context.getAssets().list("")).contains(CALIBRATION_FILE)) {
+                return read(context.getAssets().open(CALIBRATION_FILE));
+            }
+        } catch (IOException e) {
+            Log.e(MainActivity.APP_TAG, "Unable to read attribute calibration, using the default threshold", e);
+        }
+        return AttributeCalibration.uniform(MainActivity.ATTRIBUTES, MainActivity.ATTRIBUTES_THRESHOLD, false);
+    }
+
+    private static AttributeCalibration read(InputStream inputStream) throws IOException {
+        try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+            return AttributeCalibration.read(reader, MainActivity.ATTRIBUTES, MainActivity.ATTRIBUTES_THRESHOLD);
+        }
+    }
+}
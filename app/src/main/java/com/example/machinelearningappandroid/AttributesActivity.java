@@ -15,7 +15,7 @@ import androidx.navigation.Navigation;
 import androidx.navigation.ui.AppBarConfiguration;
 import androidx.navigation.ui.NavigationUI;
 
-import java.util.ArrayList;
+import java.nio.FloatBuffer;
 
 public class AttributesActivity extends AppCompatActivity {
     @Override
@@ -27,18 +27,30 @@ public class AttributesActivity extends AppCompatActivity {
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         setTitle("Attributes Model Output");
 
+        //Scores are read from the result stored by MainActivity rather than being passed in the intent
         Bundle extras = getIntent().getExtras();
-        ArrayList<String> faceAttributes = new ArrayList<String>();
-        if (extras != null) {
-            faceAttributes = (ArrayList<String>) extras.get("faceAttributes");
+        AttributeScores scores = null;
+        if (extras != null && extras.getString("resultKey") != null) {
+            ResultRecord record = InferenceScheduler.getInstance(this).getStoredResult(extras.getString("resultKey"));
+            if (record != null && record.hasAttributes()) {
+                scores = AttributeScores.fromOutput(FloatBuffer.wrap(record.getAttributes()), 0,
+                        AttributeCalibrationLoader.get(this));
+            } else {
+                Log.e(MainActivity.APP_TAG, "Attributes result is no longer available");
+            }
         }
 
         TextView attributesList = findViewById(R.id.attributes_list_text);
 
-        String attributesText = "";
-
-        for (String attribute: faceAttributes) {
-            attributesText += attribute + "\n\n";
+        //Most confident attributes are listed first
+        StringBuilder attributesText = new StringBuilder();
+        if (scores != null) {
+            int[] present = new int[scores.size()];
+            int count = scores.getPresent(present);
+            for (int i = 0; i < count; i++) {
+                attributesText.append(scores.getName(present[i])).append(" (")
+                        .append(Math.round(scores.getProbability(present[i]) * 100)).append("%)\n\n");
+            }
         }
 
         attributesList.setText(attributesText);
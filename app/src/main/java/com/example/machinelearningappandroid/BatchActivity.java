@@ -0,0 +1,147 @@
+package com.example.machinelearningappandroid;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.RadioGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class BatchActivity extends AppCompatActivity {
+    //Batch sizes that are timed when comparing, and how many of the selected images are used for it
+    private static final int[] COMPARED_BATCH_SIZES = new int[] {1, 2, 4, 8};
+    private static final int MAX_COMPARED_IMAGES = 16;
+
+    private final InferenceEngine inferenceEngine = new InferenceEngine();
+    private List<Uri> selectedImages = new ArrayList<>();
+    private ActivityResultLauncher<String> selectImagesLauncher;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_batch);
+        setTitle("Batch Process Images");
+
+        //Add back button in appBar so that we can go back to selection view
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        final Button selectButton = findViewById(R.id.batch_select_button);
+        final Button runButton = findViewById(R.id.batch_run_button);
+        final Button compareButton = findViewById(R.id.batch_compare_button);
+        final TextView resultsText = findViewById(R.id.batch_results_text);
+
+        selectImagesLauncher = registerForActivityResult(new ActivityResultContracts.GetMultipleContents(), uris -> {
+            selectedImages = uris;
+            resultsText.setText(uris.size() + " images selected\n");
+            runButton.setEnabled(!uris.isEmpty());
+            compareButton.setEnabled(!uris.isEmpty());
+        });
+
+        selectButton.setOnClickListener(v -> selectImagesLauncher.launch("image/*"));
+
+        runButton.setOnClickListener(v -> {
+            final ModelType modelType = getSelectedModelType();
+            final int batchSize = getBatchSize();
+            final List<Uri> images = selectedImages;
+            final File outputFile = getOutputFile(modelType);
+            setButtonsEnabled(false);
+            ModelRegistry.getInstance(this).warm(RuntimePolicy.getInstance(this).getVariant(modelType));
+
+            inferenceEngine.submit(() -> createRunner(modelType, batchSize).run(images, outputFile,
+                    (processed, total) -> runOnUiThread(() -> resultsText.setText(
+                            "Processed " + processed + " of " + total + " images\n"))),
+                    stats -> {
+                        setButtonsEnabled(true);
+                        resultsText.setText(describe(stats) + "\nResults written to " + outputFile.getAbsolutePath());
+                    }, e -> onBatchFailed(e));
+        });
+
+        //Runs a subset of the images at each batch size so the fastest one for this device can be picked
+        compareButton.setOnClickListener(v -> {
+            final ModelType modelType = getSelectedModelType();
+            final List<Uri> images = selectedImages.subList(0, Math.min(MAX_COMPARED_IMAGES, selectedImages.size()));
+            setButtonsEnabled(false);
+            resultsText.setText("Comparing batch sizes on " + images.size() + " images...\n");
+            ModelRegistry.getInstance(this).warm(RuntimePolicy.getInstance(this).getVariant(modelType));
+
+            inferenceEngine.submit(() -> {
+                //One untimed image first, so the model's cold load isn't counted against the first batch size
+                createRunner(modelType, 1).run(images.subList(0, 1), null, null);
+                ArrayList<BatchInferenceRunner.BatchStats> results = new ArrayList<>();
+                for (int batchSize : COMPARED_BATCH_SIZES) {
+                    BatchInferenceRunner.BatchStats stats = createRunner(modelType, batchSize).run(images, null, null);
+                    results.add(stats);
+                    runOnUiThread(() -> resultsText.append(describe(stats) + "\n"));
+                }
+                return results;
+            }, results -> setButtonsEnabled(true), e -> onBatchFailed(e));
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        inferenceEngine.shutdown();
+    }
+
+    private BatchInferenceRunner createRunner(ModelType modelType, int batchSize) {
+        return new BatchInferenceRunner(this, modelType, batchSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    private ModelType getSelectedModelType() {
+        RadioGroup modelGroup = findViewById(R.id.batch_model_group);
+        int checkedId = modelGroup.getCheckedRadioButtonId();
+        if (checkedId == R.id.batch_model_attributes) {
+            return ModelType.ATTRIBUTES;
+        } else if (checkedId == R.id.batch_model_joint) {
+            return ModelType.JOINT;
+        }
+        return ModelType.SEGMENTATION;
+    }
+
+    private int getBatchSize() {
+        EditText batchSizeInput = findViewById(R.id.batch_size_input);
+        try {
+            return Math.max(1, Integer.parseInt(batchSizeInput.getText().toString()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    //Results go in the app's external files folder so they can be pulled off the device with adb
+    private File getOutputFile(ModelType modelType) {
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss", Locale.ENGLISH).format(System.currentTimeMillis());
+        File directory = getExternalFilesDir("batch");
+        return new File(directory, "batch-" + modelType.name().toLowerCase(Locale.ENGLISH) + "-" + timestamp + ".bin");
+    }
+
+    private static String describe(BatchInferenceRunner.BatchStats stats) {
+        return String.format(Locale.ENGLISH, "Batch size %d: %.2f images/s (%d images in %d ms, %d ms in forward, %d failed)",
+                stats.batchSize, stats.getImagesPerSecond(), stats.images, stats.totalMillis, stats.forwardMillis,
+                stats.failedImages);
+    }
+
+    private void setButtonsEnabled(boolean enabled) {
+        findViewById(R.id.batch_select_button).setEnabled(enabled);
+        findViewById(R.id.batch_run_button).setEnabled(enabled && !selectedImages.isEmpty());
+        findViewById(R.id.batch_compare_button).setEnabled(enabled && !selectedImages.isEmpty());
+    }
+
+    private void onBatchFailed(Exception e) {
+        Log.e(MainActivity.APP_TAG, "Error running batch", e);
+        Toast.makeText(getBaseContext(), "Batch processing failed", Toast.LENGTH_SHORT).show();
+        setButtonsEnabled(true);
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.machinelearningappandroid;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.pytorch.Tensor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//Runs a model over a list of images, decoding them in parallel and passing them through the model in batches
+//Results are streamed to a compact binary file as each batch finishes
+//RuntimePolicy chooses the variant for each batch, so images in one file can have been run at different input sizes
+public class BatchInferenceRunner {
+    public static final int FILE_MAGIC = 0x4D4C4252; //"MLBR"
+    public static final int FILE_VERSION = 2;
+
+    public interface ProgressListener {
+        //Called on the thread that is running the batch
+        void onProgress(int imagesProcessed, int totalImages);
+    }
+
+    //Throughput of a finished run
+    public static class BatchStats {
+        public int batchSize;
+        public int images;
+        public int failedImages;
+        public long totalMillis;
+        public long forwardMillis;
+
+        public float getImagesPerSecond() {
+            return totalMillis == 0 ? 0 : images * 1000f / totalMillis;
+        }
+    }
+
+    //Pixels and input writer of one decode thread, reused for every image that thread decodes
+    private static class DecodeBuffers {
+        int[] pixels = new int[0];
+        TensorInputWriter writer = null;
+    }
+
+    private final InputImageDecoder imageDecoder;
+    private final RuntimePolicy runtimePolicy;
+    private final ModelPipelines pipelines;
+    private final ModelType modelType;
+    private final int decodeThreads;
+    private final ThreadLocal<DecodeBuffers> decodeBuffers = new ThreadLocal<DecodeBuffers>() {
+        @Override
+        protected DecodeBuffers initialValue() {
+            return new DecodeBuffers();
+        }
+    };
+    private int batchSize;
+
+    public BatchInferenceRunner(Context context, ModelType modelType, int batchSize, int decodeThreads) {
+        this.imageDecoder = InputImageDecoder.getInstance(context);
+        this.runtimePolicy = RuntimePolicy.getInstance(context);
+        this.pipelines = new ModelPipelines(ModelRegistry.getInstance(context), MainActivity.SEGMENTATION_THRESHOLD);
+        this.modelType = modelType;
+        this.batchSize = batchSize;
+        this.decodeThreads = decodeThreads;
+    }
+
+    //Blocks until every image has been processed, outputFile can be null when only the timings are wanted
+    public BatchStats run(List<Uri> uris, File outputFile, ProgressListener listener) throws Exception {
+        FloatBuffer batchBuffer = null;
+        final ExecutorService decodeExecutor = Executors.newFixedThreadPool(decodeThreads);
+
+        BatchStats stats = new BatchStats();
+        long startTime = SystemClock.elapsedRealtime();
+        DataOutputStream output = null;
+        try {
+            if (outputFile != null) {
+                output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+                output.writeInt(FILE_MAGIC);
+                output.writeInt(FILE_VERSION);
+                output.writeInt(modelType.ordinal());
+                output.writeInt(uris.size());
+            }
+
+            for (int batchStart = 0; batchStart < uris.size(); batchStart += batchSize) {
+                List<Uri> batchUris = uris.subList(batchStart, Math.min(batchStart + batchSize, uris.size()));
+                ModelVariant variant = runtimePolicy.choose(modelType);
+                int inputSize = variant.inputSize;
+                int tensorSize = 3 * inputSize * inputSize;
+                //Only grows, a batch at a smaller input size uses the start of the buffer
+                if (batchBuffer == null || batchBuffer.capacity() < batchSize * tensorSize) {
+                    batchBuffer = Tensor.allocateFloatBuffer(batchSize * tensorSize);
+                }
+
+                //Each image is decoded and written into its own slot of the batch buffer on the decode threads
+                ArrayList<Future<Boolean>> decodes = new ArrayList<>();
+                for (int i = 0; i < batchUris.size(); i++) {
+                    decodes.add(decodeExecutor.submit(decodeTask(batchUris.get(i), inputSize, batchBuffer,
+                            i * tensorSize)));
+                }
+                boolean[] decoded = new boolean[batchUris.size()];
+                for (int i = 0; i < decodes.size(); i++) {
+                    decoded[i] = decodes.get(i).get();
+                    if (!decoded[i]) {
+                        stats.failedImages++;
+                    }
+                }
+
+                LiteModuleBackend backend = pipelines.getBackend(variant);
+                InferenceBackend.Outputs[] outputs;
+                long forwardStart = SystemClock.elapsedRealtime();
+                runtimePolicy.beginForward(modelType);
+                try {
+                    outputs = forward(backend, batchBuffer, batchUris.size(), inputSize);
+                } finally {
+                    runtimePolicy.endForward();
+                }
+                long forwardMillis = SystemClock.elapsedRealtime() - forwardStart;
+                stats.forwardMillis += forwardMillis;
+                //The policy's latency budget is for one image, however many were run together
+                runtimePolicy.recordLatency(modelType, forwardMillis / batchUris.size());
+
+                if (output != null) {
+                    writeBatch(output, batchUris, decoded, outputs);
+                }
+                stats.images += batchUris.size();
+                if (listener != null) {
+                    listener.onProgress(stats.images, uris.size());
+                }
+            }
+        } finally {
+            decodeExecutor.shutdownNow();
+            if (output != null) {
+                output.close();
+            }
+        }
+        stats.totalMillis = SystemClock.elapsedRealtime() - startTime;
+        //Reports the batch size that was actually used, in case the model forced a fall back to single images
+        stats.batchSize = batchSize;
+        return stats;
+    }
+
+    //Runs one batch through the model, falling back to one image at a time if the model only accepts a batch of one
+    private InferenceBackend.Outputs[] forward(LiteModuleBackend backend, FloatBuffer batchBuffer, int count,
+                                               int inputSize) {
+        int tensorSize = 3 * inputSize * inputSize;
+        if (batchSize > 1) {
+            try {
+                return backend.forwardBatch(slice(batchBuffer, 0, count, tensorSize), count, inputSize);
+            } catch (RuntimeException e) {
+                Log.e(MainActivity.APP_TAG, "Model does not accept batches of " + count + ", running images one at a time", e);
+                batchSize = 1;
+            }
+        }
+
+        InferenceBackend.Outputs[] outputs = new InferenceBackend.Outputs[count];
+        for (int i = 0; i < count; i++) {
+            outputs[i] = backend.forward(slice(batchBuffer, i, 1, tensorSize), inputSize);
+        }
+        return outputs;
+    }
+
+    //The part of the batch buffer that holds count images from first, without copying it
+    private static FloatBuffer slice(FloatBuffer batchBuffer, int first, int count, int tensorSize) {
+        FloatBuffer view = batchBuffer.duplicate();
+        view.position(first * tensorSize);
+        view.limit((first + count) * tensorSize);
+        return view.slice();
+    }
+
+    private Callable<Boolean> decodeTask(Uri uri, int inputSize, FloatBuffer batchBuffer, int offset) {
+        return () -> {
+            Bitmap bitmap = decodeSubsampled(uri, inputSize);
+            if (bitmap == null) {
+                //Zeros are passed through the model for images that couldn't be read, their results are marked as failed
+                for (int i = 0; i < 3 * inputSize * inputSize; i++) {
+                    batchBuffer.put(offset + i, 0f);
+                }
+                return false;
+            }
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            DecodeBuffers buffers = decodeBuffers.get();
+            if (buffers.pixels.length < width * height) {
+                buffers.pixels = new int[width * height];
+            }
+            //A new writer is only needed when RuntimePolicy moves the batch to a variant of another input size
+            if (buffers.writer == null || buffers.writer.getOutputSize() != inputSize) {
+                buffers.writer = new TensorInputWriter(inputSize, ModelPipeline.NORM_MEAN_RGB,
+                        ModelPipeline.NORM_STD_RGB);
+            }
+            bitmap.getPixels(buffers.pixels, 0, width, 0, 0, width, height);
+            //The next image decoded on any thread can draw into this bitmap instead of allocating its own
+            imageDecoder.release(bitmap);
+            buffers.writer.writeArgb(buffers.pixels, width, height, 0, batchBuffer, offset);
+            return true;
+        };
+    }
+
+    //Only the centre square the model sees is decoded, at the smallest power of two subsample that still covers it
+    private Bitmap decodeSubsampled(Uri uri, int inputSize) {
+        try {
+            return imageDecoder.decodeCentreSquare(uri, inputSize);
+        } catch (IOException e) {
+            Log.e(MainActivity.APP_TAG, "Error decoding " + uri, e);
+            return null;
+        }
+    }
+
+    //Each image record is its uri, whether it could be decoded, then the model output for the selected model type
+    private void writeBatch(DataOutputStream output, List<Uri> batchUris, boolean[] decoded,
+                            InferenceBackend.Outputs[] outputs) throws IOException {
+        for (int i = 0; i < batchUris.size(); i++) {
+            output.writeUTF(batchUris.get(i).toString());
+            output.writeBoolean(decoded[i]);
+            if (outputs[i].segmentation != null) {
+                writeSegmentation(output, outputs[i]);
+            }
+            if (outputs[i].attributes != null) {
+                writeAttributes(output, outputs[i]);
+            }
+        }
+    }
+
+    //The mask count and size, as the size follows the variant that ran, then the masks run length encoded one after
+    //another
+    private static void writeSegmentation(DataOutputStream output, InferenceBackend.Outputs outputs)
+            throws IOException {
+        int maskSize = outputs.maskWidth * outputs.maskHeight;
+        output.writeByte(outputs.numMasks);
+        output.writeShort(outputs.maskWidth);
+        output.writeShort(outputs.maskHeight);
+        for (int mask = 0; mask < outputs.numMasks; mask++) {
+            MaskRle.encode(outputs.segmentation, mask * maskSize, maskSize, MainActivity.SEGMENTATION_THRESHOLD,
+                    output);
+        }
+    }
+
+    //Attribute scores are kept as raw floats so that thresholds can be chosen later
+    private static void writeAttributes(DataOutputStream output, InferenceBackend.Outputs outputs) throws IOException {
+        output.writeByte(outputs.numAttributes);
+        for (int i = 0; i < outputs.numAttributes; i++) {
+            output.writeFloat(outputs.attributes.get(i));
+        }
+    }
+}
@@ -6,8 +6,10 @@ import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
@@ -20,9 +22,11 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.ContextWrapper;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -30,8 +34,13 @@ import android.provider.MediaStore;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.ImageView;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.constraintlayout.widget.ConstraintLayout;
+
 import com.google.common.util.concurrent.ListenableFuture;
 import com.yashoid.instacropper.InstaCropperActivity;
 
@@ -40,6 +49,8 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.concurrent.ExecutionException;
@@ -48,16 +59,37 @@ import java.util.concurrent.Executors;
 
 public class CameraActivity extends AppCompatActivity {
     public static final String SAVED_IMAGE_NAME = "face.jpg";
+    public static final int LIVE_TARGET_FPS = 5;
+    //Most attributes listed at once in live attributes mode
+    private static final int LIVE_MAX_ATTRIBUTES = 8;
+    //Crops are kept at up to this size, larger than the model input so tiled inference can use the extra detail
+    public static final int MAX_CROP_SIZE = 2048;
+    private static final String PREFERENCES_NAME = "camera";
+    private static final String SAVE_TO_GALLERY_KEY = "saveToGallery";
+    private static final String GROUP_PHOTO_KEY = "groupPhoto";
+    //Group photos are shown at about this size with every face's results drawn on top
+    private static final int GROUP_PHOTO_SIZE = 1080;
 
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
     private ImageCapture imageCapture = null;
     private final int cameraRequestCode = 10;
     private ExecutorService cameraExecutor;
+    //Photos are written to the gallery on their own thread so saving never holds up the next capture
+    private final ExecutorService galleryExecutor = Executors.newSingleThreadExecutor();
+    private SharedPreferences preferences;
 
     private ActivityResultLauncher<Intent> cropActivityResultLauncher;
     private CameraSelector cameraSelector = CameraSelector.DEFAULT_FRONT_CAMERA;
     private String modelTypeString = "";
 
+    //Live mode runs the model on the preview frames instead of taking a photo, the attributes model when that
+    //is the one selected and segmentation otherwise
+    private boolean isLiveMode = false;
+    private int liveMaskIndex = 0;
+    private LiveSegmentationAnalyzer liveAnalyzer = null;
+    private LiveAttributesAnalyzer liveAttributesAnalyzer = null;
+    private final int[] liveAttributeIndices = new int[LIVE_MAX_ATTRIBUTES];
+
     @RequiresApi(api = Build.VERSION_CODES.R)
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -90,6 +122,19 @@ public class CameraActivity extends AppCompatActivity {
         final Button cameraCaptureButton = findViewById(R.id.camera_capture_button);
         cameraCaptureButton.setOnClickListener(v -> takePhoto());
 
+        //Auto cropped photos are only kept in memory unless the user asks for them to be saved
+        preferences = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+        final CheckBox saveToGalleryCheckBox = findViewById(R.id.save_to_gallery_checkbox);
+        saveToGalleryCheckBox.setChecked(preferences.getBoolean(SAVE_TO_GALLERY_KEY, false));
+        saveToGalleryCheckBox.setOnCheckedChangeListener((button, isChecked) ->
+                preferences.edit().putBoolean(SAVE_TO_GALLERY_KEY, isChecked).apply());
+
+        //Group photos run every face found as one batch instead of only the largest
+        final CheckBox groupPhotoCheckBox = findViewById(R.id.group_photo_checkbox);
+        groupPhotoCheckBox.setChecked(preferences.getBoolean(GROUP_PHOTO_KEY, false));
+        groupPhotoCheckBox.setOnCheckedChangeListener((button, isChecked) ->
+                preferences.edit().putBoolean(GROUP_PHOTO_KEY, isChecked).apply());
+
         //Make switch button allow the user to select which camera they want to use
         final Button switchCameraButton = findViewById(R.id.switch_button);
         switchCameraButton.setOnClickListener(v -> {
@@ -103,6 +148,36 @@ public class CameraActivity extends AppCompatActivity {
 
         cameraExecutor = Executors.newSingleThreadExecutor();
 
+        //Live mode shows the selected mask on top of the preview, tapping the preview moves to the next mask
+        final Button liveButton = findViewById(R.id.live_button);
+        final ImageView overlayView = findViewById(R.id.live_overlay_view);
+        final TextView liveStatsText = findViewById(R.id.live_stats_text);
+        liveButton.setOnClickListener(v -> {
+            isLiveMode = !isLiveMode;
+            liveButton.setText(isLiveMode ? R.string.still_mode : R.string.live_mode);
+            overlayView.setVisibility(isLiveMode && !isLiveAttributes() ? View.VISIBLE : View.GONE);
+            liveStatsText.setVisibility(isLiveMode ? View.VISIBLE : View.GONE);
+            cameraCaptureButton.setEnabled(!isLiveMode);
+            //The attributes analyzer stops listening for thermal changes while live mode is off, and starts again
+            //with fresh smoothing and change detection when it is turned back on
+            //The segmentation analyzer is dropped along with its overlay bitmaps, and starts again with fresh counts
+            if (!isLiveMode) {
+                if (liveAttributesAnalyzer != null) {
+                    liveAttributesAnalyzer.close();
+                    liveAttributesAnalyzer = null;
+                }
+                liveAnalyzer = null;
+                overlayView.setImageBitmap(null);
+            }
+            startCamera();
+        });
+        overlayView.setOnClickListener(v -> {
+            liveMaskIndex = (liveMaskIndex + 1) % MainActivity.NUM_OUTPUT_MASKS;
+            if (liveAnalyzer != null) {
+                liveAnalyzer.setSelectedMaskIndex(liveMaskIndex);
+            }
+        });
+
         //Setup code that will be run when the crop intent is finished running
         cropActivityResultLauncher = registerForActivityResult(
                 new ActivityResultContracts.StartActivityForResult(),
@@ -112,11 +187,6 @@ public class CameraActivity extends AppCompatActivity {
                         Intent intent = new Intent(CameraActivity.this, MainActivity.class);
                         intent.putExtra("imagePath", resultIntent.getData().toString());
                         intent.putExtra("modelType", this.modelTypeString);
-                        if (Build.VERSION.SDK_INT >= 29) {
-                            intent.putExtra("fromNewApi", true);
-                        } else {
-                            intent.putExtra("fromNewApi", false);
-                        }
                         startActivity(intent);
                     }
                 }
@@ -156,42 +226,215 @@ public class CameraActivity extends AppCompatActivity {
         PreviewView previewView = findViewById(R.id.previewView);
         preview.setSurfaceProvider(previewView.getSurfaceProvider());
 
-        cameraProvider.bindToLifecycle(this, cameraSelector, imageCapture, preview);
+        if (isLiveMode && isLiveAttributes()) {
+            ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
+                    .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                    .build();
+            if (liveAttributesAnalyzer == null) {
+                liveAttributesAnalyzer = new LiveAttributesAnalyzer(this, LIVE_TARGET_FPS,
+                        (scores, stats) -> runOnUiThread(() -> showLiveAttributes(scores, stats)));
+            }
+            imageAnalysis.setAnalyzer(cameraExecutor, liveAttributesAnalyzer);
+            cameraProvider.bindToLifecycle(this, cameraSelector, imageCapture, preview, imageAnalysis);
+        } else if (isLiveMode) {
+            //Only the newest frame is kept so that a slow forward pass never builds up a backlog of frames
+            ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
+                    .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                    .build();
+            if (liveAnalyzer == null) {
+                liveAnalyzer = new LiveSegmentationAnalyzer(this, LIVE_TARGET_FPS,
+                        (overlay, stats) -> runOnUiThread(() -> showLiveOverlay(overlay, stats)));
+            }
+            liveAnalyzer.setSelectedMaskIndex(liveMaskIndex);
+            imageAnalysis.setAnalyzer(cameraExecutor, liveAnalyzer);
+            cameraProvider.bindToLifecycle(this, cameraSelector, imageCapture, preview, imageAnalysis);
+        } else {
+            cameraProvider.bindToLifecycle(this, cameraSelector, imageCapture, preview);
+        }
+    }
+
+    //Draws the latest live mask over the preview along with how well the live pipeline is keeping up
+    private void showLiveOverlay(Bitmap overlay, LiveSegmentationAnalyzer.Stats stats) {
+        if (!isLiveMode) {
+            return;
+        }
+        ImageView overlayView = findViewById(R.id.live_overlay_view);
+        TextView liveStatsText = findViewById(R.id.live_stats_text);
+        positionOverlay(overlayView, stats);
+        overlayView.setImageBitmap(overlay);
+        liveStatsText.setText(String.format(Locale.ENGLISH,
+                "Mask: %s\nInference FPS: %.1f\nLatency: %.0f ms\nFrames dropped: %d / %d",
+                MainActivity.MASK_NAMES[stats.maskIndex], stats.inferenceFps, stats.latencyMillis,
+                stats.framesDropped, stats.framesReceived));
+    }
+
+    private boolean isLiveAttributes() {
+        return "ATTRIBUTES".equals(modelTypeString);
+    }
+
+    //Lists the most confident of the smoothed attributes along with how much of the stream is being skipped
+    private void showLiveAttributes(AttributeScores scores, LiveAttributesAnalyzer.Stats stats) {
+        if (!isLiveMode) {
+            return;
+        }
+        TextView liveStatsText = findViewById(R.id.live_stats_text);
+        StringBuilder text = new StringBuilder();
+        int count = scores.getPresent(liveAttributeIndices);
+        for (int i = 0; i < count; i++) {
+            text.append(String.format(Locale.ENGLISH, "%s: %.0f%%\n", scores.getName(liveAttributeIndices[i]),
+                    scores.getProbability(liveAttributeIndices[i]) * 100));
+        }
+        text.append(String.format(Locale.ENGLISH,
+                "\nInference FPS: %.1f\nLatency: %.0f ms\nInferences: %d / %d frames\nSkipped static: %d, thermal: %d",
+                stats.inferenceFps, stats.latencyMillis, stats.inferences, stats.framesReceived,
+                stats.framesSkippedStatic, stats.framesSkippedThermal));
+        liveStatsText.setText(text);
+    }
+
+    //The model sees the centre square of the frame, so size the overlay to cover that square of the filled preview
+    private void positionOverlay(ImageView overlayView, LiveSegmentationAnalyzer.Stats stats) {
+        View previewView = findViewById(R.id.previewView);
+        boolean isRotated = stats.rotationDegrees == 90 || stats.rotationDegrees == 270;
+        int frameWidth = isRotated ? stats.frameHeight : stats.frameWidth;
+        int frameHeight = isRotated ? stats.frameWidth : stats.frameHeight;
+        if (frameWidth == 0 || frameHeight == 0) {
+            return;
+        }
+        float scale = Math.max(previewView.getWidth() / (float) frameWidth, previewView.getHeight() / (float) frameHeight);
+        int size = Math.round(Math.min(frameWidth, frameHeight) * scale);
+
+        ConstraintLayout.LayoutParams layoutParams = (ConstraintLayout.LayoutParams) overlayView.getLayoutParams();
+        if (layoutParams.width != size || layoutParams.height != size) {
+            layoutParams.width = size;
+            layoutParams.height = size;
+            overlayView.setLayoutParams(layoutParams);
+        }
+        //The preview of the front camera is mirrored so the overlay has to be as well
+        overlayView.setScaleX(cameraSelector == CameraSelector.DEFAULT_FRONT_CAMERA ? -1 : 1);
     }
 
     //Called whenever the Capture button is pressed
+    //The photo is kept in memory and the face is cropped out of it automatically, the cropper is only shown when no
+    //face can be found
     private void takePhoto() {
+        imageCapture.takePicture(cameraExecutor, new ImageCapture.OnImageCapturedCallback() {
+            @Override
+            public void onCaptureSuccess(@NonNull ImageProxy image) {
+                byte[] jpeg;
+                int rotationDegrees;
+                try {
+                    ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                    jpeg = new byte[buffer.remaining()];
+                    buffer.get(jpeg);
+                    rotationDegrees = image.getImageInfo().getRotationDegrees();
+                } finally {
+                    image.close();
+                }
+
+                try {
+                    int capturedImageId = -1;
+                    Class<?> resultActivity = MainActivity.class;
+                    if (preferences.getBoolean(GROUP_PHOTO_KEY, false)) {
+                        FaceAutoCropper.Group group = FaceAutoCropper.cropAll(jpeg, rotationDegrees,
+                                MainActivity.MODEL_INPUT_SIZE, GROUP_PHOTO_SIZE);
+                        if (group != null) {
+                            capturedImageId = CaptureHandoff.putGroup(group);
+                            resultActivity = GroupActivity.class;
+                        }
+                    } else {
+                        Bitmap face = FaceAutoCropper.crop(jpeg, rotationDegrees, MainActivity.MODEL_INPUT_SIZE);
+                        if (face != null) {
+                            capturedImageId = CaptureHandoff.put(face, rotationDegrees);
+                        }
+                    }
+                    if (capturedImageId != -1) {
+                        final int imageId = capturedImageId;
+                        final Class<?> activityClass = resultActivity;
+                        runOnUiThread(() -> startActivityWithCapture(activityClass, imageId));
+                        //The photo is only kept if the user asked for it, and inference doesn't wait for it
+                        if (preferences.getBoolean(SAVE_TO_GALLERY_KEY, false)) {
+                            galleryExecutor.execute(() -> saveToGallery(jpeg));
+                        }
+                        return;
+                    }
+                    Uri savedUri = saveUpright(jpeg, rotationDegrees);
+                    runOnUiThread(() -> {
+                        Toast.makeText(getBaseContext(), "No face found, please crop the photo", Toast.LENGTH_SHORT).show();
+                        Intent intent = InstaCropperActivity.getIntent(getBaseContext(), savedUri, savedUri,
+                                View.MeasureSpec.makeMeasureSpec(MAX_CROP_SIZE, View.MeasureSpec.AT_MOST),
+                                View.MeasureSpec.makeMeasureSpec(MAX_CROP_SIZE, View.MeasureSpec.AT_MOST), 100);
+                        cropActivityResultLauncher.launch(intent);
+                    });
+                } catch (IOException e) {
+                    Log.e(MainActivity.APP_TAG, "Error processing captured image", e);
+                    runOnUiThread(() -> Toast.makeText(getBaseContext(), "Image Capture Failed", Toast.LENGTH_SHORT).show());
+                }
+            }
+
+            @Override
+            public void onError(@NonNull ImageCaptureException exception) {
+                runOnUiThread(() -> Toast.makeText(getBaseContext(), "Image Capture Failed", Toast.LENGTH_SHORT).show());
+            }
+        });
+    }
+
+    private void startActivityWithCapture(Class<?> activityClass, int capturedImageId) {
+        Intent intent = new Intent(CameraActivity.this, activityClass);
+        intent.putExtra("capturedImageId", capturedImageId);
+        intent.putExtra("modelType", this.modelTypeString);
+        startActivity(intent);
+    }
+
+    //The JPEG is written as the camera produced it, its EXIF data already says which way up it is
+    private void saveToGallery(byte[] jpeg) {
+        try {
+            Uri uri = createGalleryEntry();
+            try (OutputStream outputStream = getContentResolver().openOutputStream(uri)) {
+                outputStream.write(jpeg);
+            }
+        } catch (IOException e) {
+            Log.e(MainActivity.APP_TAG, "Unable to save photo to gallery", e);
+        }
+    }
+
+    private Uri createGalleryEntry() throws IOException {
         String filenameFormat = "yyyy-MM-dd-HH-mm-ss-SSS";
         String fileName = new SimpleDateFormat(filenameFormat, Locale.ENGLISH)
                 .format(System.currentTimeMillis());
         ContentValues contentValues = new ContentValues();
         contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName);
         contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-        ImageCapture.OutputFileOptions outputFileOptions =
-                new ImageCapture.OutputFileOptions.Builder(getContentResolver(),
-                        MediaStore.Images.Media.EXTERNAL_CONTENT_URI, contentValues).build();
-        imageCapture.takePicture(outputFileOptions, ContextCompat.getMainExecutor(this), new ImageCapture.OnImageSavedCallback() {
-            @Override
-            public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
-                String message = "Photo Capture Succeeded: " + fileName + ".jpeg";
-                Toast.makeText(getBaseContext(), message, Toast.LENGTH_SHORT).show();
-
-                Intent intent = InstaCropperActivity.getIntent(getBaseContext(), outputFileResults.getSavedUri(),
-                        outputFileResults.getSavedUri(), View.MeasureSpec.makeMeasureSpec(512, View.MeasureSpec.EXACTLY),
-                        View.MeasureSpec.makeMeasureSpec(512, View.MeasureSpec.EXACTLY), 100);
-                cropActivityResultLauncher.launch(intent);
-            }
+        Uri uri = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, contentValues);
+        if (uri == null) {
+            throw new IOException("Unable to create gallery entry");
+        }
+        return uri;
+    }
 
-            @Override
-            public void onError(@NonNull ImageCaptureException exception) {
-                Toast.makeText(getBaseContext(), "Image Capture Failed", Toast.LENGTH_SHORT).show();
+    //Saves the photo to the gallery for the manual cropper, which needs it upright as it ignores EXIF orientation
+    private Uri saveUpright(byte[] jpeg, int rotationDegrees) throws IOException {
+        Uri uri = createGalleryEntry();
+        try (OutputStream outputStream = getContentResolver().openOutputStream(uri)) {
+            if (rotationDegrees == 0) {
+                outputStream.write(jpeg);
+            } else {
+                Bitmap photo = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+                Matrix matrix = new Matrix();
+                matrix.postRotate(rotationDegrees);
+                Bitmap upright = Bitmap.createBitmap(photo, 0, 0, photo.getWidth(), photo.getHeight(), matrix, true);
+                upright.compress(Bitmap.CompressFormat.JPEG, 95, outputStream);
             }
-        });
+        }
+        return uri;
     }
 
     public void onDestroy() {
         super.onDestroy();
         cameraExecutor.shutdown();
+        galleryExecutor.shutdown();
+        if (liveAttributesAnalyzer != null) {
+            liveAttributesAnalyzer.close();
+        }
     }
 
     //Checks that the user has given us permission to use the camera
@@ -0,0 +1,46 @@
+package com.example.machinelearningappandroid;
+
+import android.graphics.Bitmap;
+
+import java.util.List;
+
+//Hands a captured image to the next activity in memory, as a bitmap is far too large to put in an intent
+//Only the latest capture is kept, and it stays available so the receiving activity can be recreated
+public class CaptureHandoff {
+    private static int latestId = 0;
+    private static Capture latestCapture = null;
+
+    //The image as the camera stored it, it is turned upright when it is converted to a tensor
+    public static class Capture {
+        public final Bitmap image;
+        //How far the image has to be turned clockwise to be upright
+        public final int rotationDegrees;
+        //Every face cropped out of a group photo, null when the capture is a single face
+        public final List<FaceAutoCropper.Face> faces;
+
+        Capture(Bitmap image, int rotationDegrees, List<FaceAutoCropper.Face> faces) {
+            this.image = image;
+            this.rotationDegrees = rotationDegrees;
+            this.faces = faces;
+        }
+    }
+
+    //Returns the id to pass in the intent
+    public static synchronized int put(Bitmap image, int rotationDegrees) {
+        latestId++;
+        latestCapture = new Capture(image, rotationDegrees, null);
+        return latestId;
+    }
+
+    //A group photo is handed over already upright, along with the faces cropped out of it
+    public static synchronized int putGroup(FaceAutoCropper.Group group) {
+        latestId++;
+        latestCapture = new Capture(group.photo, 0, group.faces);
+        return latestId;
+    }
+
+    //Null once a newer image has been captured, or if the process was restarted since
+    public static synchronized Capture get(int id) {
+        return id == latestId ? latestCapture : null;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.machinelearningappandroid;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.media.FaceDetector;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Finds the faces in a captured JPEG and crops them out, all in memory
+//Detection runs on a small copy of the photo, then only the face regions are decoded from the JPEG at full quality
+//The crop is left in the orientation the JPEG is stored in, it is turned upright when it becomes a tensor
+public class FaceAutoCropper {
+    //Longest side of the copy the detector runs on, faces at arm's length are still well over the detector's minimum
+    private static final int DETECTION_SIZE = 480;
+    //Most faces found in one photo, which is also the largest batch a group photo is run in
+    public static final int MAX_FACES = 4;
+
+    //One face cut out of a photo, in the orientation the photo is stored in
+    public static class Face {
+        public final Bitmap image;
+        //How far the image has to be turned clockwise to be upright
+        public final int rotationDegrees;
+        //Where the face is in the upright photo, at the size of the group photo when it is part of one
+        public final FaceCrop crop;
+
+        Face(Bitmap image, int rotationDegrees, FaceCrop crop) {
+            this.image = image;
+            this.rotationDegrees = rotationDegrees;
+            this.crop = crop;
+        }
+    }
+
+    //A group photo, upright and scaled down to be shown, along with every face cropped out of it at full quality
+    public static class Group {
+        public final Bitmap photo;
+        public final List<Face> faces;
+
+        Group(Bitmap photo, List<Face> faces) {
+            this.photo = photo;
+            this.faces = faces;
+        }
+    }
+
+    //Returns a square crop of the largest face between outputSize and twice outputSize across, or null if no face
+    //was found. rotationDegrees is how far the JPEG needs rotating clockwise to be upright
+    public static Bitmap crop(byte[] jpeg, int rotationDegrees, int outputSize) throws IOException {
+        List<FaceCrop> crops = findFaces(jpeg, rotationDegrees);
+        if (crops.isEmpty()) {
+            Log.i(MainActivity.APP_TAG, "No face found in captured image");
+            return null;
+        }
+        return decodeFaces(jpeg, rotationDegrees, crops.subList(0, 1), outputSize).get(0).image;
+    }
+
+    //Crops every face in the photo the same way, largest first, and decodes the whole photo upright at no less than
+    //photoSize across to show the results on. Null if there are no faces
+    public static Group cropAll(byte[] jpeg, int rotationDegrees, int outputSize, int photoSize) throws IOException {
+        List<FaceCrop> crops = findFaces(jpeg, rotationDegrees);
+        if (crops.isEmpty()) {
+            Log.i(MainActivity.APP_TAG, "No face found in captured image");
+            return null;
+        }
+        List<Face> faces = decodeFaces(jpeg, rotationDegrees, crops, outputSize);
+        Bitmap photo = decodeUpright(jpeg, rotationDegrees, photoSize);
+
+        //The crops are moved to the scaled down photo so results can be drawn straight onto it
+        boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, bounds);
+        float photoScale = photo.getWidth() / (float) (swapped ? bounds.outHeight : bounds.outWidth);
+        ArrayList<Face> scaledFaces = new ArrayList<>();
+        for (Face face : faces) {
+            scaledFaces.add(new Face(face.image, face.rotationDegrees,
+                    face.crop.scale(photoScale, photo.getWidth(), photo.getHeight())));
+        }
+        return new Group(photo, scaledFaces);
+    }
+
+    //The whole photo turned upright, at the smallest power of two subsample that keeps it at least maxSize across
+    private static Bitmap decodeUpright(byte[] jpeg, int rotationDegrees, int maxSize) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, bounds);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = getSampleSize(Math.max(bounds.outWidth, bounds.outHeight), maxSize);
+        Bitmap sampled = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (sampled == null) {
+            throw new IOException("Unable to decode captured image");
+        }
+        if (rotationDegrees == 0) {
+            return sampled;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotationDegrees);
+        Bitmap upright = Bitmap.createBitmap(sampled, 0, 0, sampled.getWidth(), sampled.getHeight(), matrix, false);
+        if (upright != sampled) {
+            sampled.recycle();
+        }
+        return upright;
+    }
+
+    //Crops of every confident face in the upright photo at full resolution, largest first
+    private static List<FaceCrop> findFaces(byte[] jpeg, int rotationDegrees) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, bounds);
+        int storedWidth = bounds.outWidth;
+        int storedHeight = bounds.outHeight;
+        if (storedWidth <= 0 || storedHeight <= 0) {
+            throw new IOException("Unable to read captured image");
+        }
+
+        //The detector only takes upright RGB_565 bitmaps with an even width
+        BitmapFactory.Options detectionOptions = new BitmapFactory.Options();
+        detectionOptions.inSampleSize = getSampleSize(Math.max(storedWidth, storedHeight), DETECTION_SIZE);
+        detectionOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, detectionOptions);
+        if (sampled == null) {
+            throw new IOException("Unable to decode captured image");
+        }
+        float detectionScale = Math.max(storedWidth, storedHeight) / (float) Math.max(sampled.getWidth(), sampled.getHeight());
+        Bitmap detectionBitmap = toDetectionBitmap(sampled, rotationDegrees);
+
+        FaceDetector.Face[] faces = new FaceDetector.Face[MAX_FACES];
+        int faceCount = new FaceDetector(detectionBitmap.getWidth(), detectionBitmap.getHeight(), MAX_FACES)
+                .findFaces(detectionBitmap, faces);
+        int detectionWidth = detectionBitmap.getWidth();
+        int detectionHeight = detectionBitmap.getHeight();
+        detectionBitmap.recycle();
+
+        boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+        int uprightWidth = swapped ? storedHeight : storedWidth;
+        int uprightHeight = swapped ? storedWidth : storedHeight;
+        ArrayList<FaceCrop> crops = new ArrayList<>();
+        PointF eyesMidPoint = new PointF();
+        for (int i = 0; i < faceCount; i++) {
+            if (faces[i].confidence() < FaceDetector.Face.CONFIDENCE_THRESHOLD) {
+                continue;
+            }
+            faces[i].getMidPoint(eyesMidPoint);
+            crops.add(FaceCrop.around(eyesMidPoint.x, eyesMidPoint.y, faces[i].eyesDistance(), detectionWidth,
+                    detectionHeight).scale(detectionScale, uprightWidth, uprightHeight));
+        }
+        Collections.sort(crops, (first, second) -> Integer.compare(second.size, first.size));
+        return crops;
+    }
+
+    //Decoding only each face region at no more than twice the output size keeps the full photo out of memory, the
+    //tensor conversion does the final resize so the regions aren't copied again here
+    private static List<Face> decodeFaces(byte[] jpeg, int rotationDegrees, List<FaceCrop> crops, int outputSize)
+            throws IOException {
+        ArrayList<Face> faces = new ArrayList<>();
+        if (crops.isEmpty()) {
+            return faces;
+        }
+        BitmapRegionDecoder regionDecoder = BitmapRegionDecoder.newInstance(jpeg, 0, jpeg.length, false);
+        try {
+            boolean swapped = rotationDegrees == 90 || rotationDegrees == 270;
+            int uprightWidth = swapped ? regionDecoder.getHeight() : regionDecoder.getWidth();
+            int uprightHeight = swapped ? regionDecoder.getWidth() : regionDecoder.getHeight();
+            for (FaceCrop crop : crops) {
+                FaceCrop stored = crop.unrotate(rotationDegrees, uprightWidth, uprightHeight);
+                BitmapFactory.Options regionOptions = new BitmapFactory.Options();
+                regionOptions.inSampleSize = getSampleSize(stored.size, outputSize);
+                Bitmap region = regionDecoder.decodeRegion(new Rect(stored.left, stored.top,
+                        stored.left + stored.size, stored.top + stored.size), regionOptions);
+                if (region == null) {
+                    throw new IOException("Unable to decode face region");
+                }
+                faces.add(new Face(region, rotationDegrees, crop));
+            }
+        } finally {
+            regionDecoder.recycle();
+        }
+        return faces;
+    }
+
+    //Largest power of two sample size that keeps the decoded size at or above targetSize
+    private static int getSampleSize(int size, int targetSize) {
+        int sampleSize = 1;
+        while (size / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap toDetectionBitmap(Bitmap sampled, int rotationDegrees) {
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotationDegrees);
+        Bitmap upright = Bitmap.createBitmap(sampled, 0, 0, sampled.getWidth(), sampled.getHeight(), matrix, false);
+        if (upright != sampled) {
+            sampled.recycle();
+        }
+        if (upright.getConfig() != Bitmap.Config.RGB_565 || upright.getWidth() % 2 != 0) {
+            Bitmap evenWidth = Bitmap.createBitmap(upright.getWidth() & ~1, upright.getHeight(), Bitmap.Config.RGB_565);
+            new Canvas(evenWidth).drawBitmap(upright, 0, 0, null);
+            upright.recycle();
+            upright = evenWidth;
+        }
+        return upright;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.machinelearningappandroid;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.Locale;
+
+//Shows the results for every face found in a group photo, which are all run through the model as one batch
+//Each face's parsing map is drawn back onto the photo where the face was, and its attributes are listed by number
+public class GroupActivity extends AppCompatActivity {
+    //Parsing maps are drawn see through so the faces underneath can still be made out
+    private static final int[] OVERLAY_PALETTE = LabelMap.createPalette(MainActivity.MASK_NAMES.length, 0x80);
+    //Most attributes listed for each face
+    private static final int MAX_ATTRIBUTES_PER_FACE = 5;
+
+    private static class GroupOutput {
+        final MultiFaceRunner.Result result;
+        final Bitmap rendered;
+
+        GroupOutput(MultiFaceRunner.Result result, Bitmap rendered) {
+            this.result = result;
+            this.rendered = rendered;
+        }
+    }
+
+    private final InferenceEngine inferenceEngine = new InferenceEngine();
+    private ModelType modelType = ModelType.JOINT;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_group);
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        setTitle("Group Photo");
+
+        Bundle extras = getIntent().getExtras();
+        CaptureHandoff.Capture capture = null;
+        if (extras != null) {
+            capture = CaptureHandoff.get(extras.getInt("capturedImageId", -1));
+            modelType = ModelType.valueOf(extras.getString("modelType"));
+        }
+        if (capture == null || capture.faces == null) {
+            Log.e(MainActivity.APP_TAG, "Group photo is no longer available");
+            finish();
+            return;
+        }
+
+        final ImageView imageView = findViewById(R.id.group_image_view);
+        final TextView resultsText = findViewById(R.id.group_results_text);
+        final Bitmap photo = capture.image;
+        final List<FaceAutoCropper.Face> faces = capture.faces;
+        imageView.setImageBitmap(photo);
+        resultsText.setText(R.string.run_model);
+
+        //The overlays are drawn on the inference thread too, so only the finished bitmap is handed to the UI
+        final MultiFaceRunner runner = new MultiFaceRunner(this, modelType);
+        inferenceEngine.submit(() -> {
+            MultiFaceRunner.Result result = runner.run(faces);
+            return new GroupOutput(result, renderResults(photo, faces, result.records));
+        }, output -> {
+            imageView.setImageBitmap(output.rendered);
+            resultsText.setText(describeResults(output.result));
+        }, e -> {
+            Log.e(MainActivity.APP_TAG, "Error running group photo", e);
+            Toast.makeText(getBaseContext(), "Failed to run the model", Toast.LENGTH_SHORT).show();
+            resultsText.setText("");
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        inferenceEngine.shutdown();
+    }
+
+    //The face crops are already in the coordinates of the photo, so the overlays are drawn without scaling
+    private Bitmap renderResults(Bitmap photo, List<FaceAutoCropper.Face> faces, ResultRecord[] records) {
+        int width = photo.getWidth();
+        int height = photo.getHeight();
+        int[] overlayPixels = new int[width * height];
+        for (int i = 0; i < records.length; i++) {
+            //The runner builds each face's label map from its scores
+            if (records[i].hasLabelMap()) {
+                FaceOverlay.render(records[i].getLabelMap(), faces.get(i).crop, 1, OVERLAY_PALETTE, overlayPixels,
+                        width, height);
+            }
+        }
+
+        Bitmap rendered = photo.copy(Bitmap.Config.ARGB_8888, true);
+        Canvas canvas = new Canvas(rendered);
+        canvas.drawBitmap(Bitmap.createBitmap(overlayPixels, width, height, Bitmap.Config.ARGB_8888), 0, 0, null);
+
+        //Each face is outlined and numbered to match the list of attributes
+        Paint outline = new Paint(Paint.ANTI_ALIAS_FLAG);
+        outline.setStyle(Paint.Style.STROKE);
+        outline.setStrokeWidth(Math.max(2, width / 300f));
+        outline.setColor(Color.WHITE);
+        Paint label = new Paint(Paint.ANTI_ALIAS_FLAG);
+        label.setColor(Color.WHITE);
+        label.setTextSize(Math.max(24, width / 25f));
+        for (int i = 0; i < records.length; i++) {
+            FaceCrop crop = faces.get(i).crop;
+            canvas.drawRect(crop.left, crop.top, crop.left + crop.size, crop.top + crop.size, outline);
+            canvas.drawText(String.valueOf(i + 1), crop.left + outline.getStrokeWidth() * 2,
+                    crop.top + label.getTextSize(), label);
+        }
+        return rendered;
+    }
+
+    private String describeResults(MultiFaceRunner.Result result) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ENGLISH, "%d faces, forward pass %d ms (%s), preprocessing %d ms\n",
+                result.records.length, result.forwardMillis, result.batched ? "one batch" : "one face at a time",
+                result.preprocessMillis));
+        AttributeCalibration calibration = AttributeCalibrationLoader.get(this);
+        int[] present = new int[MainActivity.ATTRIBUTES.length];
+        for (int i = 0; i < result.records.length; i++) {
+            ResultRecord record = result.records[i];
+            if (!record.hasAttributes()) {
+                continue;
+            }
+            AttributeScores scores = AttributeScores.fromOutput(FloatBuffer.wrap(record.getAttributes()), 0,
+                    calibration);
+            text.append("\nFace ").append(i + 1).append(": ");
+            int count = Math.min(scores.getPresent(present), MAX_ATTRIBUTES_PER_FACE);
+            for (int j = 0; j < count; j++) {
+                if (j > 0) {
+                    text.append(", ");
+                }
+                text.append(scores.getName(present[j])).append(" (")
+                        .append(Math.round(scores.getProbability(present[j]) * 100)).append("%)");
+            }
+        }
+        return text.toString();
+    }
+}
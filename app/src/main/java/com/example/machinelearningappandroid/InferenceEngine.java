@@ -0,0 +1,144 @@
+package com.example.machinelearningappandroid;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Runs model inference on a single background worker so that a forward pass never blocks the UI thread
+//Results and errors are posted back to the main looper through the given callbacks
+public class InferenceEngine {
+    //Only one request can be waiting behind the one that is currently running
+    private static final int MAX_QUEUED_TASKS = 1;
+
+    public interface OnResult<T> {
+        void onResult(T result);
+    }
+
+    public interface OnError {
+        void onError(Exception e);
+    }
+
+    //Lets a task hand partial results to the UI thread before it has finished
+    public interface ProgressReporter<P> {
+        void report(P progress);
+    }
+
+    public interface ProgressiveTask<T, P> {
+        T call(ProgressReporter<P> reporter) throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Set<Future<?>> pendingTasks = Collections.synchronizedSet(new HashSet<>());
+    private volatile boolean isShutdown = false;
+
+    public InferenceEngine() {
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_TASKS), runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "InferenceWorker"));
+    }
+
+    //Queues a task on the inference worker, the callbacks are always called on the UI thread
+    //and are never called if the task is cancelled or the engine has been shut down
+    public <T> Future<T> submit(Callable<T> task, OnResult<T> onResult, OnError onError) {
+        FutureTask<T> future = new FutureTask<T>(task) {
+            @Override
+            protected void done() {
+                pendingTasks.remove(this);
+                if (isCancelled() || isShutdown) {
+                    return;
+                }
+
+                try {
+                    T result = get();
+                    postToMain(this, () -> onResult.onResult(result));
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    postToMain(this, () -> onError.onError(cause));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        if (isShutdown) {
+            future.cancel(false);
+            return future;
+        }
+
+        pendingTasks.add(future);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            pendingTasks.remove(future);
+            future.cancel(false);
+            mainHandler.post(() -> onError.onError(e));
+        }
+        return future;
+    }
+
+    //Like submit, but the task can also report partial results, which reach onProgress in the order they were
+    //reported and always before onResult. Partial results of a cancelled task are dropped like its result
+    public <T, P> Future<T> submit(ProgressiveTask<T, P> task, OnResult<P> onProgress, OnResult<T> onResult,
+                                   OnError onError) {
+        //Progress can be reported before submit returns, but it is only delivered on the UI thread after that
+        AtomicReference<Future<T>> futureRef = new AtomicReference<>();
+        Future<T> future = submit(() -> task.call(progress -> mainHandler.post(() -> {
+            Future<T> self = futureRef.get();
+            if (self != null && !self.isCancelled() && !isShutdown) {
+                onProgress.onResult(progress);
+            }
+        })), onResult, onError);
+        futureRef.set(future);
+        return future;
+    }
+
+    //Cancels everything that is queued or running, results of a running forward pass are discarded
+    public void cancelAll() {
+        ArrayList<Future<?>> tasks;
+        synchronized (pendingTasks) {
+            tasks = new ArrayList<>(pendingTasks);
+            pendingTasks.clear();
+        }
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    //Should be called when the owning activity is destroyed
+    public void shutdown() {
+        isShutdown = true;
+        cancelAll();
+        executor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    public boolean isBusy() {
+        return !pendingTasks.isEmpty();
+    }
+
+    //Only delivers the callback if the task was not cancelled while the message was waiting in the queue
+    private void postToMain(Future<?> future, Runnable callback) {
+        mainHandler.post(() -> {
+            if (!future.isCancelled() && !isShutdown) {
+                callback.run();
+            }
+        });
+    }
+}
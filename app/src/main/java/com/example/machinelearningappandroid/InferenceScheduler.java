@@ -0,0 +1,231 @@
+package com.example.machinelearningappandroid;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+
+//Serves segmentation and attributes requests, preferring the joint model so one forward pass answers both
+//The outputs for the last image are kept, so asking for the other head of the same image doesn't run anything
+//When memory is tight the smaller single head models are used instead of the joint one, see HeadScheduler
+//Every result is also written to a ResultCache, so the same image is only ever run through a given model once, and
+//the cache's key for it is how other screens find the result again
+//Each model type runs the variant, and on the number of threads, that RuntimePolicy chooses for the device's state
+public class InferenceScheduler implements ComponentCallbacks2 {
+    private static final long RESULT_CACHE_MEMORY_BYTES = 4 * 1024 * 1024;
+    private static final long RESULT_CACHE_DISK_BYTES = 32 * 1024 * 1024;
+    //Label maps for stored results are built on the cache's writer thread, which this pool of one keeps it on
+    private static final ForkJoinPool LABEL_MAP_POOL = new ForkJoinPool(1);
+
+    private static InferenceScheduler instance = null;
+
+    private final Context context;
+    private final ModelRegistry modelRegistry;
+    private final RuntimePolicy runtimePolicy;
+    private final ResultCache resultCache;
+    private final ModelPipelines pipelines;
+    private final HeadScheduler headScheduler = new HeadScheduler();
+    private int[] pixels = null;
+
+    private InferenceScheduler(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        this.context = applicationContext;
+        this.modelRegistry = ModelRegistry.getInstance(applicationContext);
+        this.runtimePolicy = RuntimePolicy.getInstance(applicationContext);
+        this.pipelines = new ModelPipelines(modelRegistry, MainActivity.SEGMENTATION_THRESHOLD);
+        this.resultCache = new ResultCache(new File(applicationContext.getFilesDir(), "result_cache"),
+                RESULT_CACHE_MEMORY_BYTES, RESULT_CACHE_DISK_BYTES);
+        applicationContext.registerComponentCallbacks(this);
+    }
+
+    public static synchronized InferenceScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new InferenceScheduler(context);
+        }
+        return instance;
+    }
+
+    //The model that will be run for a request, the joint one unless memory is tight
+    public ModelType getModelFor(ModelType requested) {
+        return HeadScheduler.getModelFor(requested, runtimePolicy.isMemoryTight());
+    }
+
+    //Starts loading whichever model will serve the request
+    public void warm(ModelType requested) {
+        modelRegistry.warm(runtimePolicy.getVariant(getModelFor(requested)));
+    }
+
+    //Returns outputs with the requested heads, JOINT asks for both, blocks so must be called off the UI thread
+    //The outputs can be from the joint model whatever was asked for. rotationDegrees is how far the image has to be
+    //turned clockwise to be upright, done while building the model input
+    public synchronized HeadScheduler.Outputs getOutputs(Bitmap image, int rotationDegrees, ModelType requested,
+                                                         PerformanceTracer.Run run) throws Exception {
+        run.beginStage("read_pixels");
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        if (pixels == null || pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        image.getPixels(pixels, 0, width, 0, 0, width, height);
+        //Hashed from the pixels rather than the model input so results stay keyed by image whatever variant is used
+        final long inputHash = InputHash.of(pixels, width, height, rotationDegrees);
+
+        HeadScheduler.Outputs cached = headScheduler.getCached(inputHash, requested);
+        if (cached != null) {
+            run.endStage();
+            Log.i(MainActivity.APP_TAG, "Served " + requested + " from cached " + cached.modelType + " outputs ("
+                    + headScheduler.getCacheHits() + " hits, " + headScheduler.getForwardPasses() + " forward passes)");
+            return cached;
+        }
+
+        run.beginStage("result_cache");
+        HeadScheduler.Outputs outputs = headScheduler.get(inputHash, requested, runtimePolicy.isMemoryTight(),
+                new HeadScheduler.Source() {
+                    @Override
+                    public HeadScheduler.Outputs read(long hash, ModelType modelType) {
+                        return readResultCache(hash, modelType);
+                    }
+
+                    @Override
+                    public HeadScheduler.Outputs forward(ModelType modelType) throws Exception {
+                        return runModel(inputHash, modelType, width, height, rotationDegrees, run);
+                    }
+                });
+        run.endStage();
+        return outputs;
+    }
+
+    private HeadScheduler.Outputs runModel(long inputHash, ModelType modelType, int width, int height,
+                                           int rotationDegrees, PerformanceTracer.Run run) throws Exception {
+        ModelVariant variant = runtimePolicy.choose(modelType);
+        run.beginStage("model_wait");
+        ModelPipeline pipeline = pipelines.get(variant);
+
+        //Building the input is counted with the forward pass, it is a small part of it
+        run.beginStage("forward");
+        long forwardStart = SystemClock.elapsedRealtime();
+        InferenceBackend.Outputs heads;
+        runtimePolicy.beginForward(modelType);
+        try {
+            heads = pipeline.forward(pixels, width, height, rotationDegrees);
+        } finally {
+            runtimePolicy.endForward();
+        }
+        runtimePolicy.recordLatency(modelType, SystemClock.elapsedRealtime() - forwardStart);
+        HeadScheduler.Outputs outputs = new HeadScheduler.Outputs(inputHash, modelType, heads, null,
+                getResultKey(inputHash, variant));
+        writeResultCache(outputs);
+        return outputs;
+    }
+
+    //Returns a result stored under a key from Outputs, blocks while it is still being written or has
+    //to be read from disk, null once it has been evicted
+    public ResultRecord getStoredResult(String key) {
+        return resultCache.get(key);
+    }
+
+    //Segments a large image at full resolution over tiles, see TiledInferenceRunner, unless the same file has already
+    //been run through the same model. Blocks so must be called off the UI thread
+    //The result is keyed by a hash of the file's bytes, so an edited file or a new model version is run again
+    public synchronized HeadScheduler.Outputs getTiledOutputs(Uri uri, PerformanceTracer.Run run) throws Exception {
+        run.beginStage("hash_file");
+        long inputHash;
+        try (InputStream stream = context.getContentResolver().openInputStream(uri)) {
+            if (stream == null) {
+                throw new IOException("Unable to open " + uri);
+            }
+            inputHash = InputHash.of(stream);
+        }
+
+        run.beginStage("result_cache");
+        //Tiles are run through whichever model a whole image would be, so it is likely to be resident already
+        ModelType modelType = getModelFor(ModelType.SEGMENTATION);
+        ModelVariant variant = runtimePolicy.choose(modelType);
+        String resultKey = getResultKey(inputHash, variant);
+        ResultRecord record = resultKey == null ? null : resultCache.get(resultKey);
+        if (record != null && record.hasLabelMap()) {
+            Log.i(MainActivity.APP_TAG, "Read stored tiled " + modelType + " result");
+        } else {
+            run.beginStage("tiled_forward");
+            record = new TiledInferenceRunner(context, modelType).run(uri, variant);
+            //The model is staged by now if it wasn't before, so it has a checksum to key the result with
+            resultKey = getResultKey(inputHash, variant);
+            if (resultKey != null) {
+                final ResultRecord tiledRecord = record;
+                resultCache.put(resultKey, () -> tiledRecord);
+            }
+        }
+        run.endStage();
+        return new HeadScheduler.Outputs(inputHash, modelType, null, record, resultKey);
+    }
+
+    //Null for a model that has never been staged, as it has no checksum to tell its results apart from other versions
+    private String getResultKey(long inputHash, ModelVariant variant) {
+        String checksum = AssetStager.getChecksum(context, variant.assetName);
+        return checksum == null ? null : ResultCache.createKey(inputHash, variant.modelType, checksum);
+    }
+
+    //Looks for a stored result of the model for the image, HeadScheduler checks it has the heads that are needed
+    private HeadScheduler.Outputs readResultCache(long inputHash, ModelType modelType) {
+        //A model that has never been staged can't have produced a stored result
+        String resultKey = getResultKey(inputHash, runtimePolicy.getVariant(modelType));
+        if (resultKey == null) {
+            return null;
+        }
+        ResultRecord record = resultCache.get(resultKey);
+        if (record == null) {
+            return null;
+        }
+        Log.i(MainActivity.APP_TAG, "Read stored " + modelType + " result");
+        return new HeadScheduler.Outputs(inputHash, modelType, null, record, resultKey);
+    }
+
+    //Stores the heads that the model just produced, the encoding happens on the cache's writer thread so the caller
+    //has the outputs without waiting for them to be written
+    private void writeResultCache(HeadScheduler.Outputs outputs) {
+        if (outputs.resultKey == null) {
+            return;
+        }
+        final InferenceBackend.Outputs heads = outputs.heads;
+        resultCache.put(outputs.resultKey, () -> {
+            ResultRecord record = ResultRecord.fromOutputs(heads, MainActivity.SEGMENTATION_THRESHOLD);
+            if (heads.segmentation != null) {
+                record = record.withLabelMap(LabelMap.compute(heads.segmentation, heads.numMasks, heads.maskWidth,
+                        heads.maskHeight, MainActivity.SEGMENTATION_THRESHOLD, LABEL_MAP_POOL));
+            }
+            return record;
+        });
+    }
+
+    //Drops the cached outputs, which hold on to the full size segmentation tensor, stored results stay on disk
+    public void clearCache() {
+        headScheduler.clear();
+        resultCache.clearMemory();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        //Hiding the UI isn't a sign of memory pressure, and the cache is most useful when the user comes back
+        //RuntimePolicy hears about the same pressure, and moves to smaller variants and single head models for a while
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            clearCache();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clearCache();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
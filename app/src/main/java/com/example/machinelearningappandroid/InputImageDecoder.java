@@ -0,0 +1,156 @@
+package com.example.machinelearningappandroid;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+//Decodes images from storage straight to about the model's input size, following a DecodePlan, so a large photo
+//from the gallery is never held at full resolution. Bitmaps handed back with release are decoded into again
+//The image is left in the orientation it is stored in, it is turned upright when it becomes a tensor
+public class InputImageDecoder {
+    private static final int BYTES_PER_PIXEL = 4;
+    //Enough for one bitmap per decode thread of a batch run
+    private static final int MAX_REUSABLE_BITMAPS = 4;
+
+    private static InputImageDecoder instance = null;
+
+    private final ContentResolver contentResolver;
+    private final ArrayList<Bitmap> reusableBitmaps = new ArrayList<>();
+
+    private InputImageDecoder(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    public static synchronized InputImageDecoder getInstance(Context context) {
+        if (instance == null) {
+            instance = new InputImageDecoder(context.getApplicationContext().getContentResolver());
+        }
+        return instance;
+    }
+
+    //Reads only the header of the image
+    public DecodePlan plan(Uri uri, int targetSize) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream stream = openStream(uri)) {
+            BitmapFactory.decodeStream(stream, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Unable to read image size of " + uri);
+        }
+        return DecodePlan.forCentreSquare(bounds.outWidth, bounds.outHeight, targetSize);
+    }
+
+    //Decodes the centre square of the image at no less than targetSize across, which is all the model uses of it
+    public Bitmap decodeCentreSquare(Uri uri, int targetSize) throws IOException {
+        DecodePlan plan = plan(uri, targetSize);
+        Bitmap bitmap;
+        try {
+            bitmap = decodeRegion(uri, plan);
+        } catch (IOException e) {
+            //Formats the region decoder doesn't support are decoded whole at the same sample size instead
+            Log.w(MainActivity.APP_TAG, "Unable to decode region of " + uri + ", decoding the whole image", e);
+            bitmap = decodeWhole(uri, plan);
+        }
+        if (bitmap == null) {
+            throw new IOException("Unable to decode " + uri);
+        }
+        return bitmap;
+    }
+
+    //Decodes the whole image at no less than targetSize on its shorter side, for when the full frame is shown
+    public Bitmap decodeWhole(Uri uri, int targetSize) throws IOException {
+        Bitmap bitmap = decodeWhole(uri, plan(uri, targetSize));
+        if (bitmap == null) {
+            throw new IOException("Unable to decode " + uri);
+        }
+        return bitmap;
+    }
+
+    //Hands back a bitmap that is no longer shown or used so the next decode can draw into it instead of allocating
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled() || reusableBitmaps.contains(bitmap)) {
+            return;
+        }
+        if (reusableBitmaps.size() >= MAX_REUSABLE_BITMAPS) {
+            reusableBitmaps.remove(0).recycle();
+        }
+        reusableBitmaps.add(bitmap);
+    }
+
+    private Bitmap decodeRegion(Uri uri, DecodePlan plan) throws IOException {
+        BitmapRegionDecoder decoder;
+        try (InputStream stream = openStream(uri)) {
+            decoder = BitmapRegionDecoder.newInstance(stream, false);
+        }
+        try {
+            Rect region = new Rect(plan.regionLeft, plan.regionTop, plan.regionLeft + plan.regionSize,
+                    plan.regionTop + plan.regionSize);
+            //The region decoder only draws into a bitmap of exactly the size it decodes
+            BitmapFactory.Options options = createOptions(plan);
+            options.inBitmap = takeReusable(plan.decodedSize, plan.decodedSize, true);
+            try {
+                return decoder.decodeRegion(region, options);
+            } catch (IllegalArgumentException e) {
+                //The bitmap couldn't be reused after all, so a new one is allocated
+                options.inBitmap = null;
+                return decoder.decodeRegion(region, options);
+            }
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    private Bitmap decodeWhole(Uri uri, DecodePlan plan) throws IOException {
+        BitmapFactory.Options options = createOptions(plan);
+        options.inBitmap = takeReusable(plan.getWholeDecodedWidth(), plan.getWholeDecodedHeight(), false);
+        try (InputStream stream = openStream(uri)) {
+            return BitmapFactory.decodeStream(stream, null, options);
+        } catch (IllegalArgumentException e) {
+            options.inBitmap = null;
+            try (InputStream stream = openStream(uri)) {
+                return BitmapFactory.decodeStream(stream, null, options);
+            }
+        }
+    }
+
+    private static BitmapFactory.Options createOptions(DecodePlan plan) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = plan.sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        //Decoded bitmaps must be mutable so they can be decoded into again once released
+        options.inMutable = true;
+        return options;
+    }
+
+    //BitmapFactory can reuse any bitmap with enough bytes, the region decoder needs the exact size
+    private synchronized Bitmap takeReusable(int width, int height, boolean exactSize) {
+        long neededBytes = (long) width * height * BYTES_PER_PIXEL;
+        for (int i = 0; i < reusableBitmaps.size(); i++) {
+            Bitmap bitmap = reusableBitmaps.get(i);
+            boolean fits = exactSize ? bitmap.getWidth() == width && bitmap.getHeight() == height
+                    : bitmap.getAllocationByteCount() >= neededBytes;
+            if (fits && bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+                return reusableBitmaps.remove(i);
+            }
+        }
+        return null;
+    }
+
+    private InputStream openStream(Uri uri) throws IOException {
+        InputStream stream = contentResolver.openInputStream(uri);
+        if (stream == null) {
+            throw new IOException("Unable to open " + uri);
+        }
+        return stream;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.machinelearningappandroid;
+
+import androidx.camera.core.ImageProxy;
+
+//Turns camera frames into model inputs for a ModelPipeline, which writes them into its own reused direct buffer
+public class InputPreprocessor {
+    //Reads the YUV planes of the frame directly, so no RGB bitmap is ever created for camera frames
+    //The frame must stay open until the pipeline has run
+    public static ModelPipeline.InputSource fromImageProxy(ImageProxy image) {
+        return (writer, input) -> {
+            ImageProxy.PlaneProxy[] planes = image.getPlanes();
+            writer.writeYuv420(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(),
+                    planes[1].getPixelStride(), image.getWidth(), image.getHeight(),
+                    image.getImageInfo().getRotationDegrees(), input, 0);
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.machinelearningappandroid;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+import org.pytorch.TensorBuffers;
+
+import java.nio.FloatBuffer;
+
+//Runs the forward pass with the PyTorch lite interpreter, so the app goes through the same ModelPipeline as the CLI
+//Each call's outputs are read in place from the tensors it produced, which the outputs keep reachable
+public class LiteModuleBackend implements InferenceBackend {
+    private final Module module;
+    private final ModelType modelType;
+
+    public LiteModuleBackend(Module module, ModelType modelType) {
+        this.module = module;
+        this.modelType = modelType;
+    }
+
+    public Module getModule() {
+        return module;
+    }
+
+    @Override
+    public Outputs forward(FloatBuffer input, int inputSize) {
+        return forwardBatch(input, 1, inputSize)[0];
+    }
+
+    //input holds batchSize images one after another, returns the outputs of each image in the same order
+    //Models exported for a fixed batch size throw a RuntimeException for any other batch size
+    public Outputs[] forwardBatch(FloatBuffer input, int batchSize, int inputSize) {
+        Tensor inputTensor = Tensor.fromBlob(input, new long[] {batchSize, 3, inputSize, inputSize});
+        IValue output = module.forward(IValue.from(inputTensor));
+        Tensor segmentation = null;
+        Tensor attributes = null;
+        switch (modelType) {
+            case JOINT:
+                IValue[] tuple = output.toTuple();
+                segmentation = tuple[0].toTensor();
+                attributes = tuple[1].toTensor();
+                break;
+            case SEGMENTATION:
+                segmentation = output.toTensor();
+                break;
+            default:
+                attributes = output.toTensor();
+        }
+
+        FloatBuffer segmentationValues = segmentation == null ? null : TensorBuffers.getFloatBuffer(segmentation);
+        long[] segmentationShape = segmentation == null ? null : segmentation.shape();
+        FloatBuffer attributeValues = attributes == null ? null : TensorBuffers.getFloatBuffer(attributes);
+        long[] attributesShape = attributes == null ? null : attributes.shape();
+        Outputs[] outputs = new Outputs[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            outputs[i] = Outputs.fromHeads(segmentationValues, segmentationShape, attributeValues, attributesShape, i,
+                    output);
+        }
+        return outputs;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.machinelearningappandroid;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.core.content.ContextCompat;
+
+//Runs the attributes model on camera frames, only as often as it is useful. Frames are skipped when the scene hasn't
+//changed since the last inference and when the device is getting hot, and the scores are smoothed over time
+public class LiveAttributesAnalyzer implements ImageAnalysis.Analyzer {
+    //Static scenes are still run now and then so the attributes catch up with slow changes
+    private static final long STATIC_REFRESH_MILLIS = 2000;
+    //Mean luma difference, out of 255, below which a frame counts as unchanged
+    private static final float CHANGE_THRESHOLD = 6;
+    private static final int CHANGE_GRID_SIZE = 16;
+    private static final float SMOOTHING_TIME_CONSTANT_MILLIS = 600;
+    //Weight given to the newest sample when smoothing the reported inference rate and latency
+    private static final float STATS_SMOOTHING = 0.2f;
+
+    public interface AttributesListener {
+        //Called on the camera executor with a copy of the smoothed scores
+        void onAttributesReady(AttributeScores scores, Stats stats);
+    }
+
+    //Snapshot of how much work the live pipeline is doing
+    public static class Stats {
+        public int framesReceived;
+        public int framesSkippedRate;
+        public int framesSkippedStatic;
+        public int framesSkippedThermal;
+        public int inferences;
+        public float inferenceFps;
+        public float latencyMillis;
+        public int thermalStatus;
+    }
+
+    private final ModelRegistry modelRegistry;
+    private final RuntimePolicy runtimePolicy;
+    private final AttributeCalibration calibration;
+    private final AttributesListener listener;
+    private final ModelPipelines pipelines;
+    private final FrameChangeDetector changeDetector = new FrameChangeDetector(CHANGE_GRID_SIZE);
+    private final FrameSchedule schedule;
+    private final AttributeSmoother smoother = new AttributeSmoother(MainActivity.ATTRIBUTES.length,
+            SMOOTHING_TIME_CONSTANT_MILLIS);
+    private final PowerManager powerManager;
+    private Object thermalListener = null;
+
+    private final Stats stats = new Stats();
+    private long lastInferenceStart = 0;
+
+    public LiveAttributesAnalyzer(Context context, int targetFps, AttributesListener listener) {
+        this.modelRegistry = ModelRegistry.getInstance(context);
+        this.runtimePolicy = RuntimePolicy.getInstance(context);
+        this.pipelines = new ModelPipelines(modelRegistry, MainActivity.SEGMENTATION_THRESHOLD);
+        this.calibration = AttributeCalibrationLoader.get(context);
+        this.listener = listener;
+        this.schedule = new FrameSchedule(1000 / targetFps, STATIC_REFRESH_MILLIS, CHANGE_THRESHOLD);
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+
+        //Thermal status is only reported from Android 10, older devices always run at the target rate
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            schedule.setThermalStatus(powerManager.getCurrentThermalStatus());
+            PowerManager.OnThermalStatusChangedListener onThermalStatusChanged = schedule::setThermalStatus;
+            powerManager.addThermalStatusListener(ContextCompat.getMainExecutor(context), onThermalStatusChanged);
+            thermalListener = onThermalStatusChanged;
+        }
+    }
+
+    //Stops listening for thermal status changes, must be called once the analyzer is no longer in use
+    public void close() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && thermalListener != null) {
+            powerManager.removeThermalStatusListener((PowerManager.OnThermalStatusChangedListener) thermalListener);
+            thermalListener = null;
+        }
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy imageProxy) {
+        long frameArrival = SystemClock.elapsedRealtime();
+        stats.framesReceived++;
+        try {
+            int decision = schedule.checkTime(frameArrival);
+            if (decision == FrameSchedule.RUN) {
+                //Only the luma plane is sampled, which is enough to tell whether anything in view has moved
+                ImageProxy.PlaneProxy luma = imageProxy.getPlanes()[0];
+                float change = changeDetector.measure(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+                        imageProxy.getWidth(), imageProxy.getHeight());
+                decision = schedule.checkChange(frameArrival, change);
+            }
+            ModelVariant variant = null;
+            if (decision == FrameSchedule.RUN) {
+                variant = runtimePolicy.choose(ModelType.ATTRIBUTES);
+                //The model may still be loading, in which case the frame is counted as skipped for rate
+                if (!modelRegistry.isResident(variant)) {
+                    modelRegistry.warm(variant);
+                    decision = FrameSchedule.SKIP_RATE;
+                }
+            }
+            switch (decision) {
+                case FrameSchedule.SKIP_RATE:
+                    stats.framesSkippedRate++;
+                    return;
+                case FrameSchedule.SKIP_STATIC:
+                    stats.framesSkippedStatic++;
+                    return;
+                case FrameSchedule.SKIP_THERMAL:
+                    stats.framesSkippedThermal++;
+                    return;
+            }
+
+            float frameInterval = lastInferenceStart == 0 ? 0 : frameArrival - lastInferenceStart;
+            lastInferenceStart = frameArrival;
+            schedule.onInference(frameArrival);
+            changeDetector.acceptMeasured();
+
+            ModelPipeline pipeline = pipelines.get(variant);
+            long forwardStart = SystemClock.elapsedRealtime();
+            InferenceBackend.Outputs outputs;
+            runtimePolicy.beginForward(ModelType.ATTRIBUTES);
+            try {
+                outputs = pipeline.forward(InputPreprocessor.fromImageProxy(imageProxy));
+            } finally {
+                runtimePolicy.endForward();
+            }
+            runtimePolicy.recordLatency(ModelType.ATTRIBUTES, SystemClock.elapsedRealtime() - forwardStart);
+            smoother.update(AttributeScores.fromOutput(outputs.attributes, 0, calibration), frameArrival);
+            stats.inferences++;
+
+            long latency = SystemClock.elapsedRealtime() - frameArrival;
+            if (frameInterval > 0) {
+                float fps = 1000f / frameInterval;
+                stats.inferenceFps = stats.inferenceFps == 0 ? fps
+                        : stats.inferenceFps + STATS_SMOOTHING * (fps - stats.inferenceFps);
+            }
+            stats.latencyMillis = stats.latencyMillis == 0 ? latency
+                    : stats.latencyMillis + STATS_SMOOTHING * (latency - stats.latencyMillis);
+            listener.onAttributesReady(smoother.getScores(calibration), copyStats());
+        } catch (Exception e) {
+            Log.e(MainActivity.APP_TAG, "Error running live attributes", e);
+        } finally {
+            imageProxy.close();
+        }
+    }
+
+    private Stats copyStats() {
+        Stats copy = new Stats();
+        copy.framesReceived = stats.framesReceived;
+        copy.framesSkippedRate = stats.framesSkippedRate;
+        copy.framesSkippedStatic = stats.framesSkippedStatic;
+        copy.framesSkippedThermal = stats.framesSkippedThermal;
+        copy.inferences = stats.inferences;
+        copy.inferenceFps = stats.inferenceFps;
+        copy.latencyMillis = stats.latencyMillis;
+        copy.thermalStatus = schedule.getThermalStatus();
+        return copy;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.machinelearningappandroid;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+//Runs the segmentation model on camera frames and draws the selected mask as an overlay
+//Frames arrive on the camera executor, anything that comes in faster than the target frame rate is skipped
+//Frames the camera dropped while the analyzer was busy are counted from gaps in the frame timestamps
+//RuntimePolicy chooses the variant for each frame, so the overlay is the size of whichever variant ran last
+public class LiveSegmentationAnalyzer implements ImageAnalysis.Analyzer {
+    public static final int OVERLAY_MASK_COLOUR = 0x8000FF00;
+    public static final int OVERLAY_BACKGROUND_COLOUR = 0x00000000;
+    //Weight given to the newest sample when smoothing the reported frame rate and latency
+    private static final float STATS_SMOOTHING = 0.2f;
+
+    public interface OverlayListener {
+        //Called on the camera executor, the bitmap is reused two frames later so it must be shown straight away
+        void onOverlayReady(Bitmap overlay, Stats stats);
+    }
+
+    //Snapshot of the performance of the live pipeline, framesReceived includes the frames the camera dropped
+    public static class Stats {
+        public int framesReceived;
+        public int framesDropped;
+        public float inferenceFps;
+        public float latencyMillis;
+        public int frameWidth;
+        public int frameHeight;
+        public int rotationDegrees;
+        public int maskIndex;
+    }
+
+    private final ModelRegistry modelRegistry;
+    private final RuntimePolicy runtimePolicy;
+    private final ModelPipelines pipelines;
+    private final OverlayListener listener;
+    private final long minFrameIntervalMillis;
+
+    private int[] overlayPixels = null;
+    private final Bitmap[] overlayBitmaps = new Bitmap[2];
+    private int nextOverlayBitmap = 0;
+
+    private final Stats stats = new Stats();
+    private final FrameGapCounter frameGaps = new FrameGapCounter();
+    private long lastInferenceStart = 0;
+    private volatile int selectedMaskIndex = 0;
+
+    public LiveSegmentationAnalyzer(Context context, int targetFps, OverlayListener listener) {
+        this.modelRegistry = ModelRegistry.getInstance(context);
+        this.runtimePolicy = RuntimePolicy.getInstance(context);
+        this.pipelines = new ModelPipelines(modelRegistry, MainActivity.SEGMENTATION_THRESHOLD);
+        this.listener = listener;
+        this.minFrameIntervalMillis = 1000 / targetFps;
+    }
+
+    public void setSelectedMaskIndex(int maskIndex) {
+        selectedMaskIndex = maskIndex;
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy imageProxy) {
+        long frameArrival = SystemClock.elapsedRealtime();
+        int framesMissed = frameGaps.onFrame(imageProxy.getImageInfo().getTimestamp());
+        stats.framesReceived += 1 + framesMissed;
+        stats.framesDropped += framesMissed;
+        try {
+            //Keep to the target frame rate so the model isn't running flat out
+            if (frameArrival - lastInferenceStart < minFrameIntervalMillis) {
+                stats.framesDropped++;
+                return;
+            }
+            //The model may still be loading, in which case there is nothing to draw yet
+            ModelVariant variant = runtimePolicy.choose(ModelType.SEGMENTATION);
+            if (!modelRegistry.isResident(variant)) {
+                modelRegistry.warm(variant);
+                stats.framesDropped++;
+                return;
+            }
+            float frameInterval = lastInferenceStart == 0 ? 0 : frameArrival - lastInferenceStart;
+            lastInferenceStart = frameArrival;
+            int rotationDegrees = imageProxy.getImageInfo().getRotationDegrees();
+            ModelPipeline pipeline = pipelines.get(variant);
+            long forwardStart = SystemClock.elapsedRealtime();
+            InferenceBackend.Outputs outputs;
+            runtimePolicy.beginForward(ModelType.SEGMENTATION);
+            try {
+                outputs = pipeline.forward(InputPreprocessor.fromImageProxy(imageProxy));
+            } finally {
+                runtimePolicy.endForward();
+            }
+            runtimePolicy.recordLatency(ModelType.SEGMENTATION, SystemClock.elapsedRealtime() - forwardStart);
+            SegmentationResult result = new SegmentationResult(outputs.segmentation, outputs, outputs.numMasks,
+                    outputs.maskWidth, outputs.maskHeight, MainActivity.SEGMENTATION_THRESHOLD);
+
+            int maskIndex = selectedMaskIndex;
+            int width = outputs.maskWidth;
+            int height = outputs.maskHeight;
+            if (overlayPixels == null || overlayPixels.length != width * height) {
+                overlayPixels = new int[width * height];
+                for (int i = 0; i < overlayBitmaps.length; i++) {
+                    overlayBitmaps[i] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                }
+            }
+            result.renderMask(maskIndex, overlayPixels, 0, OVERLAY_MASK_COLOUR, OVERLAY_BACKGROUND_COLOUR);
+            Bitmap overlay = overlayBitmaps[nextOverlayBitmap];
+            nextOverlayBitmap = (nextOverlayBitmap + 1) % overlayBitmaps.length;
+            overlay.setPixels(overlayPixels, 0, width, 0, 0, width, height);
+
+            long latency = SystemClock.elapsedRealtime() - frameArrival;
+            if (frameInterval > 0) {
+                float fps = 1000f / frameInterval;
+                stats.inferenceFps = stats.inferenceFps == 0 ? fps
+                        : stats.inferenceFps + STATS_SMOOTHING * (fps - stats.inferenceFps);
+            }
+            stats.latencyMillis = stats.latencyMillis == 0 ? latency
+                    : stats.latencyMillis + STATS_SMOOTHING * (latency - stats.latencyMillis);
+            stats.frameWidth = imageProxy.getWidth();
+            stats.frameHeight = imageProxy.getHeight();
+            stats.rotationDegrees = rotationDegrees;
+            stats.maskIndex = maskIndex;
+            listener.onOverlayReady(overlay, copyStats());
+        } catch (Exception e) {
+            Log.e(MainActivity.APP_TAG, "Error running live segmentation", e);
+        } finally {
+            imageProxy.close();
+        }
+    }
+
+    private Stats copyStats() {
+        Stats copy = new Stats();
+        copy.framesReceived = stats.framesReceived;
+        copy.framesDropped = stats.framesDropped;
+        copy.inferenceFps = stats.inferenceFps;
+        copy.latencyMillis = stats.latencyMillis;
+        copy.frameWidth = stats.frameWidth;
+        copy.frameHeight = stats.frameHeight;
+        copy.rotationDegrees = stats.rotationDegrees;
+        copy.maskIndex = stats.maskIndex;
+        return copy;
+    }
+}
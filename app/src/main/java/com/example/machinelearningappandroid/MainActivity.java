@@ -5,41 +5,35 @@ import androidx.appcompat.app.AppCompatActivity;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
+import android.media.ExifInterface;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
+import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.pytorch.IValue;
-import org.pytorch.LiteModuleLoader;
-import org.pytorch.Module;
-import org.pytorch.Tensor;
-import org.pytorch.torchvision.TensorImageUtils;
-
-import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Locale;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.crypto.Mac;
 
 public class MainActivity extends AppCompatActivity {
-    public static final int PIXELS_IN_IMAGE = 512 * 512;
+    public static final int MODEL_INPUT_SIZE = 512;
     public static final String APP_TAG = "MachineLearningApp";
     public static final float SEGMENTATION_THRESHOLD = 0.8f;
     public static final float ATTRIBUTES_THRESHOLD = 0.5f;
@@ -48,6 +42,10 @@ public class MainActivity extends AppCompatActivity {
             "Skin", "Nose", "Glasses", "Left Eye", "Right Eye", "Left Brow", "Right Brow", "Left Ear", "Right Ear",
             "Mouth", "Upper Lip", "Lower Lip", "Hair", "Hat", "Ear Ring", "Neck Lower", "Neck", "Cloth"
     };
+    //Colour of each of the MASK_NAMES in the parsing map
+    public static final int[] PARSING_PALETTE = LabelMap.createPalette(MASK_NAMES.length, 0xFF);
+    //The common pool isn't available until API 24, so the parsing map gets its own pool with a thread per core
+    private static final ForkJoinPool LABEL_MAP_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
     public static final String[] ATTRIBUTES = new String[] {
             "5 O'clock Shadow", "Arched Eyebrows", "Attractive", "Bags Under Eyes", "Bald", "Bangs", "Big Lips",
             "Big Nose", "Black Hair", "Blond Hair", "Blurry", "Brown Hair", "Bushy Eyebrows", "Chubby", "Double Chin",
@@ -58,12 +56,42 @@ public class MainActivity extends AppCompatActivity {
     };
 
     private Bitmap inputImageBitmap = null;
-    private Module module = null;
-    private int[] imageOutputs;
-    private ArrayList<String> multiModelAttributes = new ArrayList<>();
+    //Set when the input was decoded here rather than handed over by the camera, so it can be given back for reuse
+    private boolean decodedInputImage = false;
+    private Uri inputImageUri = null;
+    //How far the input image has to be turned clockwise to be upright, applied while it is converted to a tensor
+    private int inputRotationDegrees = 0;
+    //Large upright images are segmented in tiles at full resolution instead of being shrunk to the model input
+    private boolean useTiledInference = false;
+    private InferenceScheduler inferenceScheduler = null;
+    private SegmentationResult segmentationResult = null;
+    private final MaskBitmapPool maskBitmapPool = new MaskBitmapPool();
+    //When set every mask is drawn in the background after inference so browsing them never allocates, only done
+    //when the heap has room for a bitmap per mask
+    private boolean prerenderMasks = false;
+    //Key of the stored outputs of the last run, handed to the attributes screen and kept across recreation
+    private String resultKey = null;
     private boolean multiModelSegmentationFinished = false;
     private int currentMaskIndex = 0;
     private ModelType modelType = ModelType.SEGMENTATION;
+    private final InferenceEngine inferenceEngine = new InferenceEngine();
+    //Timings of the inference that is currently in progress, null once it has been reported
+    private PerformanceTracer.Run currentRun = null;
+    //Reused each time the parsing map is shown, along with the pixels it is drawn from
+    private Bitmap parsingMapBitmap = null;
+    private int[] parsingMapPixels = null;
+
+    //Holds the segmentation output and the key of the stored result so they can be handed back to the UI thread
+    //together
+    private static class ModelOutput {
+        final SegmentationResult segmentationOutputs;
+        final String resultKey;
+
+        ModelOutput(SegmentationResult segmentationOutputs, String resultKey) {
+            this.segmentationOutputs = segmentationOutputs;
+            this.resultKey = resultKey;
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -76,17 +104,43 @@ public class MainActivity extends AppCompatActivity {
         //Get the file name of the image saved in the CameraView
         Bundle extras = getIntent().getExtras();
         String imagePath = "";
-        boolean fromNewApi = false;
+        int capturedImageId = -1;
         if (extras != null) {
             imagePath = extras.getString("imagePath");
-            fromNewApi = extras.getBoolean("fromNewApi");
+            capturedImageId = extras.getInt("capturedImageId", -1);
             String modelTypeString = extras.getString("modelType");
             this.modelType = ModelType.valueOf(modelTypeString);
         }else {
             Log.e(APP_TAG, "No image passed to activity");
             finish();
         }
-        inputImageBitmap = loadImageFromStorage(imagePath);
+        //Loading is timed on its own, the inference run only starts when the model is asked for
+        PerformanceTracer.Run loadRun = PerformanceTracer.startLoadRun(this.modelType);
+        loadRun.beginStage("load_image");
+        if (capturedImageId != -1) {
+            //Auto cropped faces are handed over in memory, still in the orientation the camera stored them in
+            CaptureHandoff.Capture capture = CaptureHandoff.get(capturedImageId);
+            if (capture == null) {
+                Log.e(APP_TAG, "Captured image is no longer available");
+                finish();
+                return;
+            }
+            inputImageBitmap = capture.image;
+            inputRotationDegrees = capture.rotationDegrees;
+        } else {
+            inputImageUri = Uri.parse(imagePath);
+            inputRotationDegrees = readExifRotation(inputImageUri);
+            //Tiles are read from the file as it is stored, so only images that don't need rotating can be tiled
+            useTiledInference = inputRotationDegrees == 0 && this.modelType == ModelType.SEGMENTATION
+                    && TiledInferenceRunner.shouldTile(getContentResolver(), inputImageUri);
+            inputImageBitmap = loadImageFromStorage(inputImageUri);
+            if (inputImageBitmap == null) {
+                finish();
+                return;
+            }
+            decodedInputImage = true;
+        }
+        loadRun.finish();
 
         //Set the title of the page based on which model we are using
         switch(this.modelType) {
@@ -100,203 +154,397 @@ public class MainActivity extends AppCompatActivity {
                 setTitle("Run Joint Model");
         }
 
-        if (!fromNewApi) {
-            //Rotate image 270 degrees so it is upright
-            Matrix matrix = new Matrix();
-            matrix.postRotate(270);
-            inputImageBitmap = Bitmap.createBitmap(inputImageBitmap, 0, 0,
-                    inputImageBitmap.getWidth(), inputImageBitmap.getHeight(), matrix,
-                    true);
-        }
-
-        //Load PyTorch Model into Module and input image as bitmap
-        try {
-            switch(this.modelType){
-                case SEGMENTATION:
-                    module = LiteModuleLoader.load(assetFilePath(this,
-                            "segmentation_model.ptl"));
-                    break;
-                case ATTRIBUTES:
-                    module = LiteModuleLoader.load(assetFilePath(this,
-                            "attributes_model.ptl"));
-                    break;
-                case JOINT:
-                    module = LiteModuleLoader.load(assetFilePath(this,
-                            "multi_model.ptl"));
-            }
-        } catch (IOException e) {
-            Log.e(APP_TAG, "Error loading PyTorch module", e);
-            finish();
-        }
+        //Make sure the model starts loading while the UI is being set up, it is usually already warm from the selection screen
+        inferenceScheduler = InferenceScheduler.getInstance(this);
+        inferenceScheduler.warm(this.modelType);
+        prerenderMasks = MaskBitmapPool.canPrerender(this, NUM_OUTPUT_MASKS, MODEL_INPUT_SIZE, MODEL_INPUT_SIZE);
 
         //Setup UI Components
         ImageView imageView = findViewById(R.id.imageView);
-        imageView.setImageBitmap(inputImageBitmap);
+        showInputImage(imageView);
 
         //Add functionality to the restart and segment buttons
         final Button restartButton = findViewById(R.id.restartButton);
         final Button performButton = findViewById(R.id.performButton);
         final TextView imageNameText = findViewById(R.id.imageName);
+        final Button parsingMapButton = findViewById(R.id.parsingMapButton);
+        parsingMapButton.setEnabled(false);
+        if (this.modelType == ModelType.ATTRIBUTES) {
+            parsingMapButton.setVisibility(View.GONE);
+        }
 
         restartButton.setOnClickListener(v -> {
+            //Throw away any inference that is still running for the previous attempt
+            inferenceEngine.cancelAll();
+            currentRun = null;
+            parsingMapButton.setEnabled(false);
             performButton.setEnabled(true);
             performButton.setText(R.string.perform_model);
-            imageView.setImageBitmap(inputImageBitmap);
+            showInputImage(imageView);
+            imageNameText.setText(R.string.input_image);
             currentMaskIndex = 0;
+            multiModelSegmentationFinished = false;
         });
 
         performButton.setOnClickListener(v -> {
             if (this.modelType == ModelType.SEGMENTATION || (this.modelType == ModelType.JOINT && !this.multiModelSegmentationFinished)) {
                 if (currentMaskIndex == 0) {
                     Toast.makeText(getBaseContext(), R.string.performing, Toast.LENGTH_SHORT).show();
+                    performButton.setEnabled(false);
+                    performButton.setText(R.string.run_model);
+                    final PerformanceTracer.Run run = startRun();
+                    final int firstMask = currentMaskIndex;
+                    //The mask is shown as soon as it is drawn, the rest of the output is finished after it
+                    InferenceEngine.OnResult<Bitmap> onMaskPreview = bitmap -> {
+                        imageView.setRotation(0);
+                        imageView.setImageBitmap(bitmap);
+                        imageNameText.setText("Viewing Mask: " + MASK_NAMES[firstMask]);
+                    };
+                    InferenceEngine.OnResult<ModelOutput> onOutput = output -> {
+                        setSegmentationResult(output.segmentationOutputs);
+                        resultKey = output.resultKey;
+                        performButton.setEnabled(true);
+                        parsingMapButton.setEnabled(true);
+                        run.beginStage("render_mask");
+                        showNextMask(imageView, performButton, imageNameText);
+                        finishRun(run);
+                    };
                     if (this.modelType == ModelType.SEGMENTATION) {
-                        runSegmentationModel();
+                        inferenceEngine.submit(reporter -> runSegmentationModel(run, firstMask, reporter),
+                                onMaskPreview, onOutput, e -> onInferenceFailed(e, performButton));
                     } else {
-                        runJointModel();
-                    }
-                }
-                imageView.setImageBitmap(getSegmentationMask());
-                performButton.setText(getString(R.string.view_next));
-                imageNameText.setText("Viewing Mask: " + MASK_NAMES[currentMaskIndex]);
-                currentMaskIndex++;
-                if (currentMaskIndex == NUM_OUTPUT_MASKS) {
-                    if (this.modelType == ModelType.SEGMENTATION) {
-                        performButton.setEnabled(false);
-                    }
-                    else {
-                        performButton.setText("View Attributes Information");
-                        this.multiModelSegmentationFinished = true;
+                        inferenceEngine.submit(reporter -> runJointModel(run, firstMask, reporter),
+                                onMaskPreview, onOutput, e -> onInferenceFailed(e, performButton));
                     }
+                } else {
+                    showNextMask(imageView, performButton, imageNameText);
                 }
             }
             else if(this.modelType == ModelType.JOINT && this.multiModelSegmentationFinished) {
                 Intent intent = new Intent(MainActivity.this, AttributesActivity.class);
-                intent.putExtra("faceAttributes", this.multiModelAttributes);
+                intent.putExtra("resultKey", resultKey);
                 startActivity(intent);
             }
             else {
-                runAttributesModel();
+                performButton.setEnabled(false);
+                performButton.setText(R.string.run_model);
+                final PerformanceTracer.Run run = startRun();
+                inferenceEngine.submit(() -> runAttributesModel(run), output -> {
+                    finishRun(run);
+                    resultKey = output.resultKey;
+                    performButton.setEnabled(true);
+                    performButton.setText(R.string.perform_model);
+                    Intent intent = new Intent(MainActivity.this, AttributesActivity.class);
+                    intent.putExtra("resultKey", resultKey);
+                    startActivity(intent);
+                }, e -> onInferenceFailed(e, performButton));
             }
         });
-    }
 
-    //Loads a saved image from storage
-    private Bitmap loadImageFromStorage(String path) {
-        try {
-            InputStream stream = getContentResolver().openInputStream(Uri.parse(path));
-            Bitmap image = BitmapFactory.decodeStream(stream);
-            return image;
-        } catch (Exception e) {
-            Log.e(APP_TAG, "Error loading image from storage");
-            e.printStackTrace();
-            finish();
+        //Shows every mask at once, each pixel coloured by whichever mask scored highest there
+        parsingMapButton.setOnClickListener(v -> {
+            final SegmentationResult result = segmentationResult;
+            if (result == null) {
+                return;
+            }
+            parsingMapButton.setEnabled(false);
+            inferenceEngine.submit(() -> renderParsingMap(result), labelMap -> {
+                parsingMapButton.setEnabled(true);
+                imageView.setRotation(0);
+                imageView.setImageBitmap(parsingMapBitmap);
+                imageNameText.setText(R.string.viewing_parsing_map);
+            }, e -> {
+                Log.e(APP_TAG, "Error building parsing map", e);
+                parsingMapButton.setEnabled(true);
+            });
+        });
+
+        //Bring back the masks from before the activity was recreated without running the model again
+        if (savedInstanceState != null && savedInstanceState.getString("resultKey") != null
+                && this.modelType != ModelType.ATTRIBUTES) {
+            final String savedResultKey = savedInstanceState.getString("resultKey");
+            final int savedMaskIndex = savedInstanceState.getInt("currentMaskIndex");
+            performButton.setEnabled(false);
+            inferenceEngine.submit(() -> loadSegmentationResult(savedResultKey), result -> {
+                setSegmentationResult(result);
+                resultKey = savedResultKey;
+                performButton.setEnabled(true);
+                parsingMapButton.setEnabled(true);
+                if (savedMaskIndex > 0) {
+                    currentMaskIndex = savedMaskIndex - 1;
+                    showNextMask(imageView, performButton, imageNameText);
+                }
+            }, e -> {
+                Log.e(APP_TAG, "Unable to restore saved result", e);
+                performButton.setEnabled(true);
+            });
         }
+    }
 
-        return null;
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        //Only the key is saved, the result itself is read back from the result cache so the bundle stays tiny
+        if (resultKey != null) {
+            outState.putString("resultKey", resultKey);
+            outState.putInt("currentMaskIndex", currentMaskIndex);
+        }
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        //Keep the report on the device up to date so it can be pulled at any time
+        if (PerformanceTracer.isEnabled()) {
+            inferenceEngine.submit(() -> PerformanceTracer.dumpReport(getApplicationContext()), file -> {},
+                    e -> Log.e(APP_TAG, "Error writing performance report", e));
+        }
+    }
 
-    //Runs the segmentation model on the input image
-    private void runSegmentationModel() {
-        //Sets up input tensors
-        final Tensor inputTensor = TensorImageUtils.bitmapToFloat32Tensor(inputImageBitmap,
-                TensorImageUtils.TORCHVISION_NORM_MEAN_RGB,
-                TensorImageUtils.TORCHVISION_NORM_STD_RGB);
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        //A run that is still reading the input would see it overwritten, so the bitmap is only reused when idle
+        boolean wasBusy = inferenceEngine.isBusy();
+        inferenceEngine.shutdown();
+        setSegmentationResult(null);
+        if (decodedInputImage && !wasBusy) {
+            InputImageDecoder.getInstance(this).release(inputImageBitmap);
+        }
+    }
 
-        //Perform forward pass through the network
-        final Tensor outTensor = module.forward(IValue.from(inputTensor)).toTensor();
-        getSegmentationOutput(outTensor);
+    //Displays the mask at the current index and moves the index on to the next mask
+    private void showNextMask(ImageView imageView, Button performButton, TextView imageNameText) {
+        //Masks are already upright, as the model was given the rotated image
+        imageView.setRotation(0);
+        imageView.setImageBitmap(getSegmentationMask());
+        performButton.setText(getString(R.string.view_next));
+        imageNameText.setText("Viewing Mask: " + MASK_NAMES[currentMaskIndex]);
+        currentMaskIndex++;
+        if (currentMaskIndex == NUM_OUTPUT_MASKS) {
+            if (this.modelType == ModelType.SEGMENTATION) {
+                performButton.setEnabled(false);
+            }
+            else {
+                performButton.setText("View Attributes Information");
+                this.multiModelSegmentationFinished = true;
+            }
+        }
     }
 
-    //Runs the attributes model on the input image
-    private void runAttributesModel() {
-        //Set up the input tensor
-        final Tensor inputTensor = TensorImageUtils.bitmapToFloat32Tensor(inputImageBitmap,
-                TensorImageUtils.TORCHVISION_NORM_MEAN_RGB,
-                TensorImageUtils.TORCHVISION_NORM_STD_RGB);
+    //The input image is stored unrotated, so the view is turned to show it upright rather than copying the bitmap
+    //The view is square, so it still fits the same space once turned
+    private void showInputImage(ImageView imageView) {
+        imageView.setRotation(inputRotationDegrees);
+        imageView.setImageBitmap(inputImageBitmap);
+    }
 
-        //Perform forward pass through the network
-        final Tensor outTensor = module.forward(IValue.from(inputTensor)).toTensor();
-        ArrayList<String> faceAttributes = this.getAttributesOutput(outTensor);
+    //Starts timing an inference from the moment the user asks for it
+    private PerformanceTracer.Run startRun() {
+        currentRun = PerformanceTracer.startRun(this.modelType);
+        return currentRun;
+    }
 
-        Intent intent = new Intent(MainActivity.this, AttributesActivity.class);
-        intent.putExtra("faceAttributes", faceAttributes);
-        startActivity(intent);
+    private void finishRun(PerformanceTracer.Run run) {
+        run.finish();
+        if (currentRun == run) {
+            currentRun = null;
+        }
     }
 
-    private void runJointModel() {
-        //Set up the input tensor
-        final Tensor inputTensor = TensorImageUtils.bitmapToFloat32Tensor(inputImageBitmap,
-                TensorImageUtils.TORCHVISION_NORM_MEAN_RGB,
-                TensorImageUtils.TORCHVISION_NORM_STD_RGB);
-
-        //Perform forward pass through the network
-        //Get both the segmentation and attributes results from the joint model
-        final IValue[] output = module.forward(IValue.from(inputTensor)).toTuple();
-        final Tensor segmentationOutput = output[0].toTensor();
-        final Tensor attributesOutput = output[1].toTensor();
-
-        //Get both segmentation and attributes outputs
-        getSegmentationOutput(segmentationOutput);
-        this.multiModelAttributes = this.getAttributesOutput(attributesOutput);
+    //Resets the perform button so that the user can try running the model again
+    private void onInferenceFailed(Exception e, Button performButton) {
+        Log.e(APP_TAG, "Error running PyTorch module", e);
+        Toast.makeText(getBaseContext(), "Failed to run the model", Toast.LENGTH_SHORT).show();
+        //Failed runs aren't reported, the next attempt starts its timings afresh
+        currentRun = null;
+        performButton.setEnabled(true);
+        performButton.setText(R.string.perform_model);
     }
 
-    private void getSegmentationOutput(Tensor segmentationTensor) {
-        final float[] segmentationValues = segmentationTensor.getDataAsFloatArray();
-        imageOutputs = new int[segmentationValues.length];
-        for (int i = 0; i < segmentationValues.length; i++) {
-            if (segmentationValues[i] > SEGMENTATION_THRESHOLD) {
-                imageOutputs[i] = 0xFFFFFFFF;
-            } else {
-                imageOutputs[i] = 0xFF0000FF;
+    //How far the saved image has to be turned clockwise to be upright, from its EXIF orientation
+    //Reading EXIF from a stream needs Nougat, older versions always treat the image as upright
+    private int readExifRotation(Uri uri) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return 0;
+        }
+        try (InputStream stream = getContentResolver().openInputStream(uri)) {
+            switch (new ExifInterface(stream).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
             }
+        } catch (IOException e) {
+            Log.e(APP_TAG, "Unable to read image orientation", e);
+            return 0;
+        }
+    }
+
+    //Loads a saved image from storage
+    //Only the centre square reaches the model, so only that is decoded, at about the model's input size. Tiled
+    //images are shown whole as the masks cover the whole image
+    private Bitmap loadImageFromStorage(Uri uri) {
+        try {
+            InputImageDecoder decoder = InputImageDecoder.getInstance(this);
+            return useTiledInference ? decoder.decodeWhole(uri, MODEL_INPUT_SIZE)
+                    : decoder.decodeCentreSquare(uri, MODEL_INPUT_SIZE);
+        } catch (IOException e) {
+            Log.e(APP_TAG, "Error loading image from storage", e);
+            return null;
+        }
+    }
+
+
+    //Runs the segmentation model on the input image, called on the inference worker thread
+    //The scheduler may answer from the joint model, or from outputs it already has for this image
+    private ModelOutput runSegmentationModel(PerformanceTracer.Run run, int firstMask,
+                                             InferenceEngine.ProgressReporter<Bitmap> reporter) throws Exception {
+        if (useTiledInference) {
+            return runTiledSegmentationModel(run, firstMask, reporter);
         }
+        final HeadScheduler.Outputs outputs = inferenceScheduler.getOutputs(inputImageBitmap, inputRotationDegrees,
+                ModelType.SEGMENTATION, run);
+        run.beginStage("segmentation_output");
+        SegmentationResult result = getSegmentationOutput(outputs);
+        renderMasksProgressively(result, firstMask, run, reporter);
+        run.endStage();
+        return new ModelOutput(result, outputs.resultKey);
     }
 
-    //Converts the tensor output of the attributes model into a list of string containing the attributes mappings
-    private ArrayList<String> getAttributesOutput(Tensor attributesTensor) {
-        ArrayList<String> outputs = new ArrayList<String>();
-        final float[] attributesValues = attributesTensor.getDataAsFloatArray();
-        for (int i = 0; i < attributesValues.length; i++) {
-            if (attributesValues[i] > ATTRIBUTES_THRESHOLD) {
-                outputs.add(this.ATTRIBUTES[i]);
+    //Segments the full resolution image in tiles, or reads the stored result for the same file, and keeps the full
+    //resolution masks and label map. The ones that are viewed are scaled down so the rest of the screen works the same
+    private ModelOutput runTiledSegmentationModel(PerformanceTracer.Run run, int firstMask,
+                                                  InferenceEngine.ProgressReporter<Bitmap> reporter) throws Exception {
+        final HeadScheduler.Outputs outputs = inferenceScheduler.getTiledOutputs(inputImageUri, run);
+        run.beginStage("segmentation_output");
+        SegmentationResult result = new SegmentationResult(scaleForViewing(outputs.record));
+        renderMasksProgressively(result, firstMask, run, reporter);
+        run.endStage();
+        return new ModelOutput(result, outputs.resultKey);
+    }
+
+    //Full resolution results from tiled inference are scaled so their longer side is the usual output size, keeping
+    //the aspect ratio of the whole image they are shown over
+    private static ResultRecord scaleForViewing(ResultRecord record) throws IOException {
+        int longerSide = Math.max(record.getWidth(), record.getHeight());
+        if (longerSide <= MODEL_INPUT_SIZE) {
+            return record;
+        }
+        return record.scaled(record.getWidth() * MODEL_INPUT_SIZE / longerSide,
+                record.getHeight() * MODEL_INPUT_SIZE / longerSide);
+    }
+
+    //Runs the attributes model on the input image, called on the inference worker thread
+    private ModelOutput runAttributesModel(PerformanceTracer.Run run) throws Exception {
+        final HeadScheduler.Outputs outputs = inferenceScheduler.getOutputs(inputImageBitmap, inputRotationDegrees,
+                ModelType.ATTRIBUTES, run);
+        return new ModelOutput(null, outputs.resultKey);
+    }
+
+    //Gets both the segmentation and attributes results for the input image, called on the inference worker thread
+    private ModelOutput runJointModel(PerformanceTracer.Run run, int firstMask,
+                                      InferenceEngine.ProgressReporter<Bitmap> reporter) throws Exception {
+        final HeadScheduler.Outputs outputs = inferenceScheduler.getOutputs(inputImageBitmap, inputRotationDegrees,
+                ModelType.JOINT, run);
+        run.beginStage("joint_output");
+        SegmentationResult result = getSegmentationOutput(outputs);
+        renderMasksProgressively(result, firstMask, run, reporter);
+        run.endStage();
+        return new ModelOutput(result, outputs.resultKey);
+    }
+
+    //Reports the mask being viewed as coarse previews and then exactly as soon as each is ready, so it is on screen
+    //long before the rest of the output is finished. Every other mask is drawn too when pre-rendering is on
+    private void renderMasksProgressively(SegmentationResult result, int firstMask, PerformanceTracer.Run run,
+                                          InferenceEngine.ProgressReporter<Bitmap> reporter) {
+        run.beginStage("first_mask");
+        if (!prerenderMasks) {
+            maskBitmapPool.renderFirstMask(result, firstMask, (maskIndex, step, bitmap) -> reporter.report(bitmap));
+            return;
+        }
+        maskBitmapPool.prerenderAll(result, firstMask, (maskIndex, step, bitmap) -> {
+            reporter.report(bitmap);
+            if (step == 1) {
+                run.beginStage("remaining_masks");
             }
+        });
+    }
+
+    //Reads a stored result back, full resolution ones from tiled inference are scaled the way they were first shown
+    //Results without a label map can't give the right parsing map, so they are left to be run again
+    private SegmentationResult loadSegmentationResult(String key) throws IOException {
+        ResultRecord record = inferenceScheduler.getStoredResult(key);
+        if (record == null || !record.hasLabelMap()) {
+            throw new IOException("Stored result " + key + " is no longer available");
         }
-        return outputs;
+        return new SegmentationResult(scaleForViewing(record));
     }
 
-    //Gets one of the output masks for the input image based on the current mask index variable
-    private Bitmap getSegmentationMask() {
-        if (currentMaskIndex >= NUM_OUTPUT_MASKS) {
-            return null;
+    //Wraps the raw scores without copying them, each mask is only thresholded when it is viewed
+    //Stored results are used as they are, with each mask decoded when it is viewed
+    private SegmentationResult getSegmentationOutput(HeadScheduler.Outputs outputs) {
+        if (outputs.heads == null) {
+            return new SegmentationResult(outputs.record);
         }
+        final InferenceBackend.Outputs heads = outputs.heads;
+        return new SegmentationResult(heads.segmentation, heads, heads.numMasks, heads.maskWidth, heads.maskHeight,
+                SEGMENTATION_THRESHOLD);
+    }
 
-        //Get the output mask at the current index
-        Bitmap bmpSegmentation = Bitmap.createScaledBitmap(inputImageBitmap, inputImageBitmap.getWidth(), inputImageBitmap.getHeight(), true);
-        Bitmap outputSegmentationMask = bmpSegmentation.copy(bmpSegmentation.getConfig(), true);
-        outputSegmentationMask.setPixels(imageOutputs, PIXELS_IN_IMAGE * currentMaskIndex, outputSegmentationMask.getWidth(),
-                0, 0, outputSegmentationMask.getWidth(), outputSegmentationMask.getHeight());
+    //Replaces the current result, giving its mask buffer back to the pool
+    private void setSegmentationResult(SegmentationResult result) {
+        //Results from a run have had their masks drawn while it was running
+        boolean prerendered = maskBitmapPool.isPrerendered(result);
+        if (!prerendered) {
+            maskBitmapPool.clearPrerendered();
+        }
+        if (segmentationResult != null) {
+            segmentationResult.release();
+        }
+        segmentationResult = result;
 
-        return outputSegmentationMask;
+        if (result != null && prerenderMasks && !prerendered) {
+            inferenceEngine.submit(() -> {
+                maskBitmapPool.prerenderAll(result);
+                return null;
+            }, ignored -> {}, e -> Log.e(APP_TAG, "Error pre-rendering masks", e));
+        }
     }
 
-    //Creates a new file in the /files app directory and copies all the data from our asset into it
-    public static String assetFilePath(Context context, String assetName) throws IOException {
-        File file = new File(context.getFilesDir(), assetName);
-        if (file.exists() && file.length() > 0) {
-            return file.getAbsolutePath();
+    //Builds the label map for every mask in one pass and draws it into the reused parsing map bitmap
+    private LabelMap renderParsingMap(SegmentationResult result) {
+        LabelMap labelMap = result.computeLabelMap(LABEL_MAP_POOL);
+        int width = labelMap.getWidth();
+        int height = labelMap.getHeight();
+        if (parsingMapBitmap == null || parsingMapBitmap.getWidth() != width || parsingMapBitmap.getHeight() != height) {
+            parsingMapBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            parsingMapPixels = new int[width * height];
         }
+        labelMap.render(parsingMapPixels, 0, PARSING_PALETTE, SegmentationResult.BACKGROUND_COLOUR);
+        parsingMapBitmap.setPixels(parsingMapPixels, 0, width, 0, 0, width, height);
 
-        try (InputStream is = context.getAssets().open(assetName)) {
-            try (OutputStream os = new FileOutputStream(file)) {
-                 byte[] buffer = new byte[4 * 1024];
-                 int read;
-                 while((read = is.read(buffer)) != -1) {
-                     os.write(buffer, 0, read);
-                 }
-                 os.flush();
+        for (int i = 0; i < labelMap.getNumClasses(); i++) {
+            if (labelMap.getPixelCount(i) > 0) {
+                Log.i(APP_TAG, String.format(Locale.ENGLISH, "%s: %.1f%% of image, mean confidence %.2f", MASK_NAMES[i],
+                        100 * labelMap.getArea(i), labelMap.getMeanConfidence(i)));
             }
-            return file.getAbsolutePath();
         }
+        return labelMap;
+    }
+
+    //Gets one of the output masks for the input image based on the current mask index variable
+    private Bitmap getSegmentationMask() {
+        if (currentMaskIndex >= NUM_OUTPUT_MASKS) {
+            return null;
+        }
+
+        //Get the output mask at the current index, drawn into a bitmap from the pool
+        return maskBitmapPool.getMask(segmentationResult, currentMaskIndex);
     }
 }
\ No newline at end of file
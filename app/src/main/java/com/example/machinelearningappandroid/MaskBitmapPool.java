@@ -0,0 +1,157 @@
+package com.example.machinelearningappandroid;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+
+//Keeps the bitmaps that segmentation masks are drawn into so that viewing a mask doesn't allocate a new bitmap
+//Two display bitmaps are used in turn, so the one currently shown by the ImageView is never written to
+//Exact masks handed out while a run is drawing them are never written again, so the UI can show them at any time
+//Previews of the first mask all go into one bitmap, which is only ever drawn over by a finer preview of the same
+//mask, so a preview caught half drawn on screen is part way between two previews rather than a different image
+public class MaskBitmapPool {
+    private static final int DISPLAY_BITMAP_COUNT = 2;
+    //Fraction of the app's heap limit that a full set of pre-rendered masks may take up
+    private static final int PRERENDER_BUDGET_DIVISOR = 8;
+
+    private final Bitmap[] displayBitmaps = new Bitmap[DISPLAY_BITMAP_COUNT];
+    private int nextDisplayBitmap = 0;
+    private Bitmap previewBitmap = null;
+
+    //Optional set of every mask drawn ahead of time, reused between runs
+    private Bitmap[] prerenderedMasks = null;
+    private volatile SegmentationResult prerenderedResult = null;
+    //The pre-rendered mask last handed out, which may still be on screen so isn't reused by the next set
+    private Bitmap shownMask = null;
+    //Only touched by the thread doing the rendering
+    private final ProgressiveMaskRenderer renderer = new ProgressiveMaskRenderer();
+
+    //Pre-rendering keeps a bitmap per mask alive, about 18MB for the full size output, so it is only done on devices
+    //whose heap limit leaves plenty of room for it
+    public static boolean canPrerender(Context context, int numMasks, int width, int height) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager.isLowRamDevice()) {
+            return false;
+        }
+        long prerenderedBytes = (long) numMasks * width * height * 4;
+        return prerenderedBytes <= activityManager.getMemoryClass() * 1024L * 1024L / PRERENDER_BUDGET_DIVISOR;
+    }
+
+    //Returns a bitmap containing the mask, using the pre-rendered copy when one is ready for this result
+    public synchronized Bitmap getMask(SegmentationResult result, int maskIndex) {
+        if (prerenderedResult == result && prerenderedMasks != null) {
+            shownMask = prerenderedMasks[maskIndex];
+            return shownMask;
+        }
+
+        Bitmap bitmap = takeDisplayBitmap(result);
+        bitmap.setPixels(result.getMaskPixels(maskIndex), 0, result.getWidth(), 0, 0,
+                result.getWidth(), result.getHeight());
+        return bitmap;
+    }
+
+    //The display bitmap that was shown longest ago, so not the one on screen now
+    private synchronized Bitmap takeDisplayBitmap(SegmentationResult result) {
+        Bitmap bitmap = displayBitmaps[nextDisplayBitmap];
+        if (!fits(bitmap, result)) {
+            bitmap = createBitmap(result);
+            displayBitmaps[nextDisplayBitmap] = bitmap;
+        }
+        nextDisplayBitmap = (nextDisplayBitmap + 1) % DISPLAY_BITMAP_COUNT;
+        return bitmap;
+    }
+
+    //Only used by the rendering thread
+    private Bitmap takePreviewBitmap(SegmentationResult result) {
+        if (!fits(previewBitmap, result)) {
+            previewBitmap = createBitmap(result);
+        }
+        return previewBitmap;
+    }
+
+    //Called on the rendering thread as each mask is drawn, the bitmap is finished and isn't written to again while
+    //it may be on screen
+    public interface OnMaskRendered {
+        void onMaskRendered(int maskIndex, int step, Bitmap bitmap);
+    }
+
+    //Draws coarse previews of a mask and then the mask itself into the next display bitmap, for when the masks
+    //aren't pre-rendered and the others are drawn as they are viewed
+    public void renderFirstMask(SegmentationResult result, int firstMask, OnMaskRendered listener) {
+        renderer.renderFirst(result, firstMask, (maskIndex, step, pixels) -> {
+            Bitmap bitmap = step > 1 ? takePreviewBitmap(result) : takeDisplayBitmap(result);
+            bitmap.setPixels(pixels, 0, result.getWidth(), 0, 0, result.getWidth(), result.getHeight());
+            listener.onMaskRendered(maskIndex, step, bitmap);
+        });
+    }
+
+    //Draws every mask of the result, meant to be run on a background thread straight after inference
+    public void prerenderAll(SegmentationResult result) {
+        prerenderAll(result, 0, null);
+    }
+
+    //Draws firstMask first, after coarse previews of it, so it can be shown before the rest are drawn
+    //The listener is only told about firstMask, the others are ready once this returns
+    public void prerenderAll(SegmentationResult result, int firstMask, OnMaskRendered listener) {
+        Bitmap[] masks;
+        synchronized (this) {
+            prerenderedResult = null;
+            masks = prerenderedMasks;
+            if (masks == null || masks.length != result.getNumMasks()) {
+                masks = new Bitmap[result.getNumMasks()];
+            }
+            //The mask on screen is left to the old set, the new set draws that one into a bitmap of its own
+            for (int i = 0; i < masks.length; i++) {
+                if (masks[i] == shownMask) {
+                    masks[i] = null;
+                }
+            }
+        }
+
+        final Bitmap[] renderedMasks = masks;
+        int rendered = renderer.render(result, firstMask, listener != null, (maskIndex, step, pixels) -> {
+            if (step > 1) {
+                Bitmap preview = takePreviewBitmap(result);
+                preview.setPixels(pixels, 0, result.getWidth(), 0, 0, result.getWidth(), result.getHeight());
+                listener.onMaskRendered(maskIndex, step, preview);
+                return;
+            }
+            Bitmap bitmap = renderedMasks[maskIndex];
+            if (!fits(bitmap, result)) {
+                bitmap = createBitmap(result);
+                renderedMasks[maskIndex] = bitmap;
+            }
+            bitmap.setPixels(pixels, 0, result.getWidth(), 0, 0, result.getWidth(), result.getHeight());
+            if (listener != null && maskIndex == firstMask) {
+                synchronized (this) {
+                    shownMask = bitmap;
+                }
+                listener.onMaskRendered(maskIndex, step, bitmap);
+            }
+        });
+
+        synchronized (this) {
+            prerenderedMasks = masks;
+            //A set cut short by cancellation is kept for its bitmaps but never shown
+            prerenderedResult = rendered == masks.length ? result : null;
+        }
+    }
+
+    public boolean isPrerendered(SegmentationResult result) {
+        return result != null && prerenderedResult == result;
+    }
+
+    //Stops a stale set of pre-rendered masks being shown for a newer result
+    public synchronized void clearPrerendered() {
+        prerenderedResult = null;
+    }
+
+    private static Bitmap createBitmap(SegmentationResult result) {
+        return Bitmap.createBitmap(result.getWidth(), result.getHeight(), Bitmap.Config.ARGB_8888);
+    }
+
+    private static boolean fits(Bitmap bitmap, SegmentationResult result) {
+        return bitmap != null && bitmap.isMutable() && bitmap.getWidth() == result.getWidth()
+                && bitmap.getHeight() == result.getHeight();
+    }
+}
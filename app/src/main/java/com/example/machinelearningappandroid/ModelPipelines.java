@@ -0,0 +1,39 @@
+package com.example.machinelearningappandroid;
+
+import org.pytorch.Module;
+
+import java.util.HashMap;
+
+//Keeps a ModelPipeline for each variant one caller runs, so each input buffer is only allocated once, and builds it
+//again whenever the registry has since loaded the variant's module afresh
+//Pipelines aren't thread safe, so each inference thread keeps its own instance of this
+public class ModelPipelines {
+    private final ModelRegistry modelRegistry;
+    private final float segmentationThreshold;
+    //Keyed by asset name
+    private final HashMap<String, LiteModuleBackend> backends = new HashMap<>();
+    private final HashMap<String, ModelPipeline> pipelines = new HashMap<>();
+
+    public ModelPipelines(ModelRegistry modelRegistry, float segmentationThreshold) {
+        this.modelRegistry = modelRegistry;
+        this.segmentationThreshold = segmentationThreshold;
+    }
+
+    //Blocks until the variant's module has been loaded
+    public ModelPipeline get(ModelVariant variant) throws Exception {
+        getBackend(variant);
+        return pipelines.get(variant.assetName);
+    }
+
+    //For callers that write their own batches of inputs rather than going through the pipeline
+    public LiteModuleBackend getBackend(ModelVariant variant) throws Exception {
+        Module module = modelRegistry.getModule(variant).get();
+        LiteModuleBackend backend = backends.get(variant.assetName);
+        if (backend == null || backend.getModule() != module) {
+            backend = new LiteModuleBackend(module, variant.modelType);
+            backends.put(variant.assetName, backend);
+            pipelines.put(variant.assetName, new ModelPipeline(backend, variant.inputSize, segmentationThreshold));
+        }
+        return backend;
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.machinelearningappandroid;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.pytorch.LiteModuleLoader;
+import org.pytorch.Module;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+//Process wide cache of loaded PyTorch modules so that each model is only read from disk once
+//Models are loaded lazily on a background thread and kept in an LRU that is limited by a memory budget
+//Models are loaded per variant, RuntimePolicy decides which variant of a model type runs at any moment
+public class ModelRegistry implements ComponentCallbacks2 {
+    //Fraction of the app's heap limit that loaded models are allowed to take up
+    private static final int MEMORY_BUDGET_DIVISOR = 4;
+
+    private static ModelRegistry instance = null;
+
+    private final Context context;
+    private final long memoryBudgetBytes;
+    private final ExecutorService loaderExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "ModelLoader"));
+
+    //Keyed by asset name, access ordered so that iteration starts from the least recently used model
+    private final LinkedHashMap<String, LoadedModel> loadedModels = new LinkedHashMap<>(4, 0.75f, true);
+    private final HashMap<String, Future<Module>> pendingLoads = new HashMap<>();
+    private final HashMap<String, LoadMetrics> metrics = new HashMap<>();
+    private long residentBytes = 0;
+
+    private static class LoadedModel {
+        final Module module;
+        final long sizeBytes;
+
+        LoadedModel(Module module, long sizeBytes) {
+            this.module = module;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    //Timing information for a single model, exposed so we can see the benefit of keeping models warm
+    public static class LoadMetrics {
+        public long coldLoadMillis = -1;
+        public int coldLoads = 0;
+        public int warmHits = 0;
+        //Loads started ahead of time by warm, which aren't requests for the model so aren't counted as hits
+        public int prefetches = 0;
+
+        LoadMetrics copy() {
+            LoadMetrics copy = new LoadMetrics();
+            copy.coldLoadMillis = coldLoadMillis;
+            copy.coldLoads = coldLoads;
+            copy.warmHits = warmHits;
+            copy.prefetches = prefetches;
+            return copy;
+        }
+    }
+
+    private ModelRegistry(Context context) {
+        this.context = context.getApplicationContext();
+        ActivityManager activityManager = (ActivityManager) this.context.getSystemService(Context.ACTIVITY_SERVICE);
+        this.memoryBudgetBytes = activityManager.getMemoryClass() * 1024L * 1024L / MEMORY_BUDGET_DIVISOR;
+        this.context.registerComponentCallbacks(this);
+    }
+
+    public static synchronized ModelRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new ModelRegistry(context);
+        }
+        return instance;
+    }
+
+    //Starts loading the model in the background if it is not already resident or loading
+    public synchronized void warm(ModelVariant variant) {
+        String assetName = variant.assetName;
+        if (loadedModels.containsKey(assetName) || pendingLoads.containsKey(assetName)) {
+            return;
+        }
+        getOrCreateMetrics(assetName).prefetches++;
+        startLoad(assetName);
+    }
+
+    //Returns a future for the module, which is already completed when the model is resident
+    //RuntimePolicy chooses which variant of a model type to run
+    public Future<Module> getModule(ModelVariant variant) {
+        return getModule(variant.assetName);
+    }
+
+    private synchronized Future<Module> getModule(String assetName) {
+        LoadMetrics modelMetrics = getOrCreateMetrics(assetName);
+        LoadedModel loadedModel = loadedModels.get(assetName);
+        if (loadedModel != null) {
+            modelMetrics.warmHits++;
+            FutureTask<Module> residentModule = new FutureTask<>(() -> loadedModel.module);
+            residentModule.run();
+            return residentModule;
+        }
+
+        Future<Module> pendingLoad = pendingLoads.get(assetName);
+        if (pendingLoad != null) {
+            return pendingLoad;
+        }
+        return startLoad(assetName);
+    }
+
+    private Future<Module> startLoad(String assetName) {
+        Future<Module> pendingLoad = loaderExecutor.submit(() -> loadModule(assetName));
+        pendingLoads.put(assetName, pendingLoad);
+        return pendingLoad;
+    }
+
+    public synchronized boolean isResident(ModelVariant variant) {
+        return loadedModels.containsKey(variant.assetName);
+    }
+
+    //Load counts and timings of one variant, RuntimePolicy.getVariant gives the one a model type is running on
+    public synchronized LoadMetrics getMetrics(ModelVariant variant) {
+        return getOrCreateMetrics(variant.assetName).copy();
+    }
+
+    //Drops every resident model, native memory is released once no inference holds a reference to it
+    public synchronized void evictAll() {
+        loadedModels.clear();
+        residentBytes = 0;
+    }
+
+    //Runs on the loader thread
+    private Module loadModule(String assetName) throws Exception {
+        try {
+            long startTime = SystemClock.elapsedRealtime();
+            String path = AssetStager.stage(context, assetName);
+            Module module;
+            try {
+                module = LiteModuleLoader.load(path);
+            } catch (RuntimeException e) {
+                //A corrupt staged copy can't be loaded, so copy it out of the APK again and retry once
+                Log.e(MainActivity.APP_TAG, "Failed to load " + assetName + ", staging it again", e);
+                AssetStager.invalidate(context, assetName);
+                path = AssetStager.stage(context, assetName);
+                module = LiteModuleLoader.load(path);
+            }
+            long loadTime = SystemClock.elapsedRealtime() - startTime;
+
+            synchronized (this) {
+                LoadMetrics modelMetrics = getOrCreateMetrics(assetName);
+                modelMetrics.coldLoadMillis = loadTime;
+                modelMetrics.coldLoads++;
+                long sizeBytes = new File(path).length();
+                loadedModels.put(assetName, new LoadedModel(module, sizeBytes));
+                residentBytes += sizeBytes;
+                trimToBudget(assetName);
+            }
+            Log.i(MainActivity.APP_TAG, "Loaded " + assetName + " in " + loadTime + "ms");
+            return module;
+        } finally {
+            synchronized (this) {
+                pendingLoads.remove(assetName);
+            }
+        }
+    }
+
+    //Evicts the least recently used models until we are under budget, the model that was just loaded is always kept
+    private void trimToBudget(String keep) {
+        Iterator<Map.Entry<String, LoadedModel>> iterator = loadedModels.entrySet().iterator();
+        while (residentBytes > memoryBudgetBytes && iterator.hasNext()) {
+            Map.Entry<String, LoadedModel> entry = iterator.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            residentBytes -= entry.getValue().sizeBytes;
+            iterator.remove();
+            Log.i(MainActivity.APP_TAG, "Evicted " + entry.getKey() + " to stay within memory budget");
+        }
+    }
+
+    //Keeps only the most recently used model
+    private synchronized void evictAllButMostRecent() {
+        ArrayList<String> assetNames = new ArrayList<>(loadedModels.keySet());
+        for (int i = 0; i < assetNames.size() - 1; i++) {
+            residentBytes -= loadedModels.remove(assetNames.get(i)).sizeBytes;
+        }
+    }
+
+    private LoadMetrics getOrCreateMetrics(String assetName) {
+        LoadMetrics modelMetrics = metrics.get(assetName);
+        if (modelMetrics == null) {
+            modelMetrics = new LoadMetrics();
+            metrics.put(assetName, modelMetrics);
+        }
+        return modelMetrics;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        //Hiding the UI isn't a sign of memory pressure, the same as for InferenceScheduler and RuntimePolicy
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            evictAllButMostRecent();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -1,6 +0,0 @@
-package com.example.machinelearningappandroid;
-
-//Contains the information about the Model Type that is currently being used
-public enum ModelType {
-    SEGMENTATION, ATTRIBUTES, JOINT
-}
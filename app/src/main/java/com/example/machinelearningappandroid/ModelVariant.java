@@ -0,0 +1,29 @@
+package com.example.machinelearningappandroid;
+
+//One build of a model, such as the original fp32 model or a quantized or smaller input version of it
+public class ModelVariant {
+    public final ModelType modelType;
+    public final String name;
+    public final String assetName;
+    //Width and height of the square image the variant takes as input
+    public final int inputSize;
+    //What the variant was built to run on, only used when reporting results
+    public final String backend;
+    //The variant the others are compared against, there is exactly one per model type
+    public final boolean baseline;
+
+    public ModelVariant(ModelType modelType, String name, String assetName, int inputSize, String backend,
+                        boolean baseline) {
+        this.modelType = modelType;
+        this.name = name;
+        this.assetName = assetName;
+        this.inputSize = inputSize;
+        this.backend = backend;
+        this.baseline = baseline;
+    }
+
+    @Override
+    public String toString() {
+        return modelType + "/" + name;
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.machinelearningappandroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//The variants of each model listed in the variants manifest, and which one has been chosen for this device
+//Variants whose model file isn't in the APK, or that were built for a backend the lite runtime can't run, are left
+//out, as are variants that failed to load or run on this device. Without a manifest each model type only has its
+//baseline
+public class ModelVariants {
+    private static final String MANIFEST_ASSET = "model_variants.json";
+    private static final String PREFERENCES_NAME = "model_variants";
+    //pytorch_android_lite is built without the Vulkan or NNAPI backends, so only CPU models can be loaded
+    private static final String SUPPORTED_BACKEND = "cpu";
+
+    private static ModelVariants instance = null;
+
+    private final SharedPreferences preferences;
+    private final String deviceStamp;
+    private final EnumMap<ModelType, ArrayList<ModelVariant>> variants = new EnumMap<>(ModelType.class);
+    //The variants that haven't failed on this device, replaced rather than changed when one fails
+    private final EnumMap<ModelType, List<ModelVariant>> usableVariants = new EnumMap<>(ModelType.class);
+
+    private ModelVariants(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        preferences = applicationContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        int manifestVersion = 0;
+        try {
+            manifestVersion = readManifest(applicationContext);
+        } catch (IOException | JSONException e) {
+            Log.e(MainActivity.APP_TAG, "Unable to read model variants manifest, using the baseline models", e);
+            variants.clear();
+        }
+        for (ModelType modelType : ModelType.values()) {
+            if (!variants.containsKey(modelType) || getBaseline(modelType) == null) {
+                ArrayList<ModelVariant> baselineOnly = new ArrayList<>();
+                baselineOnly.add(new ModelVariant(modelType, "fp32", modelType.getAssetName(),
+                        MainActivity.MODEL_INPUT_SIZE, "cpu", true));
+                variants.put(modelType, baselineOnly);
+            }
+        }
+
+        //A selection is only trusted on the device, app version and manifest it was measured with
+        long versionCode = 0;
+        try {
+            versionCode = applicationContext.getPackageManager()
+                    .getPackageInfo(applicationContext.getPackageName(), 0).versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(MainActivity.APP_TAG, "Unable to read package info", e);
+        }
+        deviceStamp = Build.FINGERPRINT + "|" + versionCode + "|" + manifestVersion;
+        for (ModelType modelType : ModelType.values()) {
+            updateUsableVariants(modelType);
+        }
+    }
+
+    public static synchronized ModelVariants getInstance(Context context) {
+        if (instance == null) {
+            instance = new ModelVariants(context);
+        }
+        return instance;
+    }
+
+    //Leaves out the variants that failed on this device, the baseline is always included
+    public synchronized List<ModelVariant> getVariants(ModelType modelType) {
+        return usableVariants.get(modelType);
+    }
+
+    public ModelVariant getBaseline(ModelType modelType) {
+        for (ModelVariant variant : variants.get(modelType)) {
+            if (variant.baseline) {
+                return variant;
+            }
+        }
+        return null;
+    }
+
+    //The variant chosen by the benchmark, or the baseline until the benchmark has run
+    public ModelVariant getSelected(ModelType modelType) {
+        String selectedName = preferences.getString(getSelectionKey(modelType), null);
+        if (selectedName != null) {
+            for (ModelVariant variant : getVariants(modelType)) {
+                if (variant.name.equals(selectedName)) {
+                    return variant;
+                }
+            }
+        }
+        return getBaseline(modelType);
+    }
+
+    //The selected variant if it takes inputs of the given size, otherwise the baseline
+    public ModelVariant getSelected(ModelType modelType, int inputSize) {
+        ModelVariant selected = getSelected(modelType);
+        return selected.inputSize == inputSize ? selected : getBaseline(modelType);
+    }
+
+    public boolean hasSelection(ModelType modelType) {
+        return preferences.contains(getSelectionKey(modelType));
+    }
+
+    //Remembers the choice along with the measurements it was based on
+    public void setSelected(ModelVariant variant, String report) {
+        preferences.edit()
+                .putString(getSelectionKey(variant.modelType), variant.name)
+                .putString(getSelectionKey(variant.modelType) + ".report", report)
+                .apply();
+    }
+
+    public String getSelectionReport(ModelType modelType) {
+        return preferences.getString(getSelectionKey(modelType) + ".report", null);
+    }
+
+    //Remembers that the variant couldn't be loaded or run, so it isn't tried again on this device, app version and
+    //manifest
+    public synchronized void setUnusable(ModelVariant variant) {
+        String key = getUnusableKey(variant.modelType);
+        HashSet<String> unusable = new HashSet<>(preferences.getStringSet(key, Collections.<String>emptySet()));
+        unusable.add(variant.name);
+        preferences.edit().putStringSet(key, unusable).apply();
+        updateUsableVariants(variant.modelType);
+    }
+
+    private void updateUsableVariants(ModelType modelType) {
+        Set<String> unusable = preferences.getStringSet(getUnusableKey(modelType), Collections.<String>emptySet());
+        ArrayList<ModelVariant> usable = new ArrayList<>();
+        for (ModelVariant variant : variants.get(modelType)) {
+            if (variant.baseline || !unusable.contains(variant.name)) {
+                usable.add(variant);
+            }
+        }
+        usableVariants.put(modelType, Collections.unmodifiableList(usable));
+    }
+
+    private String getUnusableKey(ModelType modelType) {
+        return getSelectionKey(modelType) + ".unusable";
+    }
+
+    private String getSelectionKey(ModelType modelType) {
+        return modelType.name() + "|" + deviceStamp;
+    }
+
+    //Returns the manifest version, variants whose asset is missing are skipped
+    private int readManifest(Context context) throws IOException, JSONException {
+        HashSet<String> assets = new HashSet<>(Arrays.asList(context.getAssets().list("")));
+        if (!assets.contains(MANIFEST_ASSET)) {
+            return 0;
+        }
+        JSONObject manifest;
+        try (InputStream inputStream = context.getAssets().open(MANIFEST_ASSET)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int length;
+            while ((length = inputStream.read(chunk)) != -1) {
+                bytes.write(chunk, 0, length);
+            }
+            manifest = new JSONObject(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        }
+
+        JSONArray variantsJson = manifest.getJSONArray("variants");
+        for (int i = 0; i < variantsJson.length(); i++) {
+            JSONObject variantJson = variantsJson.getJSONObject(i);
+            String assetName = variantJson.getString("asset");
+            if (!assets.contains(assetName)) {
+                continue;
+            }
+            String backend = variantJson.optString("backend", SUPPORTED_BACKEND);
+            if (!backend.equals(SUPPORTED_BACKEND)) {
+                Log.w(MainActivity.APP_TAG, "Skipping " + assetName + ", the " + backend + " backend isn't available");
+                continue;
+            }
+            ModelType modelType = ModelType.valueOf(variantJson.getString("modelType"));
+            ModelVariant variant = new ModelVariant(modelType, variantJson.getString("name"), assetName,
+                    variantJson.optInt("inputSize", MainActivity.MODEL_INPUT_SIZE), backend,
+                    variantJson.optBoolean("baseline", false));
+            ArrayList<ModelVariant> modelVariants = variants.get(modelType);
+            if (modelVariants == null) {
+                modelVariants = new ArrayList<>();
+                variants.put(modelType, modelVariants);
+            }
+            modelVariants.add(variant);
+        }
+        return manifest.getInt("version");
+    }
+}
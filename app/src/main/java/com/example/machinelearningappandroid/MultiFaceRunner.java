@@ -0,0 +1,131 @@
+package com.example.machinelearningappandroid;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.pytorch.Tensor;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+//Runs every face of a group photo through the model in one batch, so the fixed cost of a forward pass is paid once
+//for the photo rather than once per face. The batch buffer is sized for the most faces a photo can have and reused
+//RuntimePolicy chooses the variant for each photo, and the input size follows it
+//Must only be used from one thread at a time
+public class MultiFaceRunner {
+    private static final ForkJoinPool LABEL_MAP_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    //One record per face, in the order the faces were given, with masks in the face crop's own coordinates
+    //Records with masks also carry the face's label map, forwardMillis only covers the forward passes
+    public static class Result {
+        public final ResultRecord[] records;
+        public final long preprocessMillis;
+        public final long forwardMillis;
+        public final boolean batched;
+
+        Result(ResultRecord[] records, long preprocessMillis, long forwardMillis, boolean batched) {
+            this.records = records;
+            this.preprocessMillis = preprocessMillis;
+            this.forwardMillis = forwardMillis;
+            this.batched = batched;
+        }
+    }
+
+    private final RuntimePolicy runtimePolicy;
+    private final ModelPipelines pipelines;
+    private final ModelType modelType;
+    private TensorInputWriter writer = null;
+    private FloatBuffer batchBuffer = null;
+    private int[] pixels = null;
+    //Cleared once the model refuses a batch, every later photo is then run one face at a time
+    private boolean batchingSupported = true;
+
+    public MultiFaceRunner(Context context, ModelType modelType) {
+        this.runtimePolicy = RuntimePolicy.getInstance(context);
+        this.pipelines = new ModelPipelines(ModelRegistry.getInstance(context), MainActivity.SEGMENTATION_THRESHOLD);
+        this.modelType = modelType;
+    }
+
+    public Result run(List<FaceAutoCropper.Face> faces) throws Exception {
+        int count = Math.min(faces.size(), FaceAutoCropper.MAX_FACES);
+        ModelVariant variant = runtimePolicy.choose(modelType);
+        int inputSize = variant.inputSize;
+        if (writer == null || writer.getOutputSize() != inputSize) {
+            writer = new TensorInputWriter(inputSize, ModelPipeline.NORM_MEAN_RGB, ModelPipeline.NORM_STD_RGB);
+        }
+        int tensorSize = writer.getTensorSize();
+        if (batchBuffer == null || batchBuffer.capacity() < FaceAutoCropper.MAX_FACES * tensorSize) {
+            batchBuffer = Tensor.allocateFloatBuffer(FaceAutoCropper.MAX_FACES * tensorSize);
+        }
+
+        //Each face is written straight into its own slot of the batch, turned upright on the way
+        long startTime = SystemClock.elapsedRealtime();
+        for (int i = 0; i < count; i++) {
+            FaceAutoCropper.Face face = faces.get(i);
+            Bitmap image = face.image;
+            int pixelCount = image.getWidth() * image.getHeight();
+            if (pixels == null || pixels.length < pixelCount) {
+                pixels = new int[pixelCount];
+            }
+            image.getPixels(pixels, 0, image.getWidth(), 0, 0, image.getWidth(), image.getHeight());
+            writer.writeArgb(pixels, image.getWidth(), image.getHeight(), face.rotationDegrees, batchBuffer,
+                    i * tensorSize);
+        }
+        long preprocessMillis = SystemClock.elapsedRealtime() - startTime;
+
+        LiteModuleBackend backend = pipelines.getBackend(variant);
+        InferenceBackend.Outputs[] outputs = null;
+        long forwardStart;
+        runtimePolicy.beginForward(modelType);
+        try {
+            forwardStart = SystemClock.elapsedRealtime();
+            if (batchingSupported && count > 1) {
+                try {
+                    outputs = backend.forwardBatch(slice(batchBuffer, 0, count * tensorSize), count, inputSize);
+                } catch (RuntimeException e) {
+                    Log.e(MainActivity.APP_TAG, "Model does not accept batches of " + count
+                            + ", running faces one at a time", e);
+                    batchingSupported = false;
+                    //The failed attempt isn't part of the time the faces took to run
+                    forwardStart = SystemClock.elapsedRealtime();
+                }
+            }
+            if (outputs == null) {
+                outputs = new InferenceBackend.Outputs[count];
+                for (int i = 0; i < count; i++) {
+                    outputs[i] = backend.forward(slice(batchBuffer, i * tensorSize, tensorSize), inputSize);
+                }
+            }
+        } finally {
+            runtimePolicy.endForward();
+        }
+        long forwardMillis = SystemClock.elapsedRealtime() - forwardStart;
+        boolean batched = count > 1 && batchingSupported;
+        //The policy's latency budget is for one image, however many were run together
+        if (count > 0) {
+            runtimePolicy.recordLatency(modelType, forwardMillis / count);
+        }
+
+        //Each face's parsing map is built from its own scores, thresholded masks alone can't give the same map
+        ResultRecord[] records = new ResultRecord[count];
+        for (int i = 0; i < count; i++) {
+            InferenceBackend.Outputs face = outputs[i];
+            records[i] = ResultRecord.fromOutputs(face, MainActivity.SEGMENTATION_THRESHOLD);
+            if (face.segmentation != null) {
+                records[i] = records[i].withLabelMap(LabelMap.compute(face.segmentation, face.numMasks,
+                        face.maskWidth, face.maskHeight, MainActivity.SEGMENTATION_THRESHOLD, LABEL_MAP_POOL));
+            }
+        }
+        return new Result(records, preprocessMillis, forwardMillis, batched);
+    }
+
+    private static FloatBuffer slice(FloatBuffer buffer, int offset, int length) {
+        FloatBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+}
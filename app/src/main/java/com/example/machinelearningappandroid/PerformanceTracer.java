@@ -0,0 +1,288 @@
+package com.example.machinelearningappandroid;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Records how long each stage of an inference takes, from loading the image to drawing the mask
+//When tracing is turned off startRun hands back a shared run whose methods return straight away
+public class PerformanceTracer {
+    public static final String STAGE_TOTAL = "total";
+    //Total of a load run, kept apart from STAGE_TOTAL so time spent waiting for the user never counts towards it
+    public static final String STAGE_LOAD_TOTAL = "load_total";
+    private static final int MAX_KEPT_RUNS = 50;
+    private static final int PERCENTILE_WINDOW = 200;
+    private static final double[] REPORTED_PERCENTILES = new double[] {50, 95, 99};
+
+    private static volatile boolean enabled = BuildConfig.DEBUG;
+    private static final Run DISABLED_RUN = new Run(null, STAGE_TOTAL);
+
+    private static final ArrayDeque<Run> finishedRuns = new ArrayDeque<>();
+    private static final EnumMap<ModelType, LinkedHashMap<String, RollingPercentiles>> percentiles =
+            new EnumMap<>(ModelType.class);
+
+    //Timing and allocations of one stage of a run
+    public static class Stage {
+        public final String name;
+        public final long durationNanos;
+        public final long allocatedBytes;
+        public final int gcCount;
+
+        Stage(String name, long durationNanos, long allocatedBytes, int gcCount) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+        }
+    }
+
+    //All of the stages of a single inference, stages can be started and ended on different threads in turn
+    public static class Run {
+        private final ModelType modelType;
+        //Name the whole run's duration is recorded under
+        private final String totalStage;
+        private final long startTime = System.currentTimeMillis();
+        private final long startNanos = SystemClock.elapsedRealtimeNanos();
+        private final ArrayList<Stage> stages = new ArrayList<>();
+        private String openStage = null;
+        private long openStageStart;
+        private long openStageAllocated;
+        private int openStageGcCount;
+        private boolean finished = false;
+        private long totalNanos = 0;
+
+        private Run(ModelType modelType, String totalStage) {
+            this.modelType = modelType;
+            this.totalStage = totalStage;
+        }
+
+        public void beginStage(String name) {
+            if (modelType == null) {
+                return;
+            }
+            synchronized (this) {
+                if (openStage != null) {
+                    endStage();
+                }
+                Trace.beginSection(name);
+                openStage = name;
+                openStageAllocated = getAllocatedBytes();
+                openStageGcCount = getGcCount();
+                openStageStart = SystemClock.elapsedRealtimeNanos();
+            }
+        }
+
+        //Must be called on the same thread as the matching beginStage so the systrace section is closed properly
+        public void endStage() {
+            if (modelType == null) {
+                return;
+            }
+            synchronized (this) {
+                if (openStage == null) {
+                    return;
+                }
+                long duration = SystemClock.elapsedRealtimeNanos() - openStageStart;
+                Trace.endSection();
+                stages.add(new Stage(openStage, duration, Math.max(0, getAllocatedBytes() - openStageAllocated),
+                        getGcCount() - openStageGcCount));
+                openStage = null;
+            }
+        }
+
+        //Adds the run to the report and the rolling percentiles of its model type
+        public void finish() {
+            if (modelType == null) {
+                return;
+            }
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                endStage();
+                finished = true;
+            }
+            record(this, SystemClock.elapsedRealtimeNanos() - startNanos);
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("modelType", modelType.name());
+            json.put("kind", totalStage);
+            json.put("startTime", startTime);
+            json.put("totalMillis", totalNanos / 1e6);
+            JSONArray stagesJson = new JSONArray();
+            for (Stage stage : stages) {
+                JSONObject stageJson = new JSONObject();
+                stageJson.put("name", stage.name);
+                stageJson.put("millis", stage.durationNanos / 1e6);
+                stageJson.put("allocatedBytes", stage.allocatedBytes);
+                stageJson.put("gcCount", stage.gcCount);
+                stagesJson.put(stageJson);
+            }
+            json.put("stages", stagesJson);
+            return json;
+        }
+    }
+
+    public static void setEnabled(boolean isEnabled) {
+        enabled = isEnabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    //Starts timing an inference, which should begin when the user asks for it
+    public static Run startRun(ModelType modelType) {
+        return enabled ? new Run(modelType, STAGE_TOTAL) : DISABLED_RUN;
+    }
+
+    //Starts timing the work done before the user can ask for an inference, such as loading the image
+    public static Run startLoadRun(ModelType modelType) {
+        return enabled ? new Run(modelType, STAGE_LOAD_TOTAL) : DISABLED_RUN;
+    }
+
+    //Returns the given percentile of a stage in milliseconds, or of the whole run when the stage is STAGE_TOTAL
+    public static synchronized double getPercentileMillis(ModelType modelType, String stage, double percentile) {
+        LinkedHashMap<String, RollingPercentiles> modelPercentiles = percentiles.get(modelType);
+        if (modelPercentiles == null || !modelPercentiles.containsKey(stage)) {
+            return 0;
+        }
+        return modelPercentiles.get(stage).getPercentile(percentile) / 1e6;
+    }
+
+    //Writes recent runs and percentile summaries to the external files directory, where adb pull can reach it
+    //Along with them go the load metrics of the variant RuntimePolicy is running for each model type
+    public static File dumpReport(Context context) throws IOException {
+        JSONObject models = getModelMetrics(context);
+        String report;
+        synchronized (PerformanceTracer.class) {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+                json.put("sdk", Build.VERSION.SDK_INT);
+                JSONObject summary = new JSONObject();
+                for (Map.Entry<ModelType, LinkedHashMap<String, RollingPercentiles>> model : percentiles.entrySet()) {
+                    JSONObject modelJson = new JSONObject();
+                    for (Map.Entry<String, RollingPercentiles> stage : model.getValue().entrySet()) {
+                        JSONObject stageJson = new JSONObject();
+                        stageJson.put("count", stage.getValue().getCount());
+                        for (double percentile : REPORTED_PERCENTILES) {
+                            stageJson.put("p" + (int) percentile + "Millis", stage.getValue().getPercentile(percentile) / 1e6);
+                        }
+                        modelJson.put(stage.getKey(), stageJson);
+                    }
+                    summary.put(model.getKey().name(), modelJson);
+                }
+                json.put("percentiles", summary);
+                json.put("models", models);
+                JSONArray runs = new JSONArray();
+                for (Run run : finishedRuns) {
+                    runs.put(run.toJson());
+                }
+                json.put("runs", runs);
+                report = json.toString(2);
+            } catch (JSONException e) {
+                throw new IOException("Unable to build performance report", e);
+            }
+        }
+
+        File file = new File(context.getExternalFilesDir("traces"), "performance-report.json");
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(report.getBytes(StandardCharsets.UTF_8));
+        }
+        Log.i(MainActivity.APP_TAG, "Performance report written to " + file.getAbsolutePath());
+        return file;
+    }
+
+    //Read before taking the tracer's lock, so the registry's and policy's locks are never held inside it
+    private static JSONObject getModelMetrics(Context context) throws IOException {
+        RuntimePolicy runtimePolicy = RuntimePolicy.getInstance(context);
+        ModelRegistry modelRegistry = ModelRegistry.getInstance(context);
+        try {
+            JSONObject models = new JSONObject();
+            for (ModelType modelType : ModelType.values()) {
+                ModelVariant variant = runtimePolicy.getVariant(modelType);
+                ModelRegistry.LoadMetrics loadMetrics = modelRegistry.getMetrics(variant);
+                JSONObject modelJson = new JSONObject();
+                modelJson.put("variant", variant.assetName);
+                modelJson.put("coldLoadMillis", loadMetrics.coldLoadMillis);
+                modelJson.put("coldLoads", loadMetrics.coldLoads);
+                modelJson.put("warmHits", loadMetrics.warmHits);
+                modelJson.put("prefetches", loadMetrics.prefetches);
+                models.put(modelType.name(), modelJson);
+            }
+            return models;
+        } catch (JSONException e) {
+            throw new IOException("Unable to build performance report", e);
+        }
+    }
+
+    private static synchronized void record(Run run, long totalNanos) {
+        run.totalNanos = totalNanos;
+        finishedRuns.addLast(run);
+        if (finishedRuns.size() > MAX_KEPT_RUNS) {
+            finishedRuns.removeFirst();
+        }
+
+        LinkedHashMap<String, RollingPercentiles> modelPercentiles = percentiles.get(run.modelType);
+        if (modelPercentiles == null) {
+            modelPercentiles = new LinkedHashMap<>();
+            percentiles.put(run.modelType, modelPercentiles);
+        }
+        for (Stage stage : run.stages) {
+            getOrCreate(modelPercentiles, stage.name).add(stage.durationNanos);
+        }
+        getOrCreate(modelPercentiles, run.totalStage).add(totalNanos);
+    }
+
+    private static RollingPercentiles getOrCreate(Map<String, RollingPercentiles> map, String stage) {
+        RollingPercentiles stagePercentiles = map.get(stage);
+        if (stagePercentiles == null) {
+            stagePercentiles = new RollingPercentiles(PERCENTILE_WINDOW);
+            map.put(stage, stagePercentiles);
+        }
+        return stagePercentiles;
+    }
+
+    //Bytes allocated by the whole process so far, only available from Marshmallow onwards
+    private static long getAllocatedBytes() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return 0;
+        }
+        return parseStat(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+
+    private static int getGcCount() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return 0;
+        }
+        return (int) parseStat(Debug.getRuntimeStat("art.gc.gc-count"));
+    }
+
+    private static long parseStat(String value) {
+        try {
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.machinelearningappandroid;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+//Two tier cache of model outputs: an LRU of records in memory backed by one ResultFile per record on disk
+//Keys are built from the input hash, the model that was run and that model file's checksum, so a new model never
+//returns stale results. Both tiers are limited by size, the disk tier drops the least recently read files first
+//This is the app's only store of results, screens hand each other a key rather than writing files of their own
+public class ResultCache {
+    private static final String FILE_SUFFIX = ".rec";
+
+    private final File directory;
+    private final long memoryBudgetBytes;
+    private final long diskBudgetBytes;
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "ResultCacheWriter"));
+
+    //Access ordered so that iteration starts from the least recently used record
+    private final LinkedHashMap<String, ResultRecord> memoryRecords = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    //Records that have been put but not yet created, so a get straight after a put waits for them
+    private final HashMap<String, Future<?>> pendingWrites = new HashMap<>();
+
+    //Builds a record from model outputs, run on the writer thread so the caller doesn't wait for the encoding
+    public interface RecordSource {
+        ResultRecord create() throws IOException;
+    }
+
+    public ResultCache(File directory, long memoryBudgetBytes, long diskBudgetBytes) {
+        this.directory = directory;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.diskBudgetBytes = diskBudgetBytes;
+    }
+
+    public static String createKey(long inputHash, ModelType modelType, String modelChecksum) {
+        return Long.toHexString(inputHash) + "-" + modelType.ordinal() + "-" + modelChecksum;
+    }
+
+    //Returns the record from memory, or reads it from disk and keeps it in memory, null if it was never stored
+    //A record that is still being written is waited for
+    public ResultRecord get(String key) {
+        Future<?> pendingWrite;
+        synchronized (this) {
+            ResultRecord record = memoryRecords.get(key);
+            if (record != null) {
+                return record;
+            }
+            pendingWrite = pendingWrites.get(key);
+        }
+        if (pendingWrite != null) {
+            try {
+                pendingWrite.get();
+            } catch (ExecutionException e) {
+                Log.e(MainActivity.APP_TAG, "Cached result " + key + " was never written", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            synchronized (this) {
+                ResultRecord record = memoryRecords.get(key);
+                if (record != null) {
+                    return record;
+                }
+            }
+        }
+
+        File file = new File(directory, key + FILE_SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            //Mapped rather than read, so the masks of a large record are never copied
+            ResultRecord record = ResultFile.map(file);
+            //The modified time is used as the last read time when choosing which files to evict
+            file.setLastModified(System.currentTimeMillis());
+            putInMemory(key, record);
+            return record;
+        } catch (IOException e) {
+            Log.e(MainActivity.APP_TAG, "Dropping unreadable cached result " + key, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    //Creates the record and stores it in both tiers in the background
+    public synchronized void put(String key, RecordSource source) {
+        final FutureTask<Void> write = new FutureTask<>(() -> {
+            try {
+                ResultRecord record = source.create();
+                putInMemory(key, record);
+                writeToDisk(key, record);
+            } catch (IOException e) {
+                Log.e(MainActivity.APP_TAG, "Unable to cache result " + key, e);
+            }
+        }, null);
+        pendingWrites.put(key, write);
+        writeExecutor.execute(() -> {
+            write.run();
+            removePendingWrite(key, write);
+        });
+    }
+
+    //Only removed if the key hasn't been put again since
+    private synchronized void removePendingWrite(String key, Future<?> write) {
+        if (pendingWrites.get(key) == write) {
+            pendingWrites.remove(key);
+        }
+    }
+
+    //Only the memory tier is cleared, the files on disk are cheap to keep
+    public synchronized void clearMemory() {
+        memoryRecords.clear();
+        memoryBytes = 0;
+    }
+
+    private synchronized void putInMemory(String key, ResultRecord record) {
+        ResultRecord previous = memoryRecords.put(key, record);
+        if (previous != null) {
+            memoryBytes -= previous.getSizeBytes();
+        }
+        memoryBytes += record.getSizeBytes();
+        Iterator<Map.Entry<String, ResultRecord>> iterator = memoryRecords.entrySet().iterator();
+        while (memoryBytes > memoryBudgetBytes && iterator.hasNext()) {
+            Map.Entry<String, ResultRecord> entry = iterator.next();
+            if (entry.getKey().equals(key)) {
+                continue;
+            }
+            memoryBytes -= entry.getValue().getSizeBytes();
+            iterator.remove();
+        }
+    }
+
+    //ResultFile writes to a temp file and renames it, so a half written record is never read back
+    private void writeToDisk(String key, ResultRecord record) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + directory);
+        }
+        ResultFile.write(new File(directory, key + FILE_SUFFIX), record);
+        trimDisk();
+    }
+
+    private void trimDisk() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= diskBudgetBytes) {
+            return;
+        }
+        Arrays.sort(files, (first, second) -> Long.compare(first.lastModified(), second.lastModified()));
+        for (int i = 0; i < files.length - 1 && totalBytes > diskBudgetBytes; i++) {
+            totalBytes -= files[i].length();
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.machinelearningappandroid;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.pytorch.PyTorchAndroid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Decides, before each inference, which variant of a model to run and on how many threads, from the device's
+//thermal status, how much memory is left and how long recent inferences took. Each model type steps down through
+//fewer threads and then smaller input variants while the device is under pressure, and back up once it has been
+//comfortable for a while, so sustained use doesn't keep the device hot. Memory pressure goes straight to a smaller
+//variant, as fewer threads don't use any less memory
+//Every forward pass in the app runs between beginForward and endForward, as the thread count is shared by the whole
+//process and is only changed while no forward pass is running
+public class RuntimePolicy implements ComponentCallbacks2 {
+    //Forward passes slower than this at the 90th percentile count as pressure
+    private static final long LATENCY_BUDGET_MILLIS = 2000;
+    private static final long RECOVER_AFTER_MILLIS = 30 * 1000;
+    private static final long STEP_DOWN_INTERVAL_MILLIS = 5 * 1000;
+    //More threads than this mostly land on the little cores and only add heat
+    private static final int MAX_THREADS = 4;
+    //Memory counts as tight once less than this many times the system's low memory threshold is available
+    private static final int MEMORY_HEADROOM_FACTOR = 2;
+    //How long memory counts as tight after the system reports memory pressure
+    private static final long MEMORY_PRESSURE_BACKOFF_MILLIS = 60 * 1000;
+
+    private static RuntimePolicy instance = null;
+
+    private final ModelVariants modelVariants;
+    private final ActivityManager activityManager;
+    private final PowerManager powerManager;
+    private final ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+    private final boolean lowRamDevice;
+    private final int maxThreads;
+    private final EnumMap<ModelType, AdaptivePolicy> policies = new EnumMap<>(ModelType.class);
+    //The variant run at each level of a model type's policy
+    private final EnumMap<ModelType, List<ModelVariant>> levelVariants = new EnumMap<>(ModelType.class);
+    //The usable variants each model type's levels were built from
+    private final EnumMap<ModelType, List<ModelVariant>> builtFrom = new EnumMap<>(ModelType.class);
+    //Forward passes hold the read lock, changing the thread count takes the write lock
+    private final ReentrantReadWriteLock threadsLock = new ReentrantReadWriteLock();
+    //Only changed while holding the write lock
+    private int appliedThreads = -1;
+    private volatile long memoryPressureUntil = 0;
+
+    private RuntimePolicy(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        this.modelVariants = ModelVariants.getInstance(applicationContext);
+        this.activityManager = (ActivityManager) applicationContext.getSystemService(Context.ACTIVITY_SERVICE);
+        this.powerManager = (PowerManager) applicationContext.getSystemService(Context.POWER_SERVICE);
+        this.lowRamDevice = activityManager.isLowRamDevice();
+        this.maxThreads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        applicationContext.registerComponentCallbacks(this);
+    }
+
+    public static synchronized RuntimePolicy getInstance(Context context) {
+        if (instance == null) {
+            instance = new RuntimePolicy(context);
+        }
+        return instance;
+    }
+
+    //Looks at the device again and returns the variant to run now, the forward pass itself then runs between
+    //beginForward and endForward
+    public synchronized ModelVariant choose(ModelType modelType) {
+        AdaptivePolicy policy = getPolicy(modelType);
+        AdaptivePolicy.Decision decision = policy.update(getThermalStatus(), isMemoryTight(),
+                SystemClock.elapsedRealtime());
+        if (decision.changed) {
+            Log.i(MainActivity.APP_TAG, modelType + " now runs " + decision.level + " (level "
+                    + decision.levelIndex + "), " + decision.reason);
+        }
+        return levelVariants.get(modelType).get(decision.levelIndex);
+    }
+
+    //Applies the thread count of the level last chosen for the model type and holds it until endForward, waiting
+    //for forward passes on other threads to finish first when it has to change. Must not be nested
+    public void beginForward(ModelType modelType) {
+        int threads;
+        synchronized (this) {
+            threads = getPolicy(modelType).getLevel().threads;
+        }
+        threadsLock.readLock().lock();
+        if (appliedThreads == threads) {
+            return;
+        }
+        threadsLock.readLock().unlock();
+        threadsLock.writeLock().lock();
+        try {
+            if (appliedThreads != threads) {
+                PyTorchAndroid.setNumThreads(threads);
+                appliedThreads = threads;
+            }
+            //Taken before the write lock is let go, so the count can't change again before this forward pass
+            threadsLock.readLock().lock();
+        } finally {
+            threadsLock.writeLock().unlock();
+        }
+    }
+
+    public void endForward() {
+        threadsLock.readLock().unlock();
+    }
+
+    //The variant that was last chosen, without looking at the device again
+    public synchronized ModelVariant getVariant(ModelType modelType) {
+        return levelVariants.get(modelType).get(getPolicy(modelType).getLevelIndex());
+    }
+
+    //How long the forward pass of the variant last chosen for the model type took
+    public synchronized void recordLatency(ModelType modelType, long millis) {
+        getPolicy(modelType).recordLatency(millis);
+    }
+
+    //The benchmark's choice comes first, with fewer threads below it, then variants with smaller inputs
+    //Other variants of the same size were already passed over by the benchmark so they aren't used
+    //The levels are built again if the benchmark has since chosen a different variant or found one unusable
+    private AdaptivePolicy getPolicy(ModelType modelType) {
+        ModelVariant selected = modelVariants.getSelected(modelType);
+        List<ModelVariant> usable = modelVariants.getVariants(modelType);
+        AdaptivePolicy policy = policies.get(modelType);
+        if (policy != null && levelVariants.get(modelType).get(0) == selected && builtFrom.get(modelType) == usable) {
+            return policy;
+        }
+        ArrayList<ModelVariant> variants = new ArrayList<>();
+        variants.add(selected);
+        for (ModelVariant variant : usable) {
+            if (variant.inputSize < selected.inputSize) {
+                variants.add(variant);
+            }
+        }
+        Collections.sort(variants.subList(1, variants.size()),
+                (first, second) -> Integer.compare(second.inputSize, first.inputSize));
+
+        ArrayList<AdaptivePolicy.Level> levels = new ArrayList<>();
+        ArrayList<ModelVariant> variantPerLevel = new ArrayList<>();
+        int fewerThreads = Math.max(1, maxThreads / 2);
+        for (ModelVariant variant : variants) {
+            levels.add(new AdaptivePolicy.Level(variant.name, variant.inputSize, maxThreads));
+            variantPerLevel.add(variant);
+            if (fewerThreads < maxThreads) {
+                levels.add(new AdaptivePolicy.Level(variant.name, variant.inputSize, fewerThreads));
+                variantPerLevel.add(variant);
+            }
+        }
+        policy = new AdaptivePolicy(levels, LATENCY_BUDGET_MILLIS, RECOVER_AFTER_MILLIS, STEP_DOWN_INTERVAL_MILLIS);
+        policies.put(modelType, policy);
+        levelVariants.put(modelType, variantPerLevel);
+        builtFrom.put(modelType, usable);
+        Log.i(MainActivity.APP_TAG, modelType + " policy levels: " + levels);
+        return policy;
+    }
+
+    //Low RAM devices are always short of memory, others are for a while after the system reports memory pressure
+    //and whenever little more than the system's low memory threshold is available
+    //InferenceScheduler uses the same check to fall back to the single head models
+    public synchronized boolean isMemoryTight() {
+        if (lowRamDevice || SystemClock.elapsedRealtime() < memoryPressureUntil) {
+            return true;
+        }
+        activityManager.getMemoryInfo(memoryInfo);
+        return memoryInfo.lowMemory || memoryInfo.availMem < memoryInfo.threshold * MEMORY_HEADROOM_FACTOR;
+    }
+
+    //Thermal status is only reported from Android 10, older devices are always treated as cool
+    private int getThermalStatus() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return powerManager.getCurrentThermalStatus();
+        }
+        return FrameSchedule.THERMAL_STATUS_NONE;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        //Hiding the UI isn't a sign of memory pressure
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            memoryPressureUntil = SystemClock.elapsedRealtime() + MEMORY_PRESSURE_BACKOFF_MILLIS;
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        memoryPressureUntil = SystemClock.elapsedRealtime() + MEMORY_PRESSURE_BACKOFF_MILLIS;
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
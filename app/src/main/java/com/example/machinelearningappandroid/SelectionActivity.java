@@ -21,11 +21,19 @@ public class SelectionActivity extends AppCompatActivity {
         Button segmentationSelectionButton = findViewById(R.id.segmentation_selection_button);
         Button attributesSelectionButton = findViewById(R.id.attributes_selection_button);
         Button jointSelectionButton = findViewById(R.id.joint_selection_button);
+        Button batchSelectionButton = findViewById(R.id.batch_selection_button);
+
+        //Models are loaded in the background while the user is taking their photo
+        //The scheduler picks which model to load, normally the joint one so both heads share a single model
+        InferenceScheduler inferenceScheduler = InferenceScheduler.getInstance(this);
+        //Picks the fastest accurate enough variant of each model the first time the app runs on this device
+        VariantBenchmark.runIfNeeded(this);
 
         segmentationSelectionButton.setOnClickListener(v -> {
             //Setup intent to take us to the Segmentation model activity
             Intent intent = new Intent(SelectionActivity.this, CameraActivity.class);
             intent.putExtra("modelType", "SEGMENTATION");
+            inferenceScheduler.warm(ModelType.SEGMENTATION);
             startActivity(intent);
         });
 
@@ -33,6 +41,7 @@ public class SelectionActivity extends AppCompatActivity {
             //Setup intent to take us to the Segmentation model activity
             Intent intent = new Intent(SelectionActivity.this, CameraActivity.class);
             intent.putExtra("modelType", "ATTRIBUTES");
+            inferenceScheduler.warm(ModelType.ATTRIBUTES);
             startActivity(intent);
         });
 
@@ -40,6 +49,13 @@ public class SelectionActivity extends AppCompatActivity {
             //Setup intent to take us to the Segmentation model activity
             Intent intent = new Intent(SelectionActivity.this, CameraActivity.class);
             intent.putExtra("modelType", "JOINT");
+            inferenceScheduler.warm(ModelType.JOINT);
+            startActivity(intent);
+        });
+
+        batchSelectionButton.setOnClickListener(v -> {
+            //Setup intent to take us to the batch processing activity
+            Intent intent = new Intent(SelectionActivity.this, BatchActivity.class);
             startActivity(intent);
         });
     }
@@ -0,0 +1,96 @@
+package com.example.machinelearningappandroid;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+
+//Segments images larger than the model input at full resolution by running the model over overlapping tiles
+//Tiles are decoded one at a time straight from the file into a reused bitmap, so neither the whole image nor a
+//full resolution score map is ever held in memory
+//Tiles are the input size of the variant the run is given, with the overlap scaled to match
+public class TiledInferenceRunner {
+    public static final int TILE_SIZE = MainActivity.MODEL_INPUT_SIZE;
+    public static final int TILE_OVERLAP = 64;
+    //Images need to be at least this big on their shorter side before tiling is worth it over resizing
+    public static final int MIN_TILED_SIZE = TILE_SIZE * 3 / 2;
+
+    private final ContentResolver contentResolver;
+    private final RuntimePolicy runtimePolicy;
+    private final ModelPipelines pipelines;
+    private final ModelType modelType;
+
+    private int[] tilePixels = null;
+    private Bitmap tileBitmap = null;
+
+    //modelType is the model that will be run, the segmentation head is used when it is the joint model
+    public TiledInferenceRunner(Context context, ModelType modelType) {
+        this.contentResolver = context.getContentResolver();
+        this.runtimePolicy = RuntimePolicy.getInstance(context);
+        this.pipelines = new ModelPipelines(ModelRegistry.getInstance(context), MainActivity.SEGMENTATION_THRESHOLD);
+        this.modelType = modelType;
+    }
+
+    //Only reads the image header
+    public static boolean shouldTile(ContentResolver contentResolver, Uri uri) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream stream = contentResolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(stream, null, options);
+        } catch (IOException e) {
+            return false;
+        }
+        return Math.min(options.outWidth, options.outHeight) >= MIN_TILED_SIZE;
+    }
+
+    //Blocks until every tile has been run, so must be called off the UI thread
+    //variant is the one RuntimePolicy chose for the model type, the caller keys the stored result by it
+    public ResultRecord run(Uri uri, ModelVariant variant) throws Exception {
+        final ModelPipeline pipeline = pipelines.get(variant);
+        int tileSize = variant.inputSize;
+        BitmapRegionDecoder decoder;
+        try (InputStream stream = contentResolver.openInputStream(uri)) {
+            decoder = BitmapRegionDecoder.newInstance(stream, false);
+        }
+        try {
+            TiledSegmenter segmenter = new TiledSegmenter(tileSize, TILE_OVERLAP * tileSize / TILE_SIZE,
+                    MainActivity.NUM_OUTPUT_MASKS, MainActivity.SEGMENTATION_THRESHOLD);
+            return segmenter.run(decoder.getWidth(), decoder.getHeight(),
+                    (x, y, size) -> runTile(decoder, pipeline, x, y, size));
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    private FloatBuffer runTile(BitmapRegionDecoder decoder, ModelPipeline pipeline, int x, int y, int size)
+            throws Exception {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        //Decoded tiles must be mutable for the next tile to be decoded into the same bitmap
+        options.inMutable = true;
+        options.inBitmap = tileBitmap;
+        tileBitmap = decoder.decodeRegion(new Rect(x, y, x + size, y + size), options);
+        if (tilePixels == null || tilePixels.length < size * size) {
+            tilePixels = new int[size * size];
+        }
+        tileBitmap.getPixels(tilePixels, 0, size, 0, 0, size, size);
+        long forwardStart = SystemClock.elapsedRealtime();
+        InferenceBackend.Outputs outputs;
+        runtimePolicy.beginForward(modelType);
+        try {
+            outputs = pipeline.forward(tilePixels, size, size, 0);
+        } finally {
+            runtimePolicy.endForward();
+        }
+        runtimePolicy.recordLatency(modelType, SystemClock.elapsedRealtime() - forwardStart);
+        return outputs.segmentation;
+    }
+}
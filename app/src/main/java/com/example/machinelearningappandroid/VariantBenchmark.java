@@ -0,0 +1,190 @@
+package com.example.machinelearningappandroid;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.pytorch.LiteModuleLoader;
+import org.pytorch.Module;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Times every variant of a model on this device and checks its outputs against the baseline variant's, then
+//selects the fastest one that is still accurate enough. Runs once in the background for each model type that has
+//more than one variant, and again after the device, the app or the variants manifest changes
+//A variant that fails to load or run is marked unusable and the others are still compared. The outcome is kept
+//whatever happened, so a failure isn't benchmarked again on every launch
+//Accuracy is only meaningful on real faces, so without face photos in the assets the benchmark is skipped, the
+//baseline variants are kept and the report says why
+public class VariantBenchmark {
+    private static final String IMAGES_ASSET_DIRECTORY = "benchmark_images";
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+    //Largest drop in agreement with the baseline that is accepted in exchange for speed
+    private static final float MAX_ACCURACY_LOSS = 0.05f;
+
+    private static final ExecutorService benchmarkExecutor = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "VariantBenchmark"));
+    private static boolean started = false;
+
+    private final Context context;
+    private final ModelVariants modelVariants;
+
+    private VariantBenchmark(Context context) {
+        this.context = context.getApplicationContext();
+        this.modelVariants = ModelVariants.getInstance(this.context);
+    }
+
+    public static synchronized void runIfNeeded(Context context) {
+        if (started) {
+            return;
+        }
+        started = true;
+        VariantBenchmark benchmark = new VariantBenchmark(context);
+        benchmarkExecutor.execute(benchmark::run);
+    }
+
+    private void run() {
+        List<Bitmap> images = null;
+        for (ModelType modelType : ModelType.values()) {
+            if (modelVariants.getVariants(modelType).size() < 2 || modelVariants.hasSelection(modelType)) {
+                continue;
+            }
+            ModelVariant baseline = modelVariants.getBaseline(modelType);
+            if (images == null) {
+                try {
+                    images = loadImages();
+                } catch (IOException e) {
+                    //Nothing is kept, so reading the images is tried again next launch
+                    Log.e(MainActivity.APP_TAG, "Unable to read benchmark images", e);
+                    return;
+                }
+            }
+            if (images.isEmpty()) {
+                //The other variants' outputs can't be compared with the baseline's, so none of them is selected
+                String reason = "Not benchmarked, there are no face photos in assets/" + IMAGES_ASSET_DIRECTORY;
+                Log.w(MainActivity.APP_TAG, reason + ", keeping " + baseline);
+                modelVariants.setSelected(baseline, reason);
+                continue;
+            }
+            benchmark(modelType, baseline, images);
+        }
+    }
+
+    private void benchmark(ModelType modelType, ModelVariant baseline, List<Bitmap> images) {
+        //The baseline is run first so every other variant can be compared with its outputs
+        ResultRecord[] baselineOutputs = new ResultRecord[images.size()];
+        ArrayList<ModelVariant> measured = new ArrayList<>();
+        ArrayList<VariantSelector.Measurement> measurements = new ArrayList<>();
+        try {
+            measurements.add(measure(baseline, images, baselineOutputs));
+            measured.add(baseline);
+        } catch (Exception e) {
+            //There is nothing to compare the other variants with, and the baseline is used whatever happens
+            Log.e(MainActivity.APP_TAG, "Unable to run " + baseline + ", keeping it without benchmarking", e);
+            modelVariants.setSelected(baseline, "Not benchmarked, " + baseline + " failed: " + e);
+            return;
+        }
+
+        StringBuilder report = new StringBuilder();
+        for (ModelVariant variant : modelVariants.getVariants(modelType)) {
+            if (variant == baseline) {
+                continue;
+            }
+            try {
+                measurements.add(measure(variant, images, baselineOutputs));
+                measured.add(variant);
+            } catch (Exception e) {
+                Log.e(MainActivity.APP_TAG, "Unable to run " + variant + ", it won't be used on this device", e);
+                modelVariants.setUnusable(variant);
+                report.append(String.format(Locale.US, "%s (%s, %dpx): failed, %s%n", variant.name, variant.backend,
+                        variant.inputSize, e));
+            }
+        }
+
+        ModelVariant selected = measured.get(VariantSelector.select(measurements, 0, MAX_ACCURACY_LOSS));
+        for (int i = 0; i < measured.size(); i++) {
+            ModelVariant variant = measured.get(i);
+            VariantSelector.Measurement measurement = measurements.get(i);
+            report.append(String.format(Locale.US, "%s (%s, %dpx): %.1fms, accuracy %.3f%s%n", variant.name,
+                    variant.backend, variant.inputSize, measurement.medianMillis, measurement.accuracy,
+                    variant == selected ? " [selected]" : ""));
+        }
+        modelVariants.setSelected(selected, report.toString());
+        Log.i(MainActivity.APP_TAG, "Selected " + selected + " after benchmarking:\n" + report);
+    }
+
+    //Fills in baselineOutputs when measuring the baseline, otherwise compares against them
+    private VariantSelector.Measurement measure(ModelVariant variant, List<Bitmap> images,
+                                                ResultRecord[] baselineOutputs) throws Exception {
+        //Loaded directly rather than through the registry so the benchmark doesn't evict the models in use
+        Module module = LiteModuleLoader.load(AssetStager.stage(context, variant.assetName));
+        try {
+            //Timed through the same pipeline the CLI uses, so on-device numbers and CLI numbers can be compared
+            ModelPipeline pipeline = new ModelPipeline(new LiteModuleBackend(module, variant.modelType),
+                    variant.inputSize, MainActivity.SEGMENTATION_THRESHOLD);
+            long[] timings = new long[images.size() * TIMED_RUNS];
+            float accuracyTotal = 0;
+            for (int i = 0; i < images.size(); i++) {
+                Bitmap image = images.get(i);
+                int[] pixels = new int[image.getWidth() * image.getHeight()];
+                image.getPixels(pixels, 0, image.getWidth(), 0, 0, image.getWidth(), image.getHeight());
+                ResultRecord result = null;
+                for (int run = 0; run < WARMUP_RUNS; run++) {
+                    result = pipeline.run(pixels, image.getWidth(), image.getHeight(), 0);
+                }
+                for (int run = 0; run < TIMED_RUNS; run++) {
+                    long startTime = SystemClock.elapsedRealtimeNanos();
+                    result = pipeline.run(pixels, image.getWidth(), image.getHeight(), 0);
+                    timings[i * TIMED_RUNS + run] = SystemClock.elapsedRealtimeNanos() - startTime;
+                }
+
+                if (variant.baseline) {
+                    baselineOutputs[i] = result;
+                    accuracyTotal += 1;
+                } else {
+                    //The baseline masks are scaled to the variant's output size, as variants can take smaller inputs
+                    accuracyTotal += GoldenDiff.compare(result, baselineOutputs[i],
+                            MainActivity.ATTRIBUTES_THRESHOLD).getAccuracy();
+                }
+            }
+            return new VariantSelector.Measurement(variant.name, VariantSelector.median(timings) / 1e6f,
+                    accuracyTotal / images.size());
+        } finally {
+            module.destroy();
+        }
+    }
+
+    //Face photos bundled for the benchmark, empty when there are none
+    private List<Bitmap> loadImages() throws IOException {
+        ArrayList<Bitmap> images = new ArrayList<>();
+        String[] names = context.getAssets().list(IMAGES_ASSET_DIRECTORY);
+        if (names != null) {
+            for (String name : names) {
+                String lowerName = name.toLowerCase(Locale.US);
+                if (!lowerName.endsWith(".jpg") && !lowerName.endsWith(".jpeg") && !lowerName.endsWith(".png")) {
+                    continue;
+                }
+                try (InputStream inputStream = context.getAssets().open(IMAGES_ASSET_DIRECTORY + "/" + name)) {
+                    Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
+                    if (bitmap != null) {
+                        images.add(bitmap);
+                    }
+                }
+            }
+        }
+        return images;
+    }
+}
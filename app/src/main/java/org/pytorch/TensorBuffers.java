@@ -0,0 +1,14 @@
+package org.pytorch;
+
+import java.nio.FloatBuffer;
+
+//Gives the app access to the buffer that backs an output tensor so it can be read without getDataAsFloatArray copying it
+//This has to live in the org.pytorch package because Tensor only exposes its buffer to classes in the same package
+public class TensorBuffers {
+    //The returned buffer is only valid while the tensor itself is still reachable
+    public static FloatBuffer getFloatBuffer(Tensor tensor) {
+        FloatBuffer buffer = ((FloatBuffer) tensor.getRawDataBuffer()).duplicate();
+        buffer.rewind();
+        return buffer;
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.machinelearningappandroid;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+//Runs a model over a directory of images through the same pipeline the app uses, reporting throughput and latency
+//percentiles, and compares every result with a golden result so a new model file can be checked before it ships
+//Exits with 1 when any image falls below the tolerance, so it can gate a build
+public class InferenceCli {
+    //Must match the constants in MainActivity
+    private static final int MODEL_INPUT_SIZE = 512;
+    private static final int NUM_OUTPUT_MASKS = 18;
+    private static final int NUM_ATTRIBUTES = 40;
+    private static final float SEGMENTATION_THRESHOLD = 0.8f;
+    private static final float ATTRIBUTES_THRESHOLD = 0.5f;
+    private static final String GOLDEN_SUFFIX = ".rec";
+    private static final double[] REPORTED_PERCENTILES = new double[] {50, 90, 99, 100};
+
+    private static final String USAGE = "Usage: inference-cli --model SEGMENTATION|ATTRIBUTES|JOINT --images <dir>\n"
+            + "  [--backend stub|torchscript] [--model-file <model.pt>] [--threads <n>] [--repeat <n>]\n"
+            + "  [--stub-delay-ms <ms>] [--golden <dir>] [--write-golden] [--tolerance <0-1>]";
+
+    private static class Options {
+        ModelType modelType = null;
+        File imageDirectory = null;
+        String backend = "stub";
+        String modelFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int repeat = 1;
+        long stubDelayMillis = 0;
+        File goldenDirectory = null;
+        boolean writeGolden = false;
+        float tolerance = 0.98f;
+    }
+
+    private static class Image {
+        final String name;
+        final int[] pixels;
+        final int width;
+        final int height;
+
+        Image(String name, int[] pixels, int width, int height) {
+            this.name = name;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = parseOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        System.exit(run(options) ? 0 : 1);
+    }
+
+    private static Options parseOptions(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--write-golden")) {
+                options.writeGolden = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--model": options.modelType = ModelType.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                    case "--images": options.imageDirectory = new File(value); break;
+                    case "--backend": options.backend = value; break;
+                    case "--model-file": options.modelFile = value; break;
+                    case "--threads": options.threads = Integer.parseInt(value); break;
+                    case "--repeat": options.repeat = Integer.parseInt(value); break;
+                    case "--stub-delay-ms": options.stubDelayMillis = Long.parseLong(value); break;
+                    case "--golden": options.goldenDirectory = new File(value); break;
+                    case "--tolerance": options.tolerance = Float.parseFloat(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + option);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+        }
+        if (options.modelType == null || options.imageDirectory == null) {
+            throw new IllegalArgumentException("--model and --images are required");
+        }
+        if (options.backend.equals("torchscript") && options.modelFile == null) {
+            throw new IllegalArgumentException("--model-file is required with the torchscript backend");
+        }
+        if (!options.backend.equals("torchscript") && !options.backend.equals("stub")) {
+            throw new IllegalArgumentException("Unknown backend " + options.backend);
+        }
+        if (options.writeGolden && options.goldenDirectory == null) {
+            throw new IllegalArgumentException("--write-golden needs --golden");
+        }
+        return options;
+    }
+
+    //Returns false when any result is below the golden tolerance
+    private static boolean run(Options options) throws Exception {
+        List<Image> images = loadImages(options.imageDirectory);
+        if (images.isEmpty()) {
+            System.err.println("No images found in " + options.imageDirectory);
+            return false;
+        }
+
+        //Pipelines aren't thread safe, so every worker thread builds its own along with its own backend
+        //The backends are kept so their models can be released once every worker has finished
+        List<InferenceBackend> backends = Collections.synchronizedList(new ArrayList<>());
+        ThreadLocal<ModelPipeline> pipelines = ThreadLocal.withInitial(() -> {
+            InferenceBackend backend = createBackend(options);
+            backends.add(backend);
+            return new ModelPipeline(backend, MODEL_INPUT_SIZE, SEGMENTATION_THRESHOLD);
+        });
+        int totalRuns = images.size() * options.repeat;
+        RollingPercentiles latencies = new RollingPercentiles(totalRuns);
+        ResultRecord[] results = new ResultRecord[images.size()];
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+        long startTime = System.nanoTime();
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int repeat = 0; repeat < options.repeat; repeat++) {
+                final boolean keepResult = repeat == 0;
+                for (int i = 0; i < images.size(); i++) {
+                    final int index = i;
+                    runs.add(executor.submit(() -> {
+                        Image image = images.get(index);
+                        long runStart = System.nanoTime();
+                        ResultRecord record = pipelines.get().run(image.pixels, image.width, image.height, 0);
+                        latencies.add(System.nanoTime() - runStart);
+                        if (keepResult) {
+                            results[index] = record;
+                        }
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        } finally {
+            executor.shutdown();
+            //A worker that is somehow still running may be in the middle of a forward pass
+            if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                for (InferenceBackend backend : backends) {
+                    if (backend instanceof TorchScriptBackend) {
+                        ((TorchScriptBackend) backend).destroy();
+                    }
+                }
+            }
+        }
+        long wallNanos = System.nanoTime() - startTime;
+
+        System.out.printf(Locale.ROOT, "%s on %d images x %d with %d threads (%s backend)%n", options.modelType,
+                images.size(), options.repeat, options.threads, options.backend);
+        System.out.printf(Locale.ROOT, "Throughput: %.2f images/s%n", totalRuns / (wallNanos / 1e9));
+        StringBuilder latencyLine = new StringBuilder("Latency:");
+        for (double percentile : REPORTED_PERCENTILES) {
+            String label = percentile == 100 ? "max" : "p" + (int) percentile;
+            latencyLine.append(String.format(Locale.ROOT, " %s %.1fms", label,
+                    latencies.getPercentile(percentile) / 1e6));
+        }
+        System.out.println(latencyLine);
+
+        if (options.goldenDirectory == null) {
+            return true;
+        }
+        if (options.writeGolden) {
+            writeGolden(options.goldenDirectory, images, results);
+            return true;
+        }
+        return compareGolden(options, images, results);
+    }
+
+    private static InferenceBackend createBackend(Options options) {
+        if (options.backend.equals("torchscript")) {
+            return new TorchScriptBackend(options.modelFile, options.modelType);
+        }
+        return new StubBackend(options.modelType, NUM_OUTPUT_MASKS, NUM_ATTRIBUTES, options.stubDelayMillis);
+    }
+
+    //Decoded up front so the timings only cover the pipeline itself
+    private static List<Image> loadImages(File directory) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> {
+            String lowerName = name.toLowerCase(Locale.ROOT);
+            return lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg") || lowerName.endsWith(".png");
+        });
+        if (files == null) {
+            throw new IOException("Unable to list " + directory);
+        }
+        Arrays.sort(files);
+        List<Image> images = new ArrayList<>();
+        for (File file : files) {
+            BufferedImage bufferedImage = ImageIO.read(file);
+            if (bufferedImage == null) {
+                System.err.println("Skipping unreadable image " + file.getName());
+                continue;
+            }
+            int width = bufferedImage.getWidth();
+            int height = bufferedImage.getHeight();
+            int[] pixels = bufferedImage.getRGB(0, 0, width, height, null, 0, width);
+            images.add(new Image(file.getName(), pixels, width, height));
+        }
+        return images;
+    }
+
+    private static void writeGolden(File directory, List<Image> images, ResultRecord[] results) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        for (int i = 0; i < images.size(); i++) {
+            ResultFile.write(new File(directory, images.get(i).name + GOLDEN_SUFFIX), results[i]);
+        }
+        System.out.println("Wrote " + images.size() + " golden results to " + directory);
+    }
+
+    private static boolean compareGolden(Options options, List<Image> images, ResultRecord[] results)
+            throws IOException {
+        int compared = 0;
+        int failed = 0;
+        float accuracyTotal = 0;
+        float worstAccuracy = 1;
+        for (int i = 0; i < images.size(); i++) {
+            File goldenFile = new File(options.goldenDirectory, images.get(i).name + GOLDEN_SUFFIX);
+            if (!goldenFile.exists()) {
+                System.out.println("No golden result for " + images.get(i).name);
+                continue;
+            }
+            GoldenDiff diff = GoldenDiff.compare(results[i], ResultFile.map(goldenFile), ATTRIBUTES_THRESHOLD);
+            float accuracy = diff.getAccuracy();
+            compared++;
+            accuracyTotal += accuracy;
+            worstAccuracy = Math.min(worstAccuracy, accuracy);
+            if (accuracy < options.tolerance) {
+                failed++;
+                System.out.printf(Locale.ROOT, "REGRESSION %s: mask IoU %.4f, attribute agreement %.4f, "
+                        + "max attribute delta %.4f%n", images.get(i).name, diff.maskIou, diff.attributeAgreement,
+                        diff.maxAttributeDelta);
+            }
+        }
+        if (compared == 0) {
+            System.out.println("No golden results to compare with");
+            return false;
+        }
+        System.out.printf(Locale.ROOT, "Golden: %d compared, %d below %.3f, mean accuracy %.4f, worst %.4f%n",
+                compared, failed, options.tolerance, accuracyTotal / compared, worstAccuracy);
+        return failed == 0;
+    }
+}
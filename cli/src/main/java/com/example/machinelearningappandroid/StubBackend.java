@@ -0,0 +1,52 @@
+package com.example.machinelearningappandroid;
+
+import java.nio.FloatBuffer;
+
+//Stands in for a model so the harness can be run without PyTorch, the outputs are cheap but depend on the input
+//Each mask covers a band of brightness and each attribute is the mean of a slice of the input
+public class StubBackend implements InferenceBackend {
+    private final ModelType modelType;
+    private final int numMasks;
+    private final int numAttributes;
+    private final long delayMillis;
+
+    //delayMillis is added to every forward pass to stand in for the model's own run time
+    public StubBackend(ModelType modelType, int numMasks, int numAttributes, long delayMillis) {
+        this.modelType = modelType;
+        this.numMasks = numMasks;
+        this.numAttributes = numAttributes;
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public Outputs forward(FloatBuffer input, int inputSize) throws InterruptedException {
+        if (delayMillis > 0) {
+            Thread.sleep(delayMillis);
+        }
+        int planeSize = inputSize * inputSize;
+        FloatBuffer segmentation = null;
+        if (modelType != ModelType.ATTRIBUTES) {
+            segmentation = FloatBuffer.allocate(numMasks * planeSize);
+            for (int i = 0; i < planeSize; i++) {
+                //Normalized values are roughly -2 to 2, mapped onto the masks from darkest to brightest
+                float brightness = (input.get(i) + input.get(planeSize + i) + input.get(2 * planeSize + i)) / 3;
+                int mask = Math.max(0, Math.min(numMasks - 1, (int) ((brightness + 2) / 4 * numMasks)));
+                segmentation.put(mask * planeSize + i, 1);
+            }
+        }
+        FloatBuffer attributes = null;
+        if (modelType != ModelType.SEGMENTATION) {
+            attributes = FloatBuffer.allocate(numAttributes);
+            int sliceSize = 3 * planeSize / numAttributes;
+            for (int attribute = 0; attribute < numAttributes; attribute++) {
+                float sum = 0;
+                for (int i = attribute * sliceSize; i < (attribute + 1) * sliceSize; i++) {
+                    sum += input.get(i);
+                }
+                attributes.put(attribute, AttributeScores.sigmoid(sum / sliceSize));
+            }
+        }
+        return new Outputs(segmentation, segmentation == null ? 0 : numMasks, inputSize, inputSize, attributes,
+                attributes == null ? 0 : numAttributes);
+    }
+}
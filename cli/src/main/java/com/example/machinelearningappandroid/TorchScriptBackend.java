@@ -0,0 +1,50 @@
+package com.example.machinelearningappandroid;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.nio.FloatBuffer;
+
+//Runs a TorchScript model with PyTorch's Java bindings. These load full TorchScript files (.pt) rather than the
+//lite interpreter files (.ptl) the app ships, so both should be exported from the same checkpoint
+public class TorchScriptBackend implements InferenceBackend {
+    private final Module module;
+    private final ModelType modelType;
+
+    public TorchScriptBackend(String modelPath, ModelType modelType) {
+        this.module = Module.load(modelPath);
+        this.modelType = modelType;
+    }
+
+    @Override
+    public Outputs forward(FloatBuffer input, int inputSize) {
+        Tensor inputTensor = Tensor.fromBlob(input, new long[] {1, 3, inputSize, inputSize});
+        IValue output = module.forward(IValue.from(inputTensor));
+        Tensor segmentation = null;
+        Tensor attributes = null;
+        switch (modelType) {
+            case JOINT:
+                IValue[] tuple = output.toTuple();
+                segmentation = tuple[0].toTensor();
+                attributes = tuple[1].toTensor();
+                break;
+            case SEGMENTATION:
+                segmentation = output.toTensor();
+                break;
+            default:
+                attributes = output.toTensor();
+        }
+
+        //Copied out, as the Java bindings don't give access to the buffer behind an output tensor
+        return Outputs.fromHeads(segmentation == null ? null : FloatBuffer.wrap(segmentation.getDataAsFloatArray()),
+                segmentation == null ? null : segmentation.shape(),
+                attributes == null ? null : FloatBuffer.wrap(attributes.getDataAsFloatArray()),
+                attributes == null ? null : attributes.shape(), 0, null);
+    }
+
+    //Releases the native module, must only be called once no forward pass is running
+    public void destroy() {
+        module.destroy();
+    }
+}
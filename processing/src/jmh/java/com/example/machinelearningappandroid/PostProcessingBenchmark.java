@@ -0,0 +1,128 @@
+package com.example.machinelearningappandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+//Times turning the 18x512x512 segmentation output and the attribute scores into something the UI can show
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostProcessingBenchmark {
+    private static final float SEGMENTATION_THRESHOLD = 0.8f;
+    private static final float ATTRIBUTES_THRESHOLD = 0.5f;
+    private static final int TOP_K = 5;
+
+    private FloatBuffer segmentationValues;
+    private FloatBuffer attributesValues;
+    private String[] attributeNames;
+    private AttributeCalibration attributeCalibration;
+    private int[] topIndices;
+    private int[] maskPixels;
+    private DataOutputStream discardingOutput;
+    private ForkJoinPool singleThreadPool;
+    private int[] palette;
+
+    @Setup
+    public void setup() {
+        segmentationValues = SyntheticOutputs.segmentationOutput(1);
+        attributesValues = SyntheticOutputs.attributesOutput(2);
+        attributeNames = SyntheticOutputs.names(SyntheticOutputs.NUM_ATTRIBUTES);
+        attributeCalibration = AttributeCalibration.uniform(attributeNames, ATTRIBUTES_THRESHOLD, false);
+        topIndices = new int[TOP_K];
+        maskPixels = new int[SyntheticOutputs.SIZE * SyntheticOutputs.SIZE];
+        singleThreadPool = new ForkJoinPool(1);
+        palette = LabelMap.createPalette(SyntheticOutputs.NUM_MASKS, 0xFF);
+        discardingOutput = new DataOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    //What a single "View next" click costs
+    @Benchmark
+    public int[] thresholdSingleMask() {
+        SegmentationResult result = newResult();
+        result.renderMask(0, maskPixels, 0, SegmentationResult.MASK_COLOUR, SegmentationResult.BACKGROUND_COLOUR);
+        return maskPixels;
+    }
+
+    //What thresholding every mask up front costs, as the pre-rendering mode does
+    @Benchmark
+    public int[] thresholdAllMasks() {
+        SegmentationResult result = newResult();
+        for (int mask = 0; mask < SyntheticOutputs.NUM_MASKS; mask++) {
+            result.renderMask(mask, maskPixels, 0, SegmentationResult.MASK_COLOUR, SegmentationResult.BACKGROUND_COLOUR);
+        }
+        return maskPixels;
+    }
+
+    //Mask lookups through the pooled buffer, including the repeat view of the same mask
+    @Benchmark
+    public void pooledMaskViews(Blackhole blackhole) {
+        SegmentationResult result = newResult();
+        for (int mask = 0; mask < SyntheticOutputs.NUM_MASKS; mask++) {
+            blackhole.consume(result.getMaskPixels(mask));
+            blackhole.consume(result.getMaskPixels(mask));
+        }
+        result.release();
+    }
+
+    //The whole parsing map in one pass, on every core and then on one to show what the fork/join split buys
+    @Benchmark
+    public int[] labelMapParallel() {
+        LabelMap labelMap = newResult().computeLabelMap(ForkJoinPool.commonPool());
+        labelMap.render(maskPixels, 0, palette, SegmentationResult.BACKGROUND_COLOUR);
+        return maskPixels;
+    }
+
+    @Benchmark
+    public int[] labelMapSingleThread() {
+        LabelMap labelMap = newResult().computeLabelMap(singleThreadPool);
+        labelMap.render(maskPixels, 0, palette, SegmentationResult.BACKGROUND_COLOUR);
+        return maskPixels;
+    }
+
+    @Benchmark
+    public int encodeAllMasksRle() throws IOException {
+        int maskSize = SyntheticOutputs.SIZE * SyntheticOutputs.SIZE;
+        int bytes = 0;
+        for (int mask = 0; mask < SyntheticOutputs.NUM_MASKS; mask++) {
+            bytes += MaskRle.encode(segmentationValues, mask * maskSize, maskSize, SEGMENTATION_THRESHOLD, discardingOutput);
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public Object attributesAboveThreshold() {
+        return AttributesOutput.getNamesAboveThreshold(attributesValues, attributeNames, ATTRIBUTES_THRESHOLD);
+    }
+
+    @Benchmark
+    public int attributesTopK() {
+        AttributeScores scores = AttributeScores.fromOutput(attributesValues, 0, attributeCalibration);
+        return scores.topK(TOP_K, topIndices);
+    }
+
+    private SegmentationResult newResult() {
+        return new SegmentationResult(segmentationValues, null, SyntheticOutputs.NUM_MASKS,
+                SyntheticOutputs.SIZE, SyntheticOutputs.SIZE, SEGMENTATION_THRESHOLD);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.machinelearningappandroid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Times writing images into the model's input tensor
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreProcessingBenchmark {
+    private static final float[] MEAN = new float[] {0.485f, 0.456f, 0.406f};
+    private static final float[] STD = new float[] {0.229f, 0.224f, 0.225f};
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+
+    private TensorInputWriter writer;
+    private FloatBuffer inputBuffer;
+    private int[] croppedPixels;
+    private int[] largePixels;
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+
+    @Setup
+    public void setup() {
+        writer = new TensorInputWriter(SyntheticOutputs.SIZE, MEAN, STD);
+        inputBuffer = ByteBuffer.allocateDirect(writer.getTensorSize() * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        croppedPixels = SyntheticOutputs.argbPixels(SyntheticOutputs.SIZE, SyntheticOutputs.SIZE, 1);
+        largePixels = SyntheticOutputs.argbPixels(1536, 2048, 2);
+
+        //Camera style layout with the chroma planes interleaved
+        Random random = new Random(3);
+        byte[] y = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+        byte[] uv = new byte[FRAME_WIDTH * FRAME_HEIGHT / 2];
+        random.nextBytes(y);
+        random.nextBytes(uv);
+        yPlane = ByteBuffer.allocateDirect(y.length);
+        yPlane.put(y).rewind();
+        ByteBuffer uvPlane = ByteBuffer.allocateDirect(uv.length);
+        uvPlane.put(uv).rewind();
+        uPlane = uvPlane.duplicate();
+        uvPlane.position(1);
+        vPlane = uvPlane.slice();
+    }
+
+    //The photo path, where the crop is already 512x512
+    @Benchmark
+    public FloatBuffer argbAtInputSize() {
+        writer.writeArgb(croppedPixels, SyntheticOutputs.SIZE, SyntheticOutputs.SIZE, 0, inputBuffer, 0);
+        return inputBuffer;
+    }
+
+    //A subsampled gallery image that has to be rotated, cropped and resized
+    @Benchmark
+    public FloatBuffer argbRotatedAndResized() {
+        writer.writeArgb(largePixels, 1536, 2048, 270, inputBuffer, 0);
+        return inputBuffer;
+    }
+
+    //The live camera path
+    @Benchmark
+    public FloatBuffer yuvCameraFrame() {
+        writer.writeYuv420(yPlane, FRAME_WIDTH, 1, uPlane, vPlane, FRAME_WIDTH, 2,
+                FRAME_WIDTH, FRAME_HEIGHT, 270, inputBuffer, 0);
+        return inputBuffer;
+    }
+}
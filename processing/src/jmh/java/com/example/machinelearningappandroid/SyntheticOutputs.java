@@ -0,0 +1,62 @@
+package com.example.machinelearningappandroid;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+//Builds model outputs that look like real ones, so the benchmarks don't depend on a device or the model files
+public class SyntheticOutputs {
+    public static final int NUM_MASKS = 18;
+    public static final int SIZE = 512;
+    public static final int NUM_ATTRIBUTES = 40;
+
+    //Each channel is a filled ellipse of high confidence on a noisy low confidence background, like a face part
+    public static FloatBuffer segmentationOutput(long seed) {
+        Random random = new Random(seed);
+        FloatBuffer values = ByteBuffer.allocateDirect(NUM_MASKS * SIZE * SIZE * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int mask = 0; mask < NUM_MASKS; mask++) {
+            float centreX = SIZE * (0.2f + 0.6f * random.nextFloat());
+            float centreY = SIZE * (0.2f + 0.6f * random.nextFloat());
+            float radiusX = SIZE * (0.05f + 0.2f * random.nextFloat());
+            float radiusY = SIZE * (0.05f + 0.2f * random.nextFloat());
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    float dx = (x - centreX) / radiusX;
+                    float dy = (y - centreY) / radiusY;
+                    boolean inside = dx * dx + dy * dy < 1;
+                    values.put(inside ? 0.85f + 0.15f * random.nextFloat() : 0.3f * random.nextFloat());
+                }
+            }
+        }
+        values.rewind();
+        return values;
+    }
+
+    public static FloatBuffer attributesOutput(long seed) {
+        Random random = new Random(seed);
+        FloatBuffer values = FloatBuffer.allocate(NUM_ATTRIBUTES);
+        for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+            values.put(i, random.nextFloat());
+        }
+        return values;
+    }
+
+    public static int[] argbPixels(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+
+    public static String[] names(int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "Attribute " + i;
+        }
+        return names;
+    }
+}
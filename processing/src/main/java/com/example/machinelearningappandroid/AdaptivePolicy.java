@@ -0,0 +1,166 @@
+package com.example.machinelearningappandroid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Chooses how heavily one model type is run, stepping down a ladder of levels when the device is hot, short of
+//memory or too slow, and back up once it has been comfortably within limits for a while
+//Stepping down happens as soon as there is pressure, stepping up needs a quieter state held for recoverAfterMillis,
+//so a device sitting near a limit settles on one level instead of going back and forth between two
+public class AdaptivePolicy {
+    //Latency has to drop below this fraction of the budget before a heavier level is tried again
+    private static final float RECOVER_LATENCY_FRACTION = 0.7f;
+    private static final int LATENCY_WINDOW = 8;
+    //Latency of fewer runs than this at a level isn't trusted
+    private static final int MIN_LATENCY_SAMPLES = 3;
+    private static final double LATENCY_PERCENTILE = 90;
+
+    //One way of running the model, levels are ordered from the heaviest to the lightest
+    public static class Level {
+        public final String variantName;
+        public final int inputSize;
+        public final int threads;
+
+        public Level(String variantName, int inputSize, int threads) {
+            this.variantName = variantName;
+            this.inputSize = inputSize;
+            this.threads = threads;
+        }
+
+        @Override
+        public String toString() {
+            return variantName + " at " + inputSize + " on " + threads + " threads";
+        }
+    }
+
+    //What was decided on an update, reason says why the level changed or was kept
+    public static class Decision {
+        public final Level level;
+        public final int levelIndex;
+        public final boolean changed;
+        public final String reason;
+
+        Decision(Level level, int levelIndex, boolean changed, String reason) {
+            this.level = level;
+            this.levelIndex = levelIndex;
+            this.changed = changed;
+            this.reason = reason;
+        }
+    }
+
+    private final ArrayList<Level> levels;
+    private final long latencyBudgetMillis;
+    private final long recoverAfterMillis;
+    private final long stepDownIntervalMillis;
+
+    private int levelIndex = 0;
+    private long lastChange = Long.MIN_VALUE / 2;
+    //When the device last went from under pressure to comfortable, -1 while it isn't comfortable
+    private long comfortableSince = -1;
+    private RollingPercentiles latency = new RollingPercentiles(LATENCY_WINDOW);
+
+    //stepDownIntervalMillis gives each lower level a chance to take effect before stepping down again, a severe
+    //thermal status skips straight to the lightest level whatever the interval
+    public AdaptivePolicy(List<Level> levels, long latencyBudgetMillis, long recoverAfterMillis,
+                          long stepDownIntervalMillis) {
+        if (levels.isEmpty()) {
+            throw new IllegalArgumentException("At least one level is needed");
+        }
+        this.levels = new ArrayList<>(levels);
+        this.latencyBudgetMillis = latencyBudgetMillis;
+        this.recoverAfterMillis = recoverAfterMillis;
+        this.stepDownIntervalMillis = stepDownIntervalMillis;
+    }
+
+    public synchronized Level getLevel() {
+        return levels.get(levelIndex);
+    }
+
+    public synchronized int getLevelIndex() {
+        return levelIndex;
+    }
+
+    //Latency of a run made at the current level
+    public synchronized void recordLatency(long millis) {
+        latency.add(millis);
+    }
+
+    //thermalStatus uses the FrameSchedule thermal status values, memoryTight is whether the system is close to
+    //killing processes to free memory, which skips past levels that only differ in threads to a smaller variant
+    public synchronized Decision update(int thermalStatus, boolean memoryTight, long nowMillis) {
+        boolean latencyKnown = latency.getCount() >= MIN_LATENCY_SAMPLES;
+        long recentLatency = latencyKnown ? latency.getPercentile(LATENCY_PERCENTILE) : 0;
+        int lightest = levels.size() - 1;
+
+        if (thermalStatus >= FrameSchedule.THERMAL_STATUS_SEVERE) {
+            comfortableSince = -1;
+            return moveTo(lightest, nowMillis, "thermal status " + thermalStatus);
+        }
+        String pressure = null;
+        int target = levelIndex;
+        if (thermalStatus >= FrameSchedule.THERMAL_STATUS_MODERATE) {
+            pressure = "thermal status " + thermalStatus;
+            target = Math.min(lightest, levelIndex + 1);
+        } else if (latencyKnown && recentLatency > latencyBudgetMillis) {
+            pressure = "p90 latency " + recentLatency + "ms over " + latencyBudgetMillis + "ms";
+            target = Math.min(lightest, levelIndex + 1);
+        }
+        if (memoryTight) {
+            //Fewer threads take no less memory, only a smaller variant does
+            pressure = pressure == null ? "memory is tight" : pressure + ", memory is tight";
+            target = Math.max(target, getSmallerVariantLevel());
+        }
+        if (pressure != null) {
+            comfortableSince = -1;
+            if (nowMillis - lastChange < stepDownIntervalMillis) {
+                return keep("waiting to step down, " + pressure);
+            }
+            return moveTo(target, nowMillis, pressure);
+        }
+
+        boolean comfortable = thermalStatus <= FrameSchedule.THERMAL_STATUS_LIGHT
+                && (!latencyKnown || recentLatency < latencyBudgetMillis * RECOVER_LATENCY_FRACTION);
+        if (!comfortable) {
+            comfortableSince = -1;
+            return keep("close to the latency budget");
+        }
+        if (comfortableSince == -1) {
+            comfortableSince = nowMillis;
+        }
+        if (levelIndex == 0) {
+            return keep("already at the heaviest level");
+        }
+        long comfortableFor = nowMillis - Math.max(comfortableSince, lastChange);
+        if (comfortableFor < recoverAfterMillis) {
+            return keep("comfortable for " + comfortableFor + "ms");
+        }
+        return moveTo(levelIndex - 1, nowMillis, "comfortable for " + comfortableFor + "ms");
+    }
+
+    //The first lighter level that runs a different variant, or the current level when there is none
+    private int getSmallerVariantLevel() {
+        Level current = levels.get(levelIndex);
+        for (int i = levelIndex + 1; i < levels.size(); i++) {
+            Level level = levels.get(i);
+            if (!level.variantName.equals(current.variantName) || level.inputSize != current.inputSize) {
+                return i;
+            }
+        }
+        return levelIndex;
+    }
+
+    private Decision moveTo(int index, long nowMillis, String reason) {
+        if (index == levelIndex) {
+            return keep(reason);
+        }
+        levelIndex = index;
+        lastChange = nowMillis;
+        //Runs at the old level say nothing about the new one
+        latency = new RollingPercentiles(LATENCY_WINDOW);
+        return new Decision(levels.get(index), index, true, reason);
+    }
+
+    private Decision keep(String reason) {
+        return new Decision(levels.get(levelIndex), levelIndex, false, reason);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.machinelearningappandroid;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+//Per attribute thresholds and whether the model outputs logits or probabilities, loaded from a calibration file
+//so precision can be tuned for each attribute without rebuilding. The file has one "Name = threshold" line per tuned
+//attribute, thresholds are probabilities, and "output = logits" means the scores still need a sigmoid applying
+public class AttributeCalibration {
+    public static final String OUTPUT_KEY = "output";
+    public static final String LOGITS = "logits";
+
+    private final String[] names;
+    private final float[] thresholds;
+    private final boolean logits;
+
+    private AttributeCalibration(String[] names, float[] thresholds, boolean logits) {
+        this.names = names;
+        this.thresholds = thresholds;
+        this.logits = logits;
+    }
+
+    //Every attribute uses the same threshold, for when there is no calibration file
+    public static AttributeCalibration uniform(String[] names, float threshold, boolean logits) {
+        float[] thresholds = new float[names.length];
+        Arrays.fill(thresholds, threshold);
+        return new AttributeCalibration(names, thresholds, logits);
+    }
+
+    //Attributes missing from the file keep the default threshold, unknown names are rejected so typos don't go unnoticed
+    //Lines are split at the last '=' rather than read as Java properties, as attribute names contain spaces
+    public static AttributeCalibration read(Reader reader, String[] names, float defaultThreshold) throws IOException {
+        boolean logits = false;
+        float[] thresholds = new float[names.length];
+        Arrays.fill(thresholds, defaultThreshold);
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.lastIndexOf('=');
+            if (separator == -1) {
+                throw new IOException("Calibration line has no '=': " + line);
+            }
+            String key = line.substring(0, separator).trim();
+            String value = line.substring(separator + 1).trim();
+            if (key.equals(OUTPUT_KEY)) {
+                logits = LOGITS.equals(value);
+                continue;
+            }
+            int index = Arrays.asList(names).indexOf(key);
+            if (index == -1) {
+                throw new IOException("Calibration for unknown attribute " + key);
+            }
+            float threshold;
+            try {
+                threshold = Float.parseFloat(value);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid threshold for " + key, e);
+            }
+            if (!(threshold > 0 && threshold < 1)) {
+                throw new IOException("Threshold for " + key + " must be between 0 and 1");
+            }
+            thresholds[index] = threshold;
+        }
+        return new AttributeCalibration(names, thresholds, logits);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public float getThreshold(int index) {
+        return thresholds[index];
+    }
+
+    public boolean isLogits() {
+        return logits;
+    }
+}
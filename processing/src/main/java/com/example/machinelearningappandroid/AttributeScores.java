@@ -0,0 +1,92 @@
+package com.example.machinelearningappandroid;
+
+import java.nio.FloatBuffer;
+
+//The probability of every attribute for one face, along with the calibration that decides which are present
+//Orderings are written into index arrays owned by the caller, so a result can be queried without allocating
+public class AttributeScores {
+    private final float[] probabilities;
+    private final AttributeCalibration calibration;
+
+    private AttributeScores(float[] probabilities, AttributeCalibration calibration) {
+        this.probabilities = probabilities;
+        this.calibration = calibration;
+    }
+
+    //Reads one face's scores starting at offset, turning logits into probabilities if the calibration says to
+    public static AttributeScores fromOutput(FloatBuffer values, int offset, AttributeCalibration calibration) {
+        float[] probabilities = new float[calibration.size()];
+        for (int i = 0; i < probabilities.length; i++) {
+            float value = values.get(offset + i);
+            probabilities[i] = calibration.isLogits() ? sigmoid(value) : value;
+        }
+        return new AttributeScores(probabilities, calibration);
+    }
+
+    //Probabilities are copied, so the array can go on being changed
+    public static AttributeScores fromProbabilities(float[] probabilities, AttributeCalibration calibration) {
+        return new AttributeScores(probabilities.clone(), calibration);
+    }
+
+    public static float sigmoid(float logit) {
+        return (float) (1 / (1 + Math.exp(-logit)));
+    }
+
+    //Inverse of the sigmoid, probabilities are clamped away from 0 and 1 so the result stays finite
+    public static float logit(float probability) {
+        double clamped = Math.min(Math.max(probability, 1e-7), 1 - 1e-7);
+        return (float) Math.log(clamped / (1 - clamped));
+    }
+
+    public int size() {
+        return probabilities.length;
+    }
+
+    public String getName(int index) {
+        return calibration.getName(index);
+    }
+
+    public float getProbability(int index) {
+        return probabilities[index];
+    }
+
+    public boolean isPresent(int index) {
+        return probabilities[index] > calibration.getThreshold(index);
+    }
+
+    //Writes the indices of the k most likely attributes into indices, most likely first, and returns how many were written
+    public int topK(int k, int[] indices) {
+        int count = Math.min(k, Math.min(indices.length, probabilities.length));
+        int filled = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            filled = insertSorted(indices, filled, count, i);
+        }
+        return filled;
+    }
+
+    //Writes the indices of the attributes above their thresholds into indices, most likely first
+    public int getPresent(int[] indices) {
+        int filled = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            if (isPresent(i)) {
+                filled = insertSorted(indices, filled, indices.length, i);
+            }
+        }
+        return filled;
+    }
+
+    //Insertion into a short list sorted by probability, dropping the least likely entry once it holds capacity items
+    private int insertSorted(int[] indices, int filled, int capacity, int index) {
+        float probability = probabilities[index];
+        if (capacity == 0 || (filled == capacity && probabilities[indices[filled - 1]] >= probability)) {
+            return filled;
+        }
+        int position = Math.min(filled, capacity - 1);
+        while (position > 0 && probabilities[indices[position - 1]] < probability) {
+            indices[position] = indices[position - 1];
+            position--;
+        }
+        indices[position] = index;
+        return Math.min(filled + 1, capacity);
+    }
+}
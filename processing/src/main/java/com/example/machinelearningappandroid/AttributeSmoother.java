@@ -0,0 +1,29 @@
+package com.example.machinelearningappandroid;
+
+//Exponential moving average of each attribute's probability over a stream of frames, so the attributes shown don't
+//flicker as the face moves. The weight of a new result depends on how long it has been since the last one, so the
+//smoothing behaves the same however often the model is actually run
+public class AttributeSmoother {
+    private final float[] smoothed;
+    private final float timeConstantMillis;
+    private long lastUpdate = -1;
+
+    public AttributeSmoother(int numAttributes, float timeConstantMillis) {
+        this.smoothed = new float[numAttributes];
+        this.timeConstantMillis = timeConstantMillis;
+    }
+
+    public void update(AttributeScores scores, long nowMillis) {
+        float weight = lastUpdate == -1 ? 1
+                : (float) (1 - Math.exp(-(nowMillis - lastUpdate) / timeConstantMillis));
+        for (int i = 0; i < smoothed.length; i++) {
+            smoothed[i] += weight * (scores.getProbability(i) - smoothed[i]);
+        }
+        lastUpdate = nowMillis;
+    }
+
+    //A copy of the smoothed probabilities, safe to hand to another thread
+    public AttributeScores getScores(AttributeCalibration calibration) {
+        return AttributeScores.fromProbabilities(smoothed, calibration);
+    }
+}
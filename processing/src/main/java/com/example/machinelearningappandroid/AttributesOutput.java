@@ -0,0 +1,18 @@
+package com.example.machinelearningappandroid;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+//Turns the output of the attributes model into the names of the attributes the face has
+public class AttributesOutput {
+    //Reads the scores straight from the output buffer, returning the names of those above the threshold
+    public static ArrayList<String> getNamesAboveThreshold(FloatBuffer values, String[] names, float threshold) {
+        ArrayList<String> outputs = new ArrayList<String>();
+        for (int i = 0; i < names.length; i++) {
+            if (values.get(i) > threshold) {
+                outputs.add(names[i]);
+            }
+        }
+        return outputs;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.machinelearningappandroid;
+
+//Works out how to decode an image so that no more of it is held in memory than the model needs
+//Only the centre square of an image ever reaches the model, so only that square is decoded, subsampled by the
+//largest power of two that keeps it at least targetSize across. The decoded square is then always less than twice
+//targetSize across, however large the original is
+public class DecodePlan {
+    public final int sourceWidth;
+    public final int sourceHeight;
+    //Centre square of the source, in source pixels
+    public final int regionLeft;
+    public final int regionTop;
+    public final int regionSize;
+    public final int sampleSize;
+    //Side of the decoded square, decoders round up when the region doesn't divide evenly by the sample size
+    public final int decodedSize;
+
+    private DecodePlan(int sourceWidth, int sourceHeight, int regionLeft, int regionTop, int regionSize,
+                       int sampleSize) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.regionLeft = regionLeft;
+        this.regionTop = regionTop;
+        this.regionSize = regionSize;
+        this.sampleSize = sampleSize;
+        this.decodedSize = (regionSize + sampleSize - 1) / sampleSize;
+    }
+
+    public static DecodePlan forCentreSquare(int sourceWidth, int sourceHeight, int targetSize) {
+        if (sourceWidth <= 0 || sourceHeight <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + sourceWidth + " x " + sourceHeight);
+        }
+        int regionSize = Math.min(sourceWidth, sourceHeight);
+        return new DecodePlan(sourceWidth, sourceHeight, (sourceWidth - regionSize) / 2,
+                (sourceHeight - regionSize) / 2, regionSize, getSampleSize(regionSize, targetSize));
+    }
+
+    //Largest power of two sample size that keeps the decoded size at or above targetSize
+    public static int getSampleSize(int size, int targetSize) {
+        int sampleSize = 1;
+        while (size / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    //Size of the whole image when it has to be decoded with the same sample size, for formats that can't be decoded
+    //by region
+    public int getWholeDecodedWidth() {
+        return (sourceWidth + sampleSize - 1) / sampleSize;
+    }
+
+    public int getWholeDecodedHeight() {
+        return (sourceHeight + sampleSize - 1) / sampleSize;
+    }
+
+    public long getDecodedBytes(int bytesPerPixel) {
+        return (long) decodedSize * decodedSize * bytesPerPixel;
+    }
+
+    //Everything held at once between the file and the tensor: the decoded square, the ARGB pixels read out of it
+    //and the float tensor of targetSize x targetSize written from them
+    public long getPeakBytes(int bytesPerPixel, int targetSize) {
+        long pixelArrayBytes = (long) decodedSize * decodedSize * 4;
+        long tensorBytes = 3L * targetSize * targetSize * 4;
+        return getDecodedBytes(bytesPerPixel) + pixelArrayBytes + tensorBytes;
+    }
+}
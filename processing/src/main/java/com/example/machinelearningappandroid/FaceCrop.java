@@ -0,0 +1,55 @@
+package com.example.machinelearningappandroid;
+
+//Square region around a detected face, framed like the training images with the whole head and some background
+//The position of the eyes is all a face detector needs to give, so the framing is the same for every photo
+public class FaceCrop {
+    //Side of the crop as a multiple of the distance between the eyes
+    public static final float CROP_SCALE = 4.5f;
+    //How far below the eyes the centre of the crop sits, as a fraction of its side
+    public static final float CENTRE_OFFSET = 0.08f;
+
+    public final int left;
+    public final int top;
+    public final int size;
+
+    public FaceCrop(int left, int top, int size) {
+        this.left = left;
+        this.top = top;
+        this.size = size;
+    }
+
+    //The crop is moved, then shrunk if it has to be, so that it stays inside the image
+    public static FaceCrop around(float eyesMidX, float eyesMidY, float eyesDistance, int imageWidth, int imageHeight) {
+        int size = Math.min(Math.round(eyesDistance * CROP_SCALE), Math.min(imageWidth, imageHeight));
+        float centreY = eyesMidY + size * CENTRE_OFFSET;
+        int left = clamp(Math.round(eyesMidX - size / 2f), 0, imageWidth - size);
+        int top = clamp(Math.round(centreY - size / 2f), 0, imageHeight - size);
+        return new FaceCrop(left, top, size);
+    }
+
+    //Maps a crop found on a scaled copy of the image back to the image itself
+    public FaceCrop scale(float factor, int imageWidth, int imageHeight) {
+        int scaledSize = Math.min(Math.round(size * factor), Math.min(imageWidth, imageHeight));
+        return new FaceCrop(clamp(Math.round(left * factor), 0, imageWidth - scaledSize),
+                clamp(Math.round(top * factor), 0, imageHeight - scaledSize), scaledSize);
+    }
+
+    //Maps a crop of the upright image back to the image as stored, which needs rotating clockwise by rotationDegrees
+    //to be upright. uprightWidth and uprightHeight are the size of the upright image
+    public FaceCrop unrotate(int rotationDegrees, int uprightWidth, int uprightHeight) {
+        switch (rotationDegrees) {
+            case 90:
+                return new FaceCrop(top, uprightWidth - (left + size), size);
+            case 180:
+                return new FaceCrop(uprightWidth - (left + size), uprightHeight - (top + size), size);
+            case 270:
+                return new FaceCrop(uprightHeight - (top + size), left, size);
+            default:
+                return this;
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
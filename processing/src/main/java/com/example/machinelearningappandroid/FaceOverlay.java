@@ -0,0 +1,42 @@
+package com.example.machinelearningappandroid;
+
+//Draws the parsing map of one face of a group photo back onto the photo, at the place and size its crop was taken
+//from, so every face's result can be shown in the coordinates of the whole image
+public class FaceOverlay {
+    //pixels is an ARGB image of imageWidth x imageHeight, the same orientation as the image the crop was made on and
+    //scale times its size. Background labels leave the pixels as they were, so nearby faces don't cover each other
+    public static void render(LabelMap labels, FaceCrop crop, float scale, int[] palette, int[] pixels,
+                              int imageWidth, int imageHeight) {
+        int left = Math.max(0, (int) Math.floor(crop.left * scale));
+        int top = Math.max(0, (int) Math.floor(crop.top * scale));
+        int right = Math.min(imageWidth, (int) Math.ceil((crop.left + crop.size) * scale));
+        int bottom = Math.min(imageHeight, (int) Math.ceil((crop.top + crop.size) * scale));
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        //Nearest label for each pixel centre, the columns are the same for every row so they are only worked out once
+        float labelsPerPixelX = labels.getWidth() / (crop.size * scale);
+        float labelsPerPixelY = labels.getHeight() / (crop.size * scale);
+        int[] labelColumns = new int[right - left];
+        for (int x = left; x < right; x++) {
+            labelColumns[x - left] = clamp((int) ((x + 0.5f - crop.left * scale) * labelsPerPixelX), labels.getWidth());
+        }
+        byte[] labelValues = labels.getLabels();
+        for (int y = top; y < bottom; y++) {
+            int labelRow = clamp((int) ((y + 0.5f - crop.top * scale) * labelsPerPixelY), labels.getHeight());
+            int labelRowOffset = labelRow * labels.getWidth();
+            int pixelRowOffset = y * imageWidth;
+            for (int x = left; x < right; x++) {
+                byte label = labelValues[labelRowOffset + labelColumns[x - left]];
+                if (label != LabelMap.BACKGROUND) {
+                    pixels[pixelRowOffset + x] = palette[label];
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.machinelearningappandroid;
+
+import java.nio.ByteBuffer;
+
+//Cheap check of how much a camera frame differs from the last frame that was run through the model
+//Only a coarse grid of luma samples is read, so measuring a frame costs far less than converting it for the model
+public class FrameChangeDetector {
+    private final int gridSize;
+    private final int[] reference;
+    private final int[] current;
+    private boolean hasReference = false;
+
+    public FrameChangeDetector(int gridSize) {
+        this.gridSize = gridSize;
+        this.reference = new int[gridSize * gridSize];
+        this.current = new int[gridSize * gridSize];
+    }
+
+    //Mean absolute difference in luma from the reference frame, from 0 to 255. Always 255 until there is a reference
+    //The buffer's position is left untouched so the frame can still be read afterwards
+    public float measure(ByteBuffer luma, int rowStride, int pixelStride, int width, int height) {
+        long totalDifference = 0;
+        int sample = 0;
+        for (int gridY = 0; gridY < gridSize; gridY++) {
+            //Samples are taken from the centre of each grid cell
+            int y = (2 * gridY + 1) * height / (2 * gridSize);
+            for (int gridX = 0; gridX < gridSize; gridX++) {
+                int x = (2 * gridX + 1) * width / (2 * gridSize);
+                int value = luma.get(y * rowStride + x * pixelStride) & 0xFF;
+                current[sample] = value;
+                totalDifference += Math.abs(value - reference[sample]);
+                sample++;
+            }
+        }
+        return hasReference ? totalDifference / (float) current.length : 255;
+    }
+
+    //Makes the last measured frame the one later frames are compared against, called when it is run through the model
+    public void acceptMeasured() {
+        System.arraycopy(current, 0, reference, 0, current.length);
+        hasReference = true;
+    }
+}
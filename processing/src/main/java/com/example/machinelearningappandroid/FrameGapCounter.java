@@ -0,0 +1,29 @@
+package com.example.machinelearningappandroid;
+
+//Counts camera frames that never reached the analyzer, from gaps in the timestamps of the frames that did
+//With a keep only latest backpressure strategy the camera drops frames itself while the analyzer is busy, so they
+//are never seen as skipped. The camera's frame interval is taken as the shortest gap so far, so drops in the first
+//gaps are only counted once a gap of a single frame has been seen
+public class FrameGapCounter {
+    private long lastTimestampNanos = -1;
+    private long frameIntervalNanos = Long.MAX_VALUE;
+    private int framesMissed = 0;
+
+    //Returns how many frames went missing just before this one, timestamps must all come from the same clock
+    public int onFrame(long timestampNanos) {
+        int missed = 0;
+        if (lastTimestampNanos >= 0 && timestampNanos > lastTimestampNanos) {
+            long gap = timestampNanos - lastTimestampNanos;
+            frameIntervalNanos = Math.min(frameIntervalNanos, gap);
+            //Gaps are rounded to whole frames, so jitter of under half an interval isn't counted
+            missed = (int) ((gap + frameIntervalNanos / 2) / frameIntervalNanos) - 1;
+        }
+        lastTimestampNanos = timestampNanos;
+        framesMissed += missed;
+        return missed;
+    }
+
+    public int getFramesMissed() {
+        return framesMissed;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.machinelearningappandroid;
+
+//Decides which camera frames are worth running through the model. Frames are limited to a target rate, which is
+//lowered as the device heats up, and a scene that hasn't changed since the last inference is only refreshed now and then
+public class FrameSchedule {
+    //Same values as the PowerManager thermal status constants, which this module can't depend on
+    public static final int THERMAL_STATUS_NONE = 0;
+    public static final int THERMAL_STATUS_LIGHT = 1;
+    public static final int THERMAL_STATUS_MODERATE = 2;
+    public static final int THERMAL_STATUS_SEVERE = 3;
+
+    public static final int RUN = 0;
+    public static final int SKIP_RATE = 1;
+    public static final int SKIP_THERMAL = 2;
+    public static final int SKIP_STATIC = 3;
+
+    private final long minIntervalMillis;
+    private final long staticRefreshMillis;
+    private final float changeThreshold;
+    private volatile int thermalStatus = THERMAL_STATUS_NONE;
+    private long lastInference = -1;
+
+    //changeThreshold is in the units of FrameChangeDetector, a mean luma difference from 0 to 255
+    public FrameSchedule(long minIntervalMillis, long staticRefreshMillis, float changeThreshold) {
+        this.minIntervalMillis = minIntervalMillis;
+        this.staticRefreshMillis = staticRefreshMillis;
+        this.changeThreshold = changeThreshold;
+    }
+
+    //Can be called from any thread, such as a thermal status listener
+    public void setThermalStatus(int status) {
+        thermalStatus = status;
+    }
+
+    public int getThermalStatus() {
+        return thermalStatus;
+    }
+
+    //The interval between inferences doubles for each level of thermal status, none are run once it is severe
+    public long getIntervalMillis() {
+        int status = thermalStatus;
+        return status >= THERMAL_STATUS_SEVERE ? Long.MAX_VALUE : minIntervalMillis << status;
+    }
+
+    //First check, made before the frame is looked at, returns RUN if enough time has passed for another inference
+    public int checkTime(long nowMillis) {
+        if (thermalStatus >= THERMAL_STATUS_SEVERE) {
+            return SKIP_THERMAL;
+        }
+        if (lastInference == -1) {
+            return RUN;
+        }
+        long elapsed = nowMillis - lastInference;
+        if (elapsed < minIntervalMillis) {
+            return SKIP_RATE;
+        }
+        //Frames that only the thermal slow down is holding back are counted separately
+        return elapsed < getIntervalMillis() ? SKIP_THERMAL : RUN;
+    }
+
+    //Second check, given how much the frame has changed, returns RUN if the frame should be run through the model
+    public int checkChange(long nowMillis, float change) {
+        if (lastInference != -1 && change < changeThreshold && nowMillis - lastInference < staticRefreshMillis) {
+            return SKIP_STATIC;
+        }
+        return RUN;
+    }
+
+    public void onInference(long nowMillis) {
+        lastInference = nowMillis;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.machinelearningappandroid;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+//How far a result has drifted from a golden result for the same image, used to catch regressions in a new model
+//Masks are compared at the result's own size, so a model with a smaller input can still be checked
+public class GoldenDiff {
+    public final float maskIou;
+    public final float attributeAgreement;
+    public final float maxAttributeDelta;
+    private final int heads;
+
+    private GoldenDiff(float maskIou, float attributeAgreement, float maxAttributeDelta, int heads) {
+        this.maskIou = maskIou;
+        this.attributeAgreement = attributeAgreement;
+        this.maxAttributeDelta = maxAttributeDelta;
+        this.heads = heads;
+    }
+
+    //Only the heads that both results have are compared, the others are reported as a perfect match
+    public static GoldenDiff compare(ResultRecord result, ResultRecord golden, float attributesThreshold)
+            throws IOException {
+        float maskIou = 1;
+        float attributeAgreement = 1;
+        float maxAttributeDelta = 0;
+        int heads = 0;
+        if (result.hasSegmentation() && golden.hasSegmentation()) {
+            int maskSize = result.getWidth() * result.getHeight();
+            FloatBuffer resultMasks = FloatBuffer.allocate(result.getNumMasks() * maskSize);
+            result.decodeSegmentation(resultMasks);
+            FloatBuffer goldenMasks = FloatBuffer.allocate(golden.getNumMasks() * maskSize);
+            golden.decodeSegmentationScaled(goldenMasks, result.getWidth(), result.getHeight());
+            //Decoded masks are ones and zeros, so any threshold between the two works
+            maskIou = OutputAgreement.meanMaskIou(resultMasks, goldenMasks,
+                    Math.min(result.getNumMasks(), golden.getNumMasks()), maskSize, 0.5f);
+            heads++;
+        }
+        if (result.hasAttributes() && golden.hasAttributes()) {
+            float[] attributes = result.getAttributes();
+            float[] goldenAttributes = golden.getAttributes();
+            attributeAgreement = OutputAgreement.attributeAgreement(FloatBuffer.wrap(attributes), goldenAttributes,
+                    attributesThreshold);
+            for (int i = 0; i < goldenAttributes.length; i++) {
+                maxAttributeDelta = Math.max(maxAttributeDelta, Math.abs(attributes[i] - goldenAttributes[i]));
+            }
+            heads++;
+        }
+        return new GoldenDiff(maskIou, attributeAgreement, maxAttributeDelta, heads);
+    }
+
+    //Mask IoU and attribute agreement averaged over the heads that were compared
+    public float getAccuracy() {
+        if (heads == 0) {
+            return 1;
+        }
+        return heads == 2 ? (maskIou + attributeAgreement) / 2 : Math.min(maskIou, attributeAgreement);
+    }
+}
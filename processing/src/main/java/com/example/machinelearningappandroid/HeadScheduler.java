@@ -0,0 +1,101 @@
+package com.example.machinelearningappandroid;
+
+//Decides which model answers a request for the segmentation head, the attributes head or both, and keeps the
+//outputs for the last image so a later request for the other head of it costs nothing
+//The joint model is run whenever memory allows, so one forward pass answers both heads of an image and only one
+//model has to be resident. When memory is tight the smaller single head models are run instead
+//Must only be used from one thread at a time, apart from clear
+public class HeadScheduler {
+    //Outputs of one model for one input image, heads holds the raw scores of the forward pass
+    //Outputs read from a stored result have the record instead of the heads, as the raw scores weren't kept
+    //resultKey finds the stored result again, null if it couldn't be stored
+    public static class Outputs {
+        public final long inputHash;
+        public final ModelType modelType;
+        public final InferenceBackend.Outputs heads;
+        public final ResultRecord record;
+        public final String resultKey;
+
+        public Outputs(long inputHash, ModelType modelType, InferenceBackend.Outputs heads, ResultRecord record,
+                       String resultKey) {
+            this.inputHash = inputHash;
+            this.modelType = modelType;
+            this.heads = heads;
+            this.record = record;
+            this.resultKey = resultKey;
+        }
+
+        //Whether every head the request needs is here, thresholded masks alone can't give the same parsing map as
+        //the scores, so stored masks are only used along with their label map
+        public boolean answers(ModelType requested) {
+            boolean hasSegmentation = heads != null ? heads.segmentation != null : record.hasLabelMap();
+            boolean hasAttributes = heads != null ? heads.attributes != null : record.hasAttributes();
+            return (requested == ModelType.ATTRIBUTES || hasSegmentation)
+                    && (requested == ModelType.SEGMENTATION || hasAttributes);
+        }
+    }
+
+    //Where outputs come from when the last image's outputs can't answer a request
+    public interface Source {
+        //A stored result of the model for the image, null when there isn't one
+        Outputs read(long inputHash, ModelType modelType) throws Exception;
+
+        //Runs the model on the image the request is for
+        Outputs forward(ModelType modelType) throws Exception;
+    }
+
+    //Not guarded by the caller's lock so that memory callbacks never wait for a forward pass
+    private volatile Outputs cachedOutputs = null;
+    private int forwardPasses = 0;
+    private int cacheHits = 0;
+
+    //The model that is run for a request, both heads at once always need the joint model
+    public static ModelType getModelFor(ModelType requested, boolean memoryTight) {
+        return requested == ModelType.JOINT || !memoryTight ? ModelType.JOINT : requested;
+    }
+
+    //The last image's outputs when they answer the request, otherwise null
+    public Outputs getCached(long inputHash, ModelType requested) {
+        Outputs cached = cachedOutputs;
+        if (cached != null && cached.inputHash == inputHash && cached.answers(requested)) {
+            cacheHits++;
+            return cached;
+        }
+        return null;
+    }
+
+    //Answers from the last image's outputs, then from a stored result of the joint or the requested model, and only
+    //runs a model when neither has the heads that are needed
+    public Outputs get(long inputHash, ModelType requested, boolean memoryTight, Source source) throws Exception {
+        Outputs cached = getCached(inputHash, requested);
+        if (cached != null) {
+            return cached;
+        }
+        ModelType[] storedModels = requested == ModelType.JOINT ? new ModelType[] {ModelType.JOINT}
+                : new ModelType[] {ModelType.JOINT, requested};
+        for (ModelType modelType : storedModels) {
+            Outputs stored = source.read(inputHash, modelType);
+            if (stored != null && stored.answers(requested)) {
+                cachedOutputs = stored;
+                return stored;
+            }
+        }
+        Outputs outputs = source.forward(getModelFor(requested, memoryTight));
+        forwardPasses++;
+        cachedOutputs = outputs;
+        return outputs;
+    }
+
+    public int getForwardPasses() {
+        return forwardPasses;
+    }
+
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    //Drops the last image's outputs, which hold on to the full size segmentation scores
+    public void clear() {
+        cachedOutputs = null;
+    }
+}
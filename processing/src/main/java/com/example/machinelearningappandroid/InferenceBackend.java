@@ -0,0 +1,70 @@
+package com.example.machinelearningappandroid;
+
+import java.nio.FloatBuffer;
+
+//Runs a model's forward pass, so the same pipeline can use PyTorch on Android, PyTorch on a server or a stub
+public interface InferenceBackend {
+    //Raw outputs of one forward pass, a head is null when the model doesn't have it
+    class Outputs {
+        public final FloatBuffer segmentation;
+        public final int numMasks;
+        public final int maskWidth;
+        public final int maskHeight;
+        public final FloatBuffer attributes;
+        public final int numAttributes;
+        //Kept so that whatever owns the memory behind the buffers (e.g. the output tensors) can't be collected
+        private final Object valuesOwner;
+
+        public Outputs(FloatBuffer segmentation, int numMasks, int maskWidth, int maskHeight, FloatBuffer attributes,
+                       int numAttributes) {
+            this(segmentation, numMasks, maskWidth, maskHeight, attributes, numAttributes, null);
+        }
+
+        public Outputs(FloatBuffer segmentation, int numMasks, int maskWidth, int maskHeight, FloatBuffer attributes,
+                       int numAttributes, Object valuesOwner) {
+            this.segmentation = segmentation;
+            this.numMasks = numMasks;
+            this.maskWidth = maskWidth;
+            this.maskHeight = maskHeight;
+            this.attributes = attributes;
+            this.numAttributes = numAttributes;
+            this.valuesOwner = valuesOwner;
+        }
+
+        //Picks the index'th image out of the heads of a batched forward pass without copying anything, segmentation
+        //is N x masks x H x W and attributes N x attributes. Either head can be null when the model doesn't have it
+        public static Outputs fromHeads(FloatBuffer segmentation, long[] segmentationShape, FloatBuffer attributes,
+                                        long[] attributesShape, int index, Object valuesOwner) {
+            FloatBuffer segmentationValues = null;
+            int numMasks = 0;
+            int maskWidth = 0;
+            int maskHeight = 0;
+            if (segmentation != null) {
+                int dimensions = segmentationShape.length;
+                numMasks = (int) segmentationShape[dimensions - 3];
+                maskHeight = (int) segmentationShape[dimensions - 2];
+                maskWidth = (int) segmentationShape[dimensions - 1];
+                int imageSize = numMasks * maskWidth * maskHeight;
+                segmentationValues = slice(segmentation, index * imageSize, imageSize);
+            }
+            FloatBuffer attributeValues = null;
+            int numAttributes = 0;
+            if (attributes != null) {
+                numAttributes = (int) attributesShape[attributesShape.length - 1];
+                attributeValues = slice(attributes, index * numAttributes, numAttributes);
+            }
+            return new Outputs(segmentationValues, numMasks, maskWidth, maskHeight, attributeValues, numAttributes,
+                    valuesOwner);
+        }
+
+        private static FloatBuffer slice(FloatBuffer buffer, int offset, int length) {
+            FloatBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.limit(offset + length);
+            return view.slice();
+        }
+    }
+
+    //input holds one normalized 3 x inputSize x inputSize image, and may be overwritten once this returns
+    Outputs forward(FloatBuffer input, int inputSize) throws Exception;
+}
@@ -0,0 +1,7 @@
+package com.example.machinelearningappandroid;
+
+//Takes an image all the way to a stored result: pre-processing, the model's forward pass and post-processing
+public interface InferencePipeline {
+    //pixels are ARGB, rotationDegrees is how far the image has to be turned clockwise to be upright
+    ResultRecord run(int[] pixels, int width, int height, int rotationDegrees) throws Exception;
+}
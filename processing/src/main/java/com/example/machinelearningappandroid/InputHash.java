@@ -0,0 +1,51 @@
+package com.example.machinelearningappandroid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+
+//64 bit FNV-1a hash of a model input, used to tell whether two requests are for exactly the same image
+public class InputHash {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    //Hashes every value up to the buffer's limit, the buffer's position is left untouched
+    public static long of(FloatBuffer values) {
+        long hash = OFFSET_BASIS;
+        int limit = values.limit();
+        for (int i = 0; i < limit; i++) {
+            hash ^= Float.floatToRawIntBits(values.get(i));
+            hash *= PRIME;
+        }
+        return hash;
+    }
+
+    //Hashes the first width x height ARGB pixels along with the size and rotation they are read with, so the same
+    //image is recognised without it first being turned into a model input of some particular size
+    public static long of(int[] pixels, int width, int height, int rotationDegrees) {
+        long hash = OFFSET_BASIS;
+        hash = (hash ^ width) * PRIME;
+        hash = (hash ^ height) * PRIME;
+        hash = (hash ^ rotationDegrees) * PRIME;
+        int count = width * height;
+        for (int i = 0; i < count; i++) {
+            hash ^= pixels[i];
+            hash *= PRIME;
+        }
+        return hash;
+    }
+
+    //Hashes every byte of a stream, such as an image file, without holding more than a small buffer of it
+    public static long of(InputStream input) throws IOException {
+        long hash = OFFSET_BASIS;
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                hash ^= buffer[i] & 0xff;
+                hash *= PRIME;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.machinelearningappandroid;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+//One label per pixel saying which channel of the segmentation output scored highest, built in a single pass
+//over every channel. The image is split into bands of rows that are labelled in parallel on a fork/join pool
+public class LabelMap {
+    //Label of pixels where no channel is above the threshold
+    public static final byte BACKGROUND = -1;
+    //Bands smaller than this aren't split any further, so each task has enough rows to be worth forking
+    private static final int MIN_BAND_ROWS = 32;
+
+    private final byte[] labels;
+    private final int width;
+    private final int height;
+    private final int numClasses;
+    private final int[] classPixelCounts;
+    private final double[] classConfidenceSums;
+
+    private LabelMap(byte[] labels, int width, int height, int numClasses, BandStats stats) {
+        this.labels = labels;
+        this.width = width;
+        this.height = height;
+        this.numClasses = numClasses;
+        this.classPixelCounts = stats.pixelCounts;
+        this.classConfidenceSums = stats.confidenceSums;
+    }
+
+    //Rebuilds a label map that was stored with its per class confidence sums, the pixel counts come from the labels
+    static LabelMap fromLabels(byte[] labels, int numClasses, int width, int height, double[] confidenceSums) {
+        if (labels.length != width * height || confidenceSums.length != numClasses) {
+            throw new IllegalArgumentException("Stored label map doesn't match its size");
+        }
+        BandStats stats = new BandStats(numClasses);
+        System.arraycopy(confidenceSums, 0, stats.confidenceSums, 0, numClasses);
+        for (byte label : labels) {
+            if (label != BACKGROUND) {
+                stats.pixelCounts[label]++;
+            }
+        }
+        return new LabelMap(labels, width, height, numClasses, stats);
+    }
+
+    //values holds numClasses channels of width x height scores one after another, as the model outputs them
+    public static LabelMap compute(FloatBuffer values, int numClasses, int width, int height, float threshold,
+                                   ForkJoinPool pool) {
+        if (numClasses > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException(numClasses + " classes can't be stored in a byte label map");
+        }
+        if (values.capacity() < numClasses * width * height) {
+            throw new IllegalArgumentException("Segmentation output has " + values.capacity() + " values, expected "
+                    + numClasses * width * height);
+        }
+        byte[] labels = new byte[width * height];
+        BandStats stats = pool.invoke(new BandTask(values, labels, numClasses, width, height, threshold, 0, height));
+        return new LabelMap(labels, width, height, numClasses, stats);
+    }
+
+    //Same map resized to outputWidth x outputHeight with nearest neighbour sampling, the way
+    //ResultRecord.decodeSegmentationScaled samples masks. Each class keeps its mean confidence
+    public LabelMap scaled(int outputWidth, int outputHeight) {
+        byte[] scaledLabels = new byte[outputWidth * outputHeight];
+        BandStats stats = new BandStats(numClasses);
+        for (int y = 0; y < outputHeight; y++) {
+            int sourceRow = y * height / outputHeight * width;
+            for (int x = 0; x < outputWidth; x++) {
+                byte label = labels[sourceRow + x * width / outputWidth];
+                scaledLabels[y * outputWidth + x] = label;
+                if (label != BACKGROUND) {
+                    stats.pixelCounts[label]++;
+                }
+            }
+        }
+        for (int i = 0; i < numClasses; i++) {
+            if (classPixelCounts[i] > 0) {
+                stats.confidenceSums[i] = classConfidenceSums[i] * stats.pixelCounts[i] / classPixelCounts[i];
+            }
+        }
+        return new LabelMap(scaledLabels, outputWidth, outputHeight, numClasses, stats);
+    }
+
+    public byte[] getLabels() {
+        return labels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    public int getPixelCount(int classIndex) {
+        return classPixelCounts[classIndex];
+    }
+
+    //Total of the winning scores of the pixels given to the class
+    double getConfidenceSum(int classIndex) {
+        return classConfidenceSums[classIndex];
+    }
+
+    //Fraction of the whole image given to the class
+    public float getArea(int classIndex) {
+        return classPixelCounts[classIndex] / (float) (width * height);
+    }
+
+    //Average winning score of the pixels given to the class, 0 if it has none
+    public float getMeanConfidence(int classIndex) {
+        int count = classPixelCounts[classIndex];
+        return count == 0 ? 0 : (float) (classConfidenceSums[classIndex] / count);
+    }
+
+    //Draws every label in its palette colour, palette must have a colour for every class
+    public void render(int[] pixels, int pixelsOffset, int[] palette, int backgroundColour) {
+        for (int i = 0; i < labels.length; i++) {
+            byte label = labels[i];
+            pixels[pixelsOffset + i] = label == BACKGROUND ? backgroundColour : palette[label];
+        }
+    }
+
+    //Evenly spaced fully saturated hues so neighbouring classes are easy to tell apart
+    public static int[] createPalette(int numClasses, int alpha) {
+        int[] palette = new int[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            float hue = 6f * i / numClasses;
+            int sector = (int) hue;
+            int rising = Math.round(255 * (hue - sector));
+            int falling = 255 - rising;
+            int red, green, blue;
+            switch (sector) {
+                case 0: red = 255; green = rising; blue = 0; break;
+                case 1: red = falling; green = 255; blue = 0; break;
+                case 2: red = 0; green = 255; blue = rising; break;
+                case 3: red = 0; green = falling; blue = 255; break;
+                case 4: red = rising; green = 0; blue = 255; break;
+                default: red = 255; green = 0; blue = falling;
+            }
+            palette[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+        return palette;
+    }
+
+    //Builds a label map a region at a time, for outputs that are never held whole such as the tiles of a large image
+    //Must only be used from one thread
+    public static class Builder {
+        private final byte[] labels;
+        private final int width;
+        private final int height;
+        private final int numClasses;
+        private final float threshold;
+        private final BandStats stats;
+        private float[] row = new float[0];
+        private float[] best = new float[0];
+        private byte[] bestLabel = new byte[0];
+
+        public Builder(int numClasses, int width, int height, float threshold) {
+            if (numClasses > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException(numClasses + " classes can't be stored in a byte label map");
+            }
+            this.labels = new byte[width * height];
+            this.width = width;
+            this.height = height;
+            this.numClasses = numClasses;
+            this.threshold = threshold;
+            this.stats = new BandStats(numClasses);
+        }
+
+        //scores holds numClasses channels of scoresSize x scoresSize whose top left pixel is at scoresX, scoresY in
+        //the image, only the pixels from left to right and top to bottom of the image are labelled from them
+        public void label(FloatBuffer scores, int scoresX, int scoresY, int scoresSize, int left, int top, int right,
+                          int bottom) {
+            int length = right - left;
+            if (row.length < length) {
+                row = new float[length];
+                best = new float[length];
+                bestLabel = new byte[length];
+            }
+            FloatBuffer view = scores.duplicate();
+            int planeSize = scoresSize * scoresSize;
+            for (int y = top; y < bottom; y++) {
+                int scoresOffset = (y - scoresY) * scoresSize + left - scoresX;
+                labelRow(view, scoresOffset, planeSize, length, numClasses, threshold, row, best, bestLabel, stats);
+                System.arraycopy(bestLabel, 0, labels, y * width + left, length);
+            }
+        }
+
+        public LabelMap build() {
+            return new LabelMap(labels, width, height, numClasses, stats);
+        }
+    }
+
+    //Labels length pixels of a row from the scores at offset in each channel, adding the winners to stats
+    //Each channel's row is copied out in one bulk read and compared against the best score so far, so the inner loop
+    //only touches plain arrays and the output is read in order rather than jumping between channels
+    private static void labelRow(FloatBuffer view, int offset, int planeSize, int length, int numClasses,
+                                 float threshold, float[] row, float[] best, byte[] bestLabel, BandStats stats) {
+        Arrays.fill(best, 0, length, threshold);
+        Arrays.fill(bestLabel, 0, length, BACKGROUND);
+        for (int c = 0; c < numClasses; c++) {
+            view.position(c * planeSize + offset);
+            view.get(row, 0, length);
+            byte label = (byte) c;
+            for (int x = 0; x < length; x++) {
+                if (row[x] > best[x]) {
+                    best[x] = row[x];
+                    bestLabel[x] = label;
+                }
+            }
+        }
+        for (int x = 0; x < length; x++) {
+            byte label = bestLabel[x];
+            if (label != BACKGROUND) {
+                stats.pixelCounts[label]++;
+                stats.confidenceSums[label] += best[x];
+            }
+        }
+    }
+
+    //Per class totals for a band of rows, added together as the bands are joined
+    private static class BandStats {
+        final int[] pixelCounts;
+        final double[] confidenceSums;
+
+        BandStats(int numClasses) {
+            pixelCounts = new int[numClasses];
+            confidenceSums = new double[numClasses];
+        }
+
+        BandStats add(BandStats other) {
+            for (int i = 0; i < pixelCounts.length; i++) {
+                pixelCounts[i] += other.pixelCounts[i];
+                confidenceSums[i] += other.confidenceSums[i];
+            }
+            return this;
+        }
+    }
+
+    private static class BandTask extends RecursiveTask<BandStats> {
+        //ForkJoinTask is Serializable, but these tasks are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final FloatBuffer values;
+        private final byte[] labels;
+        private final int numClasses;
+        private final int width;
+        private final int height;
+        private final float threshold;
+        private final int firstRow;
+        private final int endRow;
+
+        BandTask(FloatBuffer values, byte[] labels, int numClasses, int width, int height, float threshold,
+                 int firstRow, int endRow) {
+            this.values = values;
+            this.labels = labels;
+            this.numClasses = numClasses;
+            this.width = width;
+            this.height = height;
+            this.threshold = threshold;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected BandStats compute() {
+            if (endRow - firstRow > MIN_BAND_ROWS) {
+                int middleRow = (firstRow + endRow) >>> 1;
+                BandTask top = new BandTask(values, labels, numClasses, width, height, threshold, firstRow, middleRow);
+                BandTask bottom = new BandTask(values, labels, numClasses, width, height, threshold, middleRow, endRow);
+                top.fork();
+                BandStats bottomStats = bottom.compute();
+                return top.join().add(bottomStats);
+            }
+            return labelRows();
+        }
+
+        private BandStats labelRows() {
+            BandStats stats = new BandStats(numClasses);
+            FloatBuffer view = values.duplicate();
+            float[] row = new float[width];
+            float[] best = new float[width];
+            byte[] bestLabel = new byte[width];
+            int planeSize = width * height;
+
+            for (int y = firstRow; y < endRow; y++) {
+                int rowOffset = y * width;
+                labelRow(view, rowOffset, planeSize, width, numClasses, threshold, row, best, bestLabel, stats);
+                System.arraycopy(bestLabel, 0, labels, rowOffset, width);
+            }
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.machinelearningappandroid;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+//Run length encoding for thresholded masks, stored as alternating background and mask run lengths
+//Runs are written as variable length integers so that a typical face mask takes a few hundred bytes
+public class MaskRle {
+    //Thresholds count values from the buffer and writes the runs, starting with a (possibly empty) background run
+    public static int encode(FloatBuffer values, int offset, int count, float threshold, DataOutput output) throws IOException {
+        boolean inMask = false;
+        int runLength = 0;
+        int bytesWritten = 0;
+        for (int i = 0; i < count; i++) {
+            boolean isMask = values.get(offset + i) > threshold;
+            if (isMask != inMask) {
+                bytesWritten += writeVarInt(output, runLength);
+                runLength = 0;
+                inMask = isMask;
+            }
+            runLength++;
+        }
+        bytesWritten += writeVarInt(output, runLength);
+        return bytesWritten;
+    }
+
+    //Decodes the runs written by encode into mask and background colours
+    public static void decode(DataInput input, int[] pixels, int offset, int count, int maskColour, int backgroundColour)
+            throws IOException {
+        int position = 0;
+        boolean inMask = false;
+        while (position < count) {
+            int runLength = readVarInt(input);
+            if (runLength > count - position) {
+                throw new IOException("Mask run overflows the mask, corrupt data");
+            }
+            int colour = inMask ? maskColour : backgroundColour;
+            for (int i = 0; i < runLength; i++) {
+                pixels[offset + position + i] = colour;
+            }
+            position += runLength;
+            inMask = !inMask;
+        }
+    }
+
+    //Decodes the runs written by encode back into a buffer of scores, so a cached mask can stand in for model output
+    public static void decode(DataInput input, FloatBuffer values, int offset, int count, float maskValue,
+                              float backgroundValue) throws IOException {
+        int position = 0;
+        boolean inMask = false;
+        while (position < count) {
+            int runLength = readVarInt(input);
+            if (runLength > count - position) {
+                throw new IOException("Mask run overflows the mask, corrupt data");
+            }
+            float value = inMask ? maskValue : backgroundValue;
+            for (int i = 0; i < runLength; i++) {
+                values.put(offset + position + i, value);
+            }
+            position += runLength;
+            inMask = !inMask;
+        }
+    }
+
+    //Same as above but reading the runs straight out of a buffer, such as a memory mapped result file
+    public static void decode(ByteBuffer input, FloatBuffer values, int offset, int count, float maskValue,
+                              float backgroundValue) throws IOException {
+        int position = 0;
+        boolean inMask = false;
+        while (position < count) {
+            int runLength = readVarInt(input);
+            if (runLength > count - position) {
+                throw new IOException("Mask run overflows the mask, corrupt data");
+            }
+            float value = inMask ? maskValue : backgroundValue;
+            for (int i = 0; i < runLength; i++) {
+                values.put(offset + position + i, value);
+            }
+            position += runLength;
+            inMask = !inMask;
+        }
+    }
+
+    //Decodes the runs straight out of a buffer into mask and background colours
+    public static void decode(ByteBuffer input, int[] pixels, int offset, int count, int maskColour,
+                              int backgroundColour) throws IOException {
+        int position = 0;
+        boolean inMask = false;
+        while (position < count) {
+            int runLength = readVarInt(input);
+            if (runLength > count - position) {
+                throw new IOException("Mask run overflows the mask, corrupt data");
+            }
+            int colour = inMask ? maskColour : backgroundColour;
+            for (int i = 0; i < runLength; i++) {
+                pixels[offset + position + i] = colour;
+            }
+            position += runLength;
+            inMask = !inMask;
+        }
+    }
+
+    //Moves the buffer past the runs of one mask of count pixels without decoding them
+    public static void skip(ByteBuffer input, int count) throws IOException {
+        int position = 0;
+        while (position < count) {
+            int runLength = readVarInt(input);
+            if (runLength > count - position) {
+                throw new IOException("Mask run overflows the mask, corrupt data");
+            }
+            position += runLength;
+        }
+    }
+
+    public static int writeVarInt(DataOutput output, int value) throws IOException {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+            bytes++;
+        }
+        output.writeByte(value);
+        return bytes;
+    }
+
+    public static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable length integer is too long, corrupt data");
+    }
+
+    public static int readVarInt(ByteBuffer input) throws IOException {
+        try {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = input.get() & 0xFF;
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Mask data ends part way through a run, corrupt data", e);
+        }
+        throw new IOException("Variable length integer is too long, corrupt data");
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.machinelearningappandroid;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+//Produces the same runs as MaskRle.encode but is fed a row at a time, so a mask larger than memory can be encoded
+public class MaskRleStream {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream output = new DataOutputStream(bytes);
+    private boolean inMask = false;
+    private int runLength = 0;
+
+    //Appends count pixels taken from the bits, starting at bitOffset, where a set bit is inside the mask
+    public void appendBits(long[] bits, int bitOffset, int count) throws IOException {
+        for (int i = bitOffset; i < bitOffset + count; i++) {
+            boolean isMask = (bits[i >>> 6] & (1L << i)) != 0;
+            if (isMask != inMask) {
+                MaskRle.writeVarInt(output, runLength);
+                runLength = 0;
+                inMask = isMask;
+            }
+            runLength++;
+        }
+    }
+
+    //Writes the final run and returns everything encoded so far
+    public byte[] finish() throws IOException {
+        MaskRle.writeVarInt(output, runLength);
+        runLength = 0;
+        output.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.machinelearningappandroid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+//The pipeline every platform shares, only the backend that runs the forward pass differs between them
+//Each instance reuses one input buffer, so it must only be used from one thread
+public class ModelPipeline implements InferencePipeline {
+    //ImageNet normalization, the same values torchvision uses
+    public static final float[] NORM_MEAN_RGB = new float[] {0.485f, 0.456f, 0.406f};
+    public static final float[] NORM_STD_RGB = new float[] {0.229f, 0.224f, 0.225f};
+
+    //Writes one image into the input buffer, for inputs that aren't ARGB pixels such as camera frames
+    public interface InputSource {
+        void write(TensorInputWriter writer, FloatBuffer input);
+    }
+
+    private final InferenceBackend backend;
+    private final TensorInputWriter writer;
+    private final FloatBuffer inputBuffer;
+    private final float segmentationThreshold;
+
+    public ModelPipeline(InferenceBackend backend, int inputSize, float segmentationThreshold) {
+        this.backend = backend;
+        this.writer = new TensorInputWriter(inputSize, NORM_MEAN_RGB, NORM_STD_RGB);
+        //Direct and in native order, as PyTorch needs when the buffer is wrapped in a tensor
+        this.inputBuffer = ByteBuffer.allocateDirect(writer.getTensorSize() * 4).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        this.segmentationThreshold = segmentationThreshold;
+    }
+
+    public int getInputSize() {
+        return writer.getOutputSize();
+    }
+
+    @Override
+    public ResultRecord run(int[] pixels, int width, int height, int rotationDegrees) throws Exception {
+        return toRecord(forward(pixels, width, height, rotationDegrees));
+    }
+
+    //Raw outputs for callers that need the scores themselves rather than a thresholded record
+    public InferenceBackend.Outputs forward(int[] pixels, int width, int height, int rotationDegrees)
+            throws Exception {
+        return forward((writer, input) -> writer.writeArgb(pixels, width, height, rotationDegrees, input, 0));
+    }
+
+    public InferenceBackend.Outputs forward(InputSource source) throws Exception {
+        source.write(writer, inputBuffer);
+        return backend.forward(inputBuffer, writer.getOutputSize());
+    }
+
+    public ResultRecord toRecord(InferenceBackend.Outputs outputs) throws IOException {
+        return ResultRecord.fromOutputs(outputs, segmentationThreshold);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.machinelearningappandroid;
+
+//Contains the information about the Model Type that is currently being used
+public enum ModelType {
+    SEGMENTATION("segmentation_model.ptl"), ATTRIBUTES("attributes_model.ptl"), JOINT("multi_model.ptl");
+
+    //Name of the file in the assets folder that contains the model
+    private final String assetName;
+
+    ModelType(String assetName) {
+        this.assetName = assetName;
+    }
+
+    public String getAssetName() {
+        return assetName;
+    }
+}
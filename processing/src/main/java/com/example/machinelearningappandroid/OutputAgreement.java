@@ -0,0 +1,40 @@
+package com.example.machinelearningappandroid;
+
+import java.nio.FloatBuffer;
+
+//Measures how closely a model variant's outputs match the baseline model's outputs for the same image
+public class OutputAgreement {
+    //Mean intersection over union of the thresholded masks, masks that are empty in both count as a perfect match
+    public static float meanMaskIou(FloatBuffer candidate, FloatBuffer baseline, int numMasks, int maskSize,
+                                    float threshold) {
+        float total = 0;
+        for (int mask = 0; mask < numMasks; mask++) {
+            int offset = mask * maskSize;
+            int intersection = 0;
+            int union = 0;
+            for (int i = offset; i < offset + maskSize; i++) {
+                boolean inCandidate = candidate.get(i) > threshold;
+                boolean inBaseline = baseline.get(i) > threshold;
+                if (inCandidate && inBaseline) {
+                    intersection++;
+                }
+                if (inCandidate || inBaseline) {
+                    union++;
+                }
+            }
+            total += union == 0 ? 1f : intersection / (float) union;
+        }
+        return total / numMasks;
+    }
+
+    //Fraction of attributes that land on the same side of the threshold in both outputs
+    public static float attributeAgreement(FloatBuffer candidate, float[] baseline, float threshold) {
+        int agreeing = 0;
+        for (int i = 0; i < baseline.length; i++) {
+            if ((candidate.get(i) > threshold) == (baseline[i] > threshold)) {
+                agreeing++;
+            }
+        }
+        return agreeing / (float) baseline.length;
+    }
+}
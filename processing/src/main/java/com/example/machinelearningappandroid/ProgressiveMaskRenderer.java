@@ -0,0 +1,63 @@
+package com.example.machinelearningappandroid;
+
+//Draws every mask of a result in the order the user will want them, so something can be shown long before all of
+//the masks are ready. The mask being looked at comes first as coarse previews that get finer, then exactly, and the
+//other masks follow it in order. Results read from a stored record have no previews, as each would be the full mask
+public class ProgressiveMaskRenderer {
+    //Block sizes of the previews drawn before the exact first mask, coarsest first
+    public static final int[] PREVIEW_STEPS = new int[] {8, 4, 2};
+    private static final int[] NO_PREVIEWS = new int[0];
+
+    public interface Listener {
+        //pixels holds width x height ARGB values and is drawn over by the next call, so it must be copied out first
+        //step is 1 once the mask is exact, otherwise the size of the blocks of the preview
+        void onMaskRendered(int maskIndex, int step, int[] pixels);
+    }
+
+    private int[] pixels = null;
+
+    public int render(SegmentationResult result, int firstMask, Listener listener) {
+        return render(result, firstMask, true, listener);
+    }
+
+    //Returns how many masks were drawn exactly, which is fewer than all of them when the thread was interrupted
+    //Previews can be left out when nothing is waiting to show the first mask
+    public int render(SegmentationResult result, int firstMask, boolean withPreviews, Listener listener) {
+        return render(result, firstMask, withPreviews, result.getNumMasks(), listener);
+    }
+
+    //Only the previews and the exact first mask, for when the other masks are drawn as they are viewed
+    public int renderFirst(SegmentationResult result, int firstMask, Listener listener) {
+        return render(result, firstMask, true, 1, listener);
+    }
+
+    private int render(SegmentationResult result, int firstMask, boolean withPreviews, int maskCount,
+                       Listener listener) {
+        int pixelCount = result.getWidth() * result.getHeight();
+        if (pixels == null || pixels.length != pixelCount) {
+            pixels = new int[pixelCount];
+        }
+
+        for (int step : withPreviews && result.hasPreviews() ? PREVIEW_STEPS : NO_PREVIEWS) {
+            if (Thread.currentThread().isInterrupted()) {
+                return 0;
+            }
+            result.renderMaskPreview(firstMask, step, pixels, 0, SegmentationResult.MASK_COLOUR,
+                    SegmentationResult.BACKGROUND_COLOUR);
+            listener.onMaskRendered(firstMask, step, pixels);
+        }
+
+        int rendered = 0;
+        for (int i = 0; i < maskCount; i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            int maskIndex = (firstMask + i) % result.getNumMasks();
+            result.renderMask(maskIndex, pixels, 0, SegmentationResult.MASK_COLOUR,
+                    SegmentationResult.BACKGROUND_COLOUR);
+            listener.onMaskRendered(maskIndex, 1, pixels);
+            rendered++;
+        }
+        return rendered;
+    }
+}
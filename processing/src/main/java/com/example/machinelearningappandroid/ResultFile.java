@@ -0,0 +1,40 @@
+package com.example.machinelearningappandroid;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//A result record saved to its own file, so results can be handed between screens by path and survive the
+//activity being recreated. Files are read back through a memory mapping so reopening one doesn't copy the masks
+public class ResultFile {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    //Written to a temp file and renamed so that a reader never sees a half written result
+    public static void write(File file, ResultRecord record) throws IOException {
+        File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+        try (FileOutputStream fileOutput = new FileOutputStream(tempFile);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+            record.write(output);
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Unable to move result file into place: " + file);
+        }
+    }
+
+    //The mapping stays valid after the file is closed, and is released once the record is no longer referenced
+    public static ResultRecord map(File file) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(file);
+             FileChannel channel = inputStream.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return ResultRecord.read(buffer);
+        }
+    }
+}
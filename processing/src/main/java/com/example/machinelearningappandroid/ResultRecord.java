@@ -0,0 +1,356 @@
+package com.example.machinelearningappandroid;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+//Compact copy of a model's outputs for one image, with the masks run length encoded and the attribute scores kept raw
+//Either part can be missing when only one head of the model was run
+//The label map built from the raw scores can be kept too, as it can't be rebuilt exactly from the thresholded masks
+//A record read from a buffer keeps a slice of it for the masks, so a memory mapped file is never copied
+public class ResultRecord {
+    public static final int MAGIC = 0x4D4C5243; //"MLRC"
+    public static final int VERSION = 2;
+    //Records from before label maps were stored are still read, they just have none
+    private static final int VERSION_WITHOUT_LABEL_MAP = 1;
+    //Scores given to pixels inside and outside a mask when the masks are decoded again
+    public static final float MASK_VALUE = 1f;
+    public static final float BACKGROUND_VALUE = 0f;
+
+    private final int numMasks;
+    private final int width;
+    private final int height;
+    private final ByteBuffer segmentationRle;
+    private final float[] attributes;
+    private final LabelMap labelMap;
+    //Where each mask's runs start in segmentationRle, found the first time a single mask is decoded
+    private int[] maskOffsets = null;
+
+    private ResultRecord(int numMasks, int width, int height, ByteBuffer segmentationRle, float[] attributes,
+                         LabelMap labelMap) {
+        this.numMasks = numMasks;
+        this.width = width;
+        this.height = height;
+        this.segmentationRle = segmentationRle;
+        this.attributes = attributes;
+        this.labelMap = labelMap;
+    }
+
+    public static ResultRecord fromOutputs(InferenceBackend.Outputs outputs, float threshold) throws IOException {
+        return fromOutputs(outputs.segmentation, outputs.numMasks, outputs.maskWidth, outputs.maskHeight, threshold,
+                outputs.attributes, outputs.numAttributes);
+    }
+
+    //Either buffer can be null, the segmentation values are thresholded as they are encoded
+    public static ResultRecord fromOutputs(FloatBuffer segmentation, int numMasks, int width, int height,
+                                           float threshold, FloatBuffer attributes, int numAttributes)
+            throws IOException {
+        ByteBuffer segmentationRle = null;
+        if (segmentation != null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            int maskSize = width * height;
+            for (int mask = 0; mask < numMasks; mask++) {
+                MaskRle.encode(segmentation, mask * maskSize, maskSize, threshold, output);
+            }
+            output.flush();
+            segmentationRle = ByteBuffer.wrap(bytes.toByteArray());
+        }
+
+        float[] attributeScores = null;
+        if (attributes != null) {
+            attributeScores = new float[numAttributes];
+            for (int i = 0; i < numAttributes; i++) {
+                attributeScores[i] = attributes.get(i);
+            }
+        }
+        return segmentation == null ? new ResultRecord(0, 0, 0, null, attributeScores, null)
+                : new ResultRecord(numMasks, width, height, segmentationRle, attributeScores, null);
+    }
+
+    //Same record with the label map that was built from the scores before they were thresholded
+    public ResultRecord withLabelMap(LabelMap labelMap) {
+        if (!hasSegmentation() || labelMap.getNumClasses() != numMasks || labelMap.getWidth() != width
+                || labelMap.getHeight() != height) {
+            throw new IllegalArgumentException("Label map doesn't match the record's masks");
+        }
+        return new ResultRecord(numMasks, width, height, segmentationRle, attributes, labelMap);
+    }
+
+    //Wraps masks that were already run length encoded one after another, such as those built by TiledSegmenter
+    public static ResultRecord fromEncodedMasks(int numMasks, int width, int height, byte[] segmentationRle,
+                                                float[] attributes) {
+        return new ResultRecord(numMasks, width, height, ByteBuffer.wrap(segmentationRle), attributes, null);
+    }
+
+    public boolean hasSegmentation() {
+        return segmentationRle != null;
+    }
+
+    public boolean hasAttributes() {
+        return attributes != null;
+    }
+
+    public boolean hasLabelMap() {
+        return labelMap != null;
+    }
+
+    public int getNumMasks() {
+        return numMasks;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float[] getAttributes() {
+        return attributes;
+    }
+
+    public LabelMap getLabelMap() {
+        return labelMap;
+    }
+
+    //Decodes a single mask into colours, only that mask's runs are read once the masks have been indexed
+    public void decodeMask(int maskIndex, int[] pixels, int pixelsOffset, int maskColour, int backgroundColour)
+            throws IOException {
+        if (maskIndex < 0 || maskIndex >= numMasks) {
+            throw new IndexOutOfBoundsException("Mask index " + maskIndex + " is out of range");
+        }
+        ByteBuffer input = segmentationRle.duplicate();
+        input.position(getMaskOffsets()[maskIndex]);
+        MaskRle.decode(input, pixels, pixelsOffset, width * height, maskColour, backgroundColour);
+    }
+
+    private synchronized int[] getMaskOffsets() throws IOException {
+        if (maskOffsets == null) {
+            int[] offsets = new int[numMasks];
+            ByteBuffer input = segmentationRle.duplicate();
+            for (int mask = 0; mask < numMasks; mask++) {
+                offsets[mask] = input.position();
+                MaskRle.skip(input, width * height);
+            }
+            maskOffsets = offsets;
+        }
+        return maskOffsets;
+    }
+
+    //Decodes every mask into the buffer, which must hold numMasks * width * height values
+    public void decodeSegmentation(FloatBuffer values) throws IOException {
+        ByteBuffer input = segmentationRle.duplicate();
+        int maskSize = width * height;
+        for (int mask = 0; mask < numMasks; mask++) {
+            MaskRle.decode(input, values, mask * maskSize, maskSize, MASK_VALUE, BACKGROUND_VALUE);
+        }
+    }
+
+    //Decodes every mask resized to outputWidth x outputHeight with nearest neighbour sampling, without ever holding
+    //a full resolution mask, so results from large images can be shown at the model's output size
+    public void decodeSegmentationScaled(FloatBuffer values, int outputWidth, int outputHeight) throws IOException {
+        ByteBuffer input = segmentationRle.duplicate();
+        int maskSize = width * height;
+        int outputSize = outputWidth * outputHeight;
+        for (int mask = 0; mask < numMasks; mask++) {
+            int outputOffset = mask * outputSize;
+            int runEnd = 0;
+            boolean inMask = true;
+            for (int i = 0; i < outputSize; i++) {
+                //Output pixels are visited in row order, so the source pixels they sample only ever move forwards
+                int sourceIndex = (i / outputWidth * height / outputHeight) * width + (i % outputWidth) * width / outputWidth;
+                while (sourceIndex >= runEnd) {
+                    int runLength = MaskRle.readVarInt(input);
+                    runEnd += runLength;
+                    inMask = !inMask;
+                    if (runEnd > maskSize) {
+                        throw new IOException("Mask run overflows the mask, corrupt data");
+                    }
+                }
+                values.put(outputOffset + i, inMask ? MASK_VALUE : BACKGROUND_VALUE);
+            }
+            //Skip whatever is left of this mask so the next one starts at its first run
+            while (runEnd < maskSize) {
+                runEnd += MaskRle.readVarInt(input);
+            }
+        }
+    }
+
+    //Same record with its masks and label map resized to outputWidth x outputHeight the way
+    //decodeSegmentationScaled samples them, so a result from a large image can be shown at about the model's size
+    public ResultRecord scaled(int outputWidth, int outputHeight) throws IOException {
+        FloatBuffer values = FloatBuffer.allocate(numMasks * outputWidth * outputHeight);
+        decodeSegmentationScaled(values, outputWidth, outputHeight);
+        ResultRecord masks = fromOutputs(values, numMasks, outputWidth, outputHeight,
+                (MASK_VALUE + BACKGROUND_VALUE) / 2, null, 0);
+        return new ResultRecord(numMasks, outputWidth, outputHeight, masks.segmentationRle, attributes,
+                labelMap == null ? null : labelMap.scaled(outputWidth, outputHeight));
+    }
+
+    //Roughly how much memory the record takes, used to keep caches of records within a budget
+    public int getSizeBytes() {
+        return (segmentationRle == null ? 0 : segmentationRle.remaining()) + (attributes == null ? 0 : 4 * attributes.length)
+                + (labelMap == null ? 0 : labelMap.getLabels().length);
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeBoolean(hasSegmentation());
+        if (hasSegmentation()) {
+            output.writeByte(numMasks);
+            output.writeInt(width);
+            output.writeInt(height);
+            output.writeInt(segmentationRle.remaining());
+            if (segmentationRle.hasArray()) {
+                output.write(segmentationRle.array(), segmentationRle.arrayOffset() + segmentationRle.position(),
+                        segmentationRle.remaining());
+            } else {
+                byte[] bytes = new byte[segmentationRle.remaining()];
+                segmentationRle.duplicate().get(bytes);
+                output.write(bytes);
+            }
+        }
+        output.writeBoolean(hasAttributes());
+        if (hasAttributes()) {
+            output.writeByte(attributes.length);
+            for (float score : attributes) {
+                output.writeFloat(score);
+            }
+        }
+        output.writeBoolean(hasLabelMap());
+        if (hasLabelMap()) {
+            //Labels are stored as runs of one label, which neighbouring pixels nearly always share
+            byte[] labels = labelMap.getLabels();
+            int runStart = 0;
+            for (int i = 1; i <= labels.length; i++) {
+                if (i == labels.length || labels[i] != labels[runStart]) {
+                    output.writeByte(labels[runStart]);
+                    MaskRle.writeVarInt(output, i - runStart);
+                    runStart = i;
+                }
+            }
+            for (int i = 0; i < numMasks; i++) {
+                output.writeDouble(labelMap.getConfidenceSum(i));
+            }
+        }
+    }
+
+    public static ResultRecord read(DataInput input) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a result record");
+        }
+        int version = input.readInt();
+        if (version != VERSION && version != VERSION_WITHOUT_LABEL_MAP) {
+            throw new IOException("Unsupported result record version " + version);
+        }
+        int numMasks = 0;
+        int width = 0;
+        int height = 0;
+        ByteBuffer segmentationRle = null;
+        if (input.readBoolean()) {
+            numMasks = input.readUnsignedByte();
+            width = input.readInt();
+            height = input.readInt();
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            segmentationRle = ByteBuffer.wrap(bytes);
+        }
+        float[] attributes = null;
+        if (input.readBoolean()) {
+            attributes = new float[input.readUnsignedByte()];
+            for (int i = 0; i < attributes.length; i++) {
+                attributes[i] = input.readFloat();
+            }
+        }
+        LabelMap labelMap = null;
+        if (version != VERSION_WITHOUT_LABEL_MAP && input.readBoolean()) {
+            byte[] labels = new byte[width * height];
+            int position = 0;
+            while (position < labels.length) {
+                byte label = input.readByte();
+                int runLength = MaskRle.readVarInt(input);
+                position = fillRun(labels, position, label, runLength, numMasks);
+            }
+            double[] confidenceSums = new double[numMasks];
+            for (int i = 0; i < numMasks; i++) {
+                confidenceSums[i] = input.readDouble();
+            }
+            labelMap = LabelMap.fromLabels(labels, numMasks, width, height, confidenceSums);
+        }
+        return new ResultRecord(numMasks, width, height, segmentationRle, attributes, labelMap);
+    }
+
+    //Reads a record written by write from the buffer's position, the masks are left in place in the buffer
+    public static ResultRecord read(ByteBuffer input) throws IOException {
+        try {
+            if (input.getInt() != MAGIC) {
+                throw new IOException("Not a result record");
+            }
+            int version = input.getInt();
+            if (version != VERSION && version != VERSION_WITHOUT_LABEL_MAP) {
+                throw new IOException("Unsupported result record version " + version);
+            }
+            int numMasks = 0;
+            int width = 0;
+            int height = 0;
+            ByteBuffer segmentationRle = null;
+            if (input.get() != 0) {
+                numMasks = input.get() & 0xFF;
+                width = input.getInt();
+                height = input.getInt();
+                int length = input.getInt();
+                if (length < 0 || length > input.remaining()) {
+                    throw new IOException("Mask data is truncated, corrupt record");
+                }
+                ByteBuffer view = input.duplicate();
+                view.limit(view.position() + length);
+                segmentationRle = view.slice();
+                input.position(input.position() + length);
+            }
+            float[] attributes = null;
+            if (input.get() != 0) {
+                attributes = new float[input.get() & 0xFF];
+                for (int i = 0; i < attributes.length; i++) {
+                    attributes[i] = input.getFloat();
+                }
+            }
+            LabelMap labelMap = null;
+            if (version != VERSION_WITHOUT_LABEL_MAP && input.get() != 0) {
+                byte[] labels = new byte[width * height];
+                int position = 0;
+                while (position < labels.length) {
+                    byte label = input.get();
+                    int runLength = MaskRle.readVarInt(input);
+                    position = fillRun(labels, position, label, runLength, numMasks);
+                }
+                double[] confidenceSums = new double[numMasks];
+                for (int i = 0; i < numMasks; i++) {
+                    confidenceSums[i] = input.getDouble();
+                }
+                labelMap = LabelMap.fromLabels(labels, numMasks, width, height, confidenceSums);
+            }
+            return new ResultRecord(numMasks, width, height, segmentationRle, attributes, labelMap);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Result record is truncated", e);
+        }
+    }
+
+    //Writes one run of a stored label map, returning where the next run starts
+    private static int fillRun(byte[] labels, int position, byte label, int runLength, int numClasses)
+            throws IOException {
+        if (runLength > labels.length - position || label < LabelMap.BACKGROUND || label >= numClasses) {
+            throw new IOException("Label run doesn't fit the label map, corrupt data");
+        }
+        Arrays.fill(labels, position, position + runLength, label);
+        return position + runLength;
+    }
+}
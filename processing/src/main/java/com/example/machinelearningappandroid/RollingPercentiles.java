@@ -0,0 +1,37 @@
+package com.example.machinelearningappandroid;
+
+import java.util.Arrays;
+
+//Keeps the most recent samples of a measurement so that percentiles can be read over a sliding window
+public class RollingPercentiles {
+    private final long[] samples;
+    private int count = 0;
+    private int next = 0;
+
+    public RollingPercentiles(int windowSize) {
+        this.samples = new long[windowSize];
+    }
+
+    public synchronized void add(long sample) {
+        samples[next] = sample;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    //Nearest rank percentile of the samples in the window, percentile is between 0 and 100
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, Math.min(count - 1, rank - 1))];
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.machinelearningappandroid;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+//Holds the raw output of the segmentation model and turns a single channel into mask pixels when it is viewed
+//Only one mask sized pixel buffer is used, and it is handed on to the next result once this one is released
+//A result can also be served from a stored ResultRecord, whose masks are decoded one at a time and whose label map
+//was built from the scores before they were thresholded, so nothing the size of the full output is allocated
+public class SegmentationResult {
+    public static final int MASK_COLOUR = 0xFFFFFFFF;
+    public static final int BACKGROUND_COLOUR = 0xFF0000FF;
+
+    //Pixel buffer kept between runs so that browsing masks doesn't allocate
+    private static int[] pooledPixels = null;
+
+    //Exactly one of values and record is set
+    private final FloatBuffer values;
+    private final ResultRecord record;
+    //Kept so that whatever owns the memory behind values (e.g. the output tensor) can't be collected
+    private final Object valuesOwner;
+    private final int numMasks;
+    private final int width;
+    private final int height;
+    private final float threshold;
+
+    private int[] maskPixels = null;
+    private int renderedMaskIndex = -1;
+
+    public SegmentationResult(FloatBuffer values, Object valuesOwner, int numMasks, int width, int height, float threshold) {
+        if (values.capacity() < numMasks * width * height) {
+            throw new IllegalArgumentException("Segmentation output has " + values.capacity() + " values, expected "
+                    + numMasks * width * height);
+        }
+        this.values = values;
+        this.record = null;
+        this.valuesOwner = valuesOwner;
+        this.numMasks = numMasks;
+        this.width = width;
+        this.height = height;
+        this.threshold = threshold;
+    }
+
+    //The record's masks are already thresholded, and it must hold the label map built from the raw scores
+    public SegmentationResult(ResultRecord record) {
+        if (!record.hasSegmentation() || !record.hasLabelMap()) {
+            throw new IllegalArgumentException("Record needs both masks and a label map to stand in for the output");
+        }
+        this.values = null;
+        this.record = record;
+        this.valuesOwner = null;
+        this.numMasks = record.getNumMasks();
+        this.width = record.getWidth();
+        this.height = record.getHeight();
+        this.threshold = Float.NaN;
+    }
+
+    public int getNumMasks() {
+        return numMasks;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    //Returns ARGB pixels for the mask, the channel is only thresholded the first time it is asked for
+    //The returned array is reused by the next call so its contents must be copied out before then
+    public synchronized int[] getMaskPixels(int maskIndex) {
+        if (maskPixels == null) {
+            maskPixels = obtainPixels(width * height);
+        }
+        if (renderedMaskIndex != maskIndex) {
+            renderMask(maskIndex, maskPixels, 0, MASK_COLOUR, BACKGROUND_COLOUR);
+            renderedMaskIndex = maskIndex;
+        }
+        return maskPixels;
+    }
+
+    //Thresholds a single channel straight from the output buffer into the given array
+    public void renderMask(int maskIndex, int[] pixels, int pixelsOffset, int maskColour, int backgroundColour) {
+        if (maskIndex < 0 || maskIndex >= numMasks) {
+            throw new IndexOutOfBoundsException("Mask index " + maskIndex + " is out of range");
+        }
+        if (record != null) {
+            decodeStoredMask(maskIndex, pixels, pixelsOffset, maskColour, backgroundColour);
+            return;
+        }
+        final int pixelCount = width * height;
+        final int channelOffset = maskIndex * pixelCount;
+        for (int i = 0; i < pixelCount; i++) {
+            pixels[pixelsOffset + i] = values.get(channelOffset + i) > threshold ? maskColour : backgroundColour;
+        }
+    }
+
+    //Whether a preview is any quicker than the mask itself, stored masks have no coarser version so it isn't
+    public boolean hasPreviews() {
+        return record == null;
+    }
+
+    //Quick full size approximation of a mask, only one value in every step x step block is thresholded and the
+    //whole block is filled with it, so it reads step * step times fewer values than renderMask
+    public void renderMaskPreview(int maskIndex, int step, int[] pixels, int pixelsOffset, int maskColour,
+                                  int backgroundColour) {
+        if (maskIndex < 0 || maskIndex >= numMasks) {
+            throw new IndexOutOfBoundsException("Mask index " + maskIndex + " is out of range");
+        }
+        if (step < 1) {
+            throw new IllegalArgumentException("Invalid preview step " + step);
+        }
+        //Decoding a stored mask is already cheaper than sampling scores, so there is no coarser version of it
+        if (record != null) {
+            decodeStoredMask(maskIndex, pixels, pixelsOffset, maskColour, backgroundColour);
+            return;
+        }
+        final int channelOffset = maskIndex * width * height;
+        for (int blockTop = 0; blockTop < height; blockTop += step) {
+            int blockBottom = Math.min(height, blockTop + step);
+            //The value nearest the middle of the block stands for all of it
+            int sampleRow = Math.min(height - 1, blockTop + step / 2);
+            int firstRowOffset = pixelsOffset + blockTop * width;
+            for (int blockLeft = 0; blockLeft < width; blockLeft += step) {
+                int sampleColumn = Math.min(width - 1, blockLeft + step / 2);
+                int colour = values.get(channelOffset + sampleRow * width + sampleColumn) > threshold ? maskColour
+                        : backgroundColour;
+                int blockRight = Math.min(width, blockLeft + step);
+                for (int x = blockLeft; x < blockRight; x++) {
+                    pixels[firstRowOffset + x] = colour;
+                }
+            }
+            //The rest of the block's rows are the same as its first
+            for (int y = blockTop + 1; y < blockBottom; y++) {
+                System.arraycopy(pixels, firstRowOffset, pixels, pixelsOffset + y * width, width);
+            }
+        }
+    }
+
+    //Labels every pixel with its highest scoring mask in one pass over all of the channels
+    //A stored result already has its label map
+    public LabelMap computeLabelMap(ForkJoinPool pool) {
+        if (record != null) {
+            return record.getLabelMap();
+        }
+        return LabelMap.compute(values, numMasks, width, height, threshold, pool);
+    }
+
+    private void decodeStoredMask(int maskIndex, int[] pixels, int pixelsOffset, int maskColour,
+                                  int backgroundColour) {
+        try {
+            record.decodeMask(maskIndex, pixels, pixelsOffset, maskColour, backgroundColour);
+        } catch (IOException e) {
+            throw new IllegalStateException("Stored mask " + maskIndex + " is corrupt", e);
+        }
+    }
+
+    //Gives the pixel buffer back to the pool so the next result can reuse it
+    public synchronized void release() {
+        if (maskPixels != null) {
+            recyclePixels(maskPixels);
+            maskPixels = null;
+            renderedMaskIndex = -1;
+        }
+    }
+
+    private static synchronized int[] obtainPixels(int size) {
+        int[] pixels = pooledPixels;
+        if (pixels != null && pixels.length == size) {
+            pooledPixels = null;
+            return pixels;
+        }
+        return new int[size];
+    }
+
+    private static synchronized void recyclePixels(int[] pixels) {
+        pooledPixels = pixels;
+    }
+}
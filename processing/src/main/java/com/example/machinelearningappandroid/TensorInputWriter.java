@@ -0,0 +1,147 @@
+package com.example.machinelearningappandroid;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+//Writes an image straight into a normalized CHW float buffer in one pass
+//Rotation, centre crop, resizing to the model input size and normalization all happen while each pixel is read
+//Uses no Android classes so that it can be tested on the JVM
+public class TensorInputWriter {
+    private final int outputSize;
+    //Normalization is folded into a single multiply and add per channel
+    private final float[] scale = new float[3];
+    private final float[] offset = new float[3];
+    private final int[] columnLookup;
+
+    public TensorInputWriter(int outputSize, float[] normMeanRgb, float[] normStdRgb) {
+        this.outputSize = outputSize;
+        this.columnLookup = new int[outputSize];
+        for (int i = 0; i < 3; i++) {
+            scale[i] = 1.0f / (255.0f * normStdRgb[i]);
+            offset[i] = -normMeanRgb[i] / normStdRgb[i];
+        }
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    //Number of floats written for a single image
+    public int getTensorSize() {
+        return 3 * outputSize * outputSize;
+    }
+
+    //Writes ARGB pixels, rotationDegrees is how far the image has to be turned clockwise to be upright
+    public void writeArgb(int[] pixels, int width, int height, int rotationDegrees, FloatBuffer out, int outOffset) {
+        final boolean swapAxes = rotationDegrees == 90 || rotationDegrees == 270;
+        final int rotatedWidth = swapAxes ? height : width;
+        final int rotatedHeight = swapAxes ? width : height;
+        final int side = Math.min(rotatedWidth, rotatedHeight);
+        final int cropX = (rotatedWidth - side) / 2;
+        final int cropY = (rotatedHeight - side) / 2;
+        final int planeSize = outputSize * outputSize;
+
+        fillColumnLookup(cropX, side);
+        for (int outY = 0; outY < outputSize; outY++) {
+            final int rotatedY = cropY + (int) ((long) outY * side / outputSize);
+            final int rowOffset = outOffset + outY * outputSize;
+            for (int outX = 0; outX < outputSize; outX++) {
+                final int rotatedX = columnLookup[outX];
+                final int colour = pixels[sourceIndex(rotatedX, rotatedY, width, height, rotationDegrees, width, 1)];
+                final int index = rowOffset + outX;
+                out.put(index, ((colour >> 16) & 0xFF) * scale[0] + offset[0]);
+                out.put(index + planeSize, ((colour >> 8) & 0xFF) * scale[1] + offset[1]);
+                out.put(index + 2 * planeSize, (colour & 0xFF) * scale[2] + offset[2]);
+            }
+        }
+    }
+
+    //Writes a YUV_420_888 image given as its three planes, as delivered by the camera
+    public void writeYuv420(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                            ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                            int width, int height, int rotationDegrees, FloatBuffer out, int outOffset) {
+        final boolean swapAxes = rotationDegrees == 90 || rotationDegrees == 270;
+        final int rotatedWidth = swapAxes ? height : width;
+        final int rotatedHeight = swapAxes ? width : height;
+        final int side = Math.min(rotatedWidth, rotatedHeight);
+        final int cropX = (rotatedWidth - side) / 2;
+        final int cropY = (rotatedHeight - side) / 2;
+        final int planeSize = outputSize * outputSize;
+
+        fillColumnLookup(cropX, side);
+        for (int outY = 0; outY < outputSize; outY++) {
+            final int rotatedY = cropY + (int) ((long) outY * side / outputSize);
+            final int rowOffset = outOffset + outY * outputSize;
+            for (int outX = 0; outX < outputSize; outX++) {
+                final int rotatedX = columnLookup[outX];
+                final int sourceX = sourceX(rotatedX, rotatedY, width, height, rotationDegrees);
+                final int sourceY = sourceY(rotatedX, rotatedY, width, height, rotationDegrees);
+                final int uvIndex = (sourceY >> 1) * uvRowStride + (sourceX >> 1) * uvPixelStride;
+                final int colour = yuvToRgb(yPlane.get(sourceY * yRowStride + sourceX * yPixelStride) & 0xFF,
+                        uPlane.get(uvIndex) & 0xFF, vPlane.get(uvIndex) & 0xFF);
+                final int index = rowOffset + outX;
+                out.put(index, ((colour >> 16) & 0xFF) * scale[0] + offset[0]);
+                out.put(index + planeSize, ((colour >> 8) & 0xFF) * scale[1] + offset[1]);
+                out.put(index + 2 * planeSize, (colour & 0xFF) * scale[2] + offset[2]);
+            }
+        }
+    }
+
+    //Fixed point BT.601 conversion, the same one PyTorch's TensorImageUtils uses for camera frames
+    public static int yuvToRgb(int y, int u, int v) {
+        int yi = y - 16;
+        int ui = u - 128;
+        int vi = v - 128;
+        if (yi < 0) {
+            yi = 0;
+        }
+        int a0 = 1192 * yi;
+        int r = clamp((a0 + 1634 * vi) >> 10);
+        int g = clamp((a0 - 833 * vi - 400 * ui) >> 10);
+        int b = clamp((a0 + 2066 * ui) >> 10);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private void fillColumnLookup(int cropX, int side) {
+        for (int outX = 0; outX < outputSize; outX++) {
+            columnLookup[outX] = cropX + (int) ((long) outX * side / outputSize);
+        }
+    }
+
+    //Maps a position in the upright image back to the stored image
+    private static int sourceX(int rotatedX, int rotatedY, int width, int height, int rotationDegrees) {
+        switch (rotationDegrees) {
+            case 90:
+                return rotatedY;
+            case 180:
+                return width - 1 - rotatedX;
+            case 270:
+                return width - 1 - rotatedY;
+            default:
+                return rotatedX;
+        }
+    }
+
+    private static int sourceY(int rotatedX, int rotatedY, int width, int height, int rotationDegrees) {
+        switch (rotationDegrees) {
+            case 90:
+                return height - 1 - rotatedX;
+            case 180:
+                return height - 1 - rotatedY;
+            case 270:
+                return rotatedX;
+            default:
+                return rotatedY;
+        }
+    }
+
+    private static int sourceIndex(int rotatedX, int rotatedY, int width, int height, int rotationDegrees,
+                                   int rowStride, int pixelStride) {
+        return sourceY(rotatedX, rotatedY, width, height, rotationDegrees) * rowStride
+                + sourceX(rotatedX, rotatedY, width, height, rotationDegrees) * pixelStride;
+    }
+}
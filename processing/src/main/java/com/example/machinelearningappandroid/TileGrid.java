@@ -0,0 +1,59 @@
+package com.example.machinelearningappandroid;
+
+//Where overlapping tiles go along one side of an image, and which part of each tile its output is kept from
+//Neighbouring tiles split their overlap down the middle, so every pixel is owned by exactly one tile and it is
+//always the tile where the pixel is furthest from an edge, which is where the model has the most context
+public class TileGrid {
+    private final int[] origins;
+    private final int[] ownedStarts;
+    private final int[] ownedEnds;
+
+    public TileGrid(int length, int tileSize, int overlap) {
+        if (length < tileSize) {
+            throw new IllegalArgumentException("Length " + length + " is smaller than a tile of " + tileSize);
+        }
+        if (overlap < 0 || overlap >= tileSize) {
+            throw new IllegalArgumentException("Overlap must be smaller than a tile");
+        }
+        int stride = tileSize - overlap;
+        int count = 1 + (length - tileSize + stride - 1) / stride;
+        origins = new int[count];
+        for (int i = 0; i < count; i++) {
+            //The last tile is pulled back to line up with the edge rather than hanging over it
+            origins[i] = Math.min(i * stride, length - tileSize);
+        }
+
+        ownedStarts = new int[count];
+        ownedEnds = new int[count];
+        for (int i = 0; i < count; i++) {
+            ownedStarts[i] = i == 0 ? 0 : (origins[i - 1] + tileSize + origins[i]) / 2;
+            ownedEnds[i] = i == count - 1 ? length : (origins[i] + tileSize + origins[i + 1]) / 2;
+        }
+    }
+
+    public int getCount() {
+        return origins.length;
+    }
+
+    public int getOrigin(int tile) {
+        return origins[tile];
+    }
+
+    //First pixel whose output comes from this tile
+    public int getOwnedStart(int tile) {
+        return ownedStarts[tile];
+    }
+
+    //One past the last pixel whose output comes from this tile
+    public int getOwnedEnd(int tile) {
+        return ownedEnds[tile];
+    }
+
+    public int getMaxOwnedLength() {
+        int max = 0;
+        for (int i = 0; i < origins.length; i++) {
+            max = Math.max(max, ownedEnds[i] - ownedStarts[i]);
+        }
+        return max;
+    }
+}
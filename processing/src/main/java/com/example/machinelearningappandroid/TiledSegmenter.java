@@ -0,0 +1,92 @@
+package com.example.machinelearningappandroid;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+//Segments an image of any size at least one tile across by running the model over overlapping tiles
+//Tiles are run a band of rows at a time, and each finished band is thresholded straight into run length encoded
+//masks, so the scores are never held for more than one tile. The label map is built from each band's scores as it
+//goes, and is the only part that grows with the whole image, at one byte per pixel
+public class TiledSegmenter {
+    public interface TileRunner {
+        //Runs the model on the size x size tile at x, y and returns its scores, numMasks channels of size x size
+        FloatBuffer run(int x, int y, int size) throws Exception;
+    }
+
+    private final int tileSize;
+    private final int overlap;
+    private final int numMasks;
+    private final float threshold;
+    private int tilesRun = 0;
+
+    public TiledSegmenter(int tileSize, int overlap, int numMasks, float threshold) {
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+        this.numMasks = numMasks;
+        this.threshold = threshold;
+    }
+
+    public int getTilesRun() {
+        return tilesRun;
+    }
+
+    //Returns full resolution masks and label map for the image, the record has no attributes
+    public ResultRecord run(int width, int height, TileRunner runner) throws Exception {
+        TileGrid columns = new TileGrid(width, tileSize, overlap);
+        TileGrid rows = new TileGrid(height, tileSize, overlap);
+
+        //One bit per pixel per mask for the owned rows of the current band
+        int bandWords = (rows.getMaxOwnedLength() * width + 63) / 64;
+        long[][] bandBits = new long[numMasks][bandWords];
+        LabelMap.Builder labelMap = new LabelMap.Builder(numMasks, width, height, threshold);
+        MaskRleStream[] streams = new MaskRleStream[numMasks];
+        for (int mask = 0; mask < numMasks; mask++) {
+            streams[mask] = new MaskRleStream();
+        }
+
+        final int planeSize = tileSize * tileSize;
+        for (int row = 0; row < rows.getCount(); row++) {
+            int tileY = rows.getOrigin(row);
+            int bandTop = rows.getOwnedStart(row);
+            int bandHeight = rows.getOwnedEnd(row) - bandTop;
+            for (long[] bits : bandBits) {
+                Arrays.fill(bits, 0);
+            }
+
+            for (int column = 0; column < columns.getCount(); column++) {
+                int tileX = columns.getOrigin(column);
+                int ownedLeft = columns.getOwnedStart(column);
+                int ownedRight = columns.getOwnedEnd(column);
+                FloatBuffer scores = runner.run(tileX, tileY, tileSize);
+                tilesRun++;
+                labelMap.label(scores, tileX, tileY, tileSize, ownedLeft, bandTop, ownedRight, bandTop + bandHeight);
+
+                for (int mask = 0; mask < numMasks; mask++) {
+                    long[] bits = bandBits[mask];
+                    for (int y = 0; y < bandHeight; y++) {
+                        int scoreRow = mask * planeSize + (bandTop + y - tileY) * tileSize - tileX;
+                        int bitRow = y * width;
+                        for (int x = ownedLeft; x < ownedRight; x++) {
+                            if (scores.get(scoreRow + x) > threshold) {
+                                int bit = bitRow + x;
+                                bits[bit >>> 6] |= 1L << bit;
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (int mask = 0; mask < numMasks; mask++) {
+                streams[mask].appendBits(bandBits[mask], 0, bandHeight * width);
+            }
+        }
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        for (MaskRleStream stream : streams) {
+            encoded.write(stream.finish());
+        }
+        return ResultRecord.fromEncodedMasks(numMasks, width, height, encoded.toByteArray(), null)
+                .withLabelMap(labelMap.build());
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.machinelearningappandroid;
+
+import java.util.Arrays;
+import java.util.List;
+
+//Picks the fastest model variant whose outputs stay close enough to the baseline model's
+public class VariantSelector {
+    //Timing and agreement with the baseline of one variant over the benchmark images
+    public static class Measurement {
+        public final String name;
+        public final float medianMillis;
+        //1 means the variant gave exactly the baseline's outputs
+        public final float accuracy;
+
+        public Measurement(String name, float medianMillis, float accuracy) {
+            this.name = name;
+            this.medianMillis = medianMillis;
+            this.accuracy = accuracy;
+        }
+    }
+
+    //Returns the index of the chosen measurement, the baseline is always allowed so something is always chosen
+    public static int select(List<Measurement> measurements, int baselineIndex, float maxAccuracyLoss) {
+        int selected = baselineIndex;
+        for (int i = 0; i < measurements.size(); i++) {
+            Measurement measurement = measurements.get(i);
+            if (i != baselineIndex && measurement.accuracy < 1 - maxAccuracyLoss) {
+                continue;
+            }
+            if (measurement.medianMillis < measurements.get(selected).medianMillis) {
+                selected = i;
+            }
+        }
+        return selected;
+    }
+
+    //Median of the timings, which are sorted in place
+    public static float median(long[] timings) {
+        Arrays.sort(timings);
+        int middle = timings.length / 2;
+        return timings.length % 2 == 1 ? timings[middle] : (timings[middle - 1] + timings[middle]) / 2f;
+    }
+}
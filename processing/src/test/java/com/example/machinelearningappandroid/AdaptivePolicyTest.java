@@ -0,0 +1,112 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AdaptivePolicyTest {
+    private static final int NONE = FrameSchedule.THERMAL_STATUS_NONE;
+    private static final int MODERATE = FrameSchedule.THERMAL_STATUS_MODERATE;
+
+    //1 second latency budget, 30 seconds to recover a level and 5 seconds between steps down
+    private static AdaptivePolicy createPolicy() {
+        return new AdaptivePolicy(Arrays.asList(
+                new AdaptivePolicy.Level("fp32", 512, 4),
+                new AdaptivePolicy.Level("fp32", 512, 2),
+                new AdaptivePolicy.Level("int8-256", 256, 2)), 1000, 30000, 5000);
+    }
+
+    @Test
+    public void pressureStepsDownOneLevelAtATime() {
+        AdaptivePolicy policy = createPolicy();
+        AdaptivePolicy.Decision decision = policy.update(MODERATE, false, 0);
+        assertTrue(decision.changed);
+        assertEquals(1, decision.levelIndex);
+        assertEquals(2, decision.level.threads);
+
+        //The lower level is given time to help before stepping down again
+        assertFalse(policy.update(MODERATE, false, 1000).changed);
+        assertEquals(2, policy.update(MODERATE, false, 5000).levelIndex);
+        //There is nothing lighter to go to
+        assertFalse(policy.update(MODERATE, false, 20000).changed);
+        assertEquals(2, policy.getLevelIndex());
+    }
+
+    @Test
+    public void severeThermalStatusGoesStraightToTheLightestLevel() {
+        AdaptivePolicy policy = createPolicy();
+        AdaptivePolicy.Decision decision = policy.update(FrameSchedule.THERMAL_STATUS_SEVERE, false, 0);
+        assertEquals(2, decision.levelIndex);
+        assertEquals(256, decision.level.inputSize);
+    }
+
+    @Test
+    public void recoveryWaitsForASustainedQuietPeriod() {
+        AdaptivePolicy policy = createPolicy();
+        policy.update(MODERATE, false, 0);
+        policy.update(MODERATE, false, 5000);
+        assertEquals(2, policy.getLevelIndex());
+
+        //Cooling down has to last the whole recovery period, and any pressure starts it again
+        assertFalse(policy.update(NONE, false, 10000).changed);
+        assertFalse(policy.update(NONE, false, 30000).changed);
+        assertFalse(policy.update(MODERATE, false, 34000).changed);
+        assertFalse(policy.update(NONE, false, 36000).changed);
+        assertFalse(policy.update(NONE, false, 60000).changed);
+        AdaptivePolicy.Decision decision = policy.update(NONE, false, 66000);
+        assertTrue(decision.changed);
+        assertEquals(1, decision.levelIndex);
+
+        //Each level up needs its own quiet period
+        assertFalse(policy.update(NONE, false, 70000).changed);
+        assertEquals(0, policy.update(NONE, false, 96000).levelIndex);
+    }
+
+    @Test
+    public void latencyBetweenTheThresholdsHoldsTheLevel() {
+        AdaptivePolicy policy = createPolicy();
+        for (int i = 0; i < 3; i++) {
+            policy.recordLatency(1500);
+        }
+        assertEquals(1, policy.update(NONE, false, 0).levelIndex);
+
+        //Under the budget but not far enough under it to try the heavier level again
+        for (int i = 0; i < 3; i++) {
+            policy.recordLatency(800);
+        }
+        assertFalse(policy.update(NONE, false, 40000).changed);
+        assertFalse(policy.update(NONE, false, 80000).changed);
+
+        for (int i = 0; i < 8; i++) {
+            policy.recordLatency(500);
+        }
+        assertFalse(policy.update(NONE, false, 90000).changed);
+        assertEquals(0, policy.update(NONE, false, 120000).levelIndex);
+    }
+
+    @Test
+    public void tightMemoryStepsDown() {
+        AdaptivePolicy policy = createPolicy();
+        AdaptivePolicy.Decision decision = policy.update(NONE, true, 0);
+        assertTrue(decision.changed);
+        assertEquals("memory is tight", decision.reason);
+    }
+
+    @Test
+    public void tightMemorySkipsToASmallerVariant() {
+        AdaptivePolicy policy = createPolicy();
+        //The level with fewer threads would use just as much memory
+        AdaptivePolicy.Decision decision = policy.update(NONE, true, 0);
+        assertEquals(2, decision.levelIndex);
+        assertEquals(256, decision.level.inputSize);
+
+        //Only one variant means there is nothing smaller to go to
+        AdaptivePolicy single = new AdaptivePolicy(Arrays.asList(
+                new AdaptivePolicy.Level("fp32", 512, 4),
+                new AdaptivePolicy.Level("fp32", 512, 2)), 1000, 30000, 5000);
+        assertFalse(single.update(NONE, true, 0).changed);
+        assertEquals(0, single.getLevelIndex());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class AttributeScoresTest {
+    private static final String[] NAMES = new String[] {"Bald", "Bangs", "Smiling", "Wearing Hat", "Eyeglasses"};
+
+    @Test
+    public void topKIsSortedByProbability() {
+        AttributeScores scores = AttributeScores.fromOutput(FloatBuffer.wrap(new float[] {0.1f, 0.7f, 0.9f, 0.3f, 0.8f}),
+                0, AttributeCalibration.uniform(NAMES, 0.5f, false));
+        int[] indices = new int[3];
+        assertEquals(3, scores.topK(3, indices));
+        assertArrayEquals(new int[] {2, 4, 1}, indices);
+
+        int[] all = new int[10];
+        assertEquals(5, scores.topK(10, all));
+        assertEquals(0, all[4]);
+    }
+
+    @Test
+    public void presentAttributesUseTheirOwnThresholds() throws IOException {
+        AttributeCalibration calibration = AttributeCalibration.read(
+                new StringReader("# tuned on the validation set\nSmiling=0.95\nWearing Hat = 0.2\n"), NAMES, 0.5f);
+        AttributeScores scores = AttributeScores.fromOutput(FloatBuffer.wrap(new float[] {0.1f, 0.7f, 0.9f, 0.3f, 0.8f}),
+                0, calibration);
+        int[] indices = new int[NAMES.length];
+        int count = scores.getPresent(indices);
+        assertEquals(3, count);
+        assertEquals("Eyeglasses", scores.getName(indices[0]));
+        assertEquals("Bangs", scores.getName(indices[1]));
+        assertEquals("Wearing Hat", scores.getName(indices[2]));
+        assertFalse(scores.isPresent(2));
+    }
+
+    @Test
+    public void logitsAreTurnedIntoProbabilities() throws IOException {
+        AttributeCalibration calibration = AttributeCalibration.read(new StringReader("output=logits\n"), NAMES, 0.5f);
+        float[] logits = new float[] {-2, 0, 3, AttributeScores.logit(0.25f), 10};
+        AttributeScores scores = AttributeScores.fromOutput(FloatBuffer.wrap(new float[] {9, 9, -2, 0, 3,
+                AttributeScores.logit(0.25f), 10}), 2, calibration);
+        for (int i = 0; i < logits.length; i++) {
+            assertEquals(AttributeScores.sigmoid(logits[i]), scores.getProbability(i), 1e-6f);
+        }
+        assertEquals(0.5f, scores.getProbability(1), 1e-6f);
+        assertEquals(0.25f, scores.getProbability(3), 1e-5f);
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownAttributeIsRejected() throws IOException {
+        AttributeCalibration.read(new StringReader("Smilling=0.6\n"), NAMES, 0.5f);
+    }
+}
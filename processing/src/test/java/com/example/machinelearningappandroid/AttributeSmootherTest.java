@@ -0,0 +1,23 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class AttributeSmootherTest {
+    @Test
+    public void smoothingWeightDependsOnElapsedTime() {
+        String[] names = new String[] {"Smiling", "Young"};
+        AttributeCalibration calibration = AttributeCalibration.uniform(names, 0.5f, false);
+        AttributeSmoother smoother = new AttributeSmoother(names.length, 500);
+        smoother.update(AttributeScores.fromOutput(FloatBuffer.wrap(new float[] {1, 0}), 0, calibration), 0);
+        assertEquals(1, smoother.getScores(calibration).getProbability(0), 0);
+
+        smoother.update(AttributeScores.fromOutput(FloatBuffer.wrap(new float[] {0, 1}), 0, calibration), 500);
+        AttributeScores scores = smoother.getScores(calibration);
+        assertEquals(Math.exp(-1), scores.getProbability(0), 1e-6);
+        assertEquals(1 - Math.exp(-1), scores.getProbability(1), 1e-6);
+    }
+}
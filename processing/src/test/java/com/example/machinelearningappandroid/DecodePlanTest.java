@@ -0,0 +1,131 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class DecodePlanTest {
+    private static final int TARGET_SIZE = 512;
+
+    @Test
+    public void centreSquareIsSubsampledToAtLeastTheTarget() {
+        DecodePlan plan = DecodePlan.forCentreSquare(4000, 3000, TARGET_SIZE);
+        assertEquals(500, plan.regionLeft);
+        assertEquals(0, plan.regionTop);
+        assertEquals(3000, plan.regionSize);
+        assertEquals(4, plan.sampleSize);
+        assertEquals(750, plan.decodedSize);
+
+        DecodePlan small = DecodePlan.forCentreSquare(300, 400, TARGET_SIZE);
+        assertEquals(1, small.sampleSize);
+        assertEquals(300, small.decodedSize);
+        assertEquals(50, small.regionTop);
+    }
+
+    @Test
+    public void peakMemoryIsBoundedForAnySourceSize() {
+        //The decoded square is under twice the target across, so this holds for any image however large
+        long bound = 2L * (2 * TARGET_SIZE) * (2 * TARGET_SIZE) * 4 + 3L * TARGET_SIZE * TARGET_SIZE * 4;
+        int[][] sizes = new int[][] {{513, 513}, {1023, 1023}, {4000, 3000}, {12000, 9000}, {20000, 500},
+                {640, 48000}};
+        for (int[] size : sizes) {
+            DecodePlan plan = DecodePlan.forCentreSquare(size[0], size[1], TARGET_SIZE);
+            assertTrue(plan.decodedSize < 2 * TARGET_SIZE);
+            assertTrue(plan.decodedSize >= Math.min(TARGET_SIZE, plan.regionSize));
+            assertTrue(plan.getPeakBytes(4, TARGET_SIZE) <= bound);
+        }
+    }
+
+    //Decodes a real JPEG the way the plan says, using ImageIO's region and subsampling support as a stand in for
+    //the Android decoder, and checks the memory allocated against decoding the whole image
+    //Per thread allocation counts are a HotSpot extension, so the test is skipped on JVMs that don't have them
+    @Test
+    public void plannedDecodeAllocatesFarLessThanAFullDecode() throws IOException {
+        assumeTrue("Thread allocation counts aren't available on this JVM", isAllocationCounted());
+        byte[] jpeg = createJpeg(4000, 3000);
+        DecodePlan plan = DecodePlan.forCentreSquare(4000, 3000, TARGET_SIZE);
+
+        //Run once first so class loading and the decoder's own tables aren't counted
+        decode(jpeg, null);
+        long fullStart = allocatedBytes();
+        BufferedImage full = decode(jpeg, null);
+        long fullBytes = allocatedBytes() - fullStart;
+        long plannedStart = allocatedBytes();
+        BufferedImage planned = decode(jpeg, plan);
+        long plannedBytes = allocatedBytes() - plannedStart;
+
+        assertEquals(4000, full.getWidth());
+        assertEquals(plan.decodedSize, planned.getWidth());
+        assertEquals(plan.decodedSize, planned.getHeight());
+        assertTrue("Planned decode allocated " + plannedBytes + " bytes, full decode " + fullBytes,
+                plannedBytes * 4 < fullBytes);
+        assertTrue("Planned decode allocated " + plannedBytes + " bytes",
+                plannedBytes < 2 * plan.getPeakBytes(4, TARGET_SIZE));
+    }
+
+    private static BufferedImage decode(byte[] jpeg, DecodePlan plan) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (plan != null) {
+                    param.setSourceRegion(new Rectangle(plan.regionLeft, plan.regionTop, plan.regionSize,
+                            plan.regionSize));
+                    param.setSourceSubsampling(plan.sampleSize, plan.sampleSize, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    //Looked up by name so the class only has to exist on JVMs that run the measurement
+    private static boolean isAllocationCounted() {
+        Class<?> extension;
+        try {
+            extension = Class.forName("com.sun.management.ThreadMXBean");
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+        Object threadBean = ManagementFactory.getThreadMXBean();
+        return extension.isInstance(threadBean)
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static byte[] createJpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = ((x * 255 / width) << 16) | ((y * 255 / height) << 8) | ((x + y) & 0xFF);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", bytes);
+        return bytes.toByteArray();
+    }
+}
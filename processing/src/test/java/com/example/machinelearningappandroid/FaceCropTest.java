@@ -0,0 +1,65 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FaceCropTest {
+    @Test
+    public void cropIsCentredBelowTheEyes() {
+        FaceCrop crop = FaceCrop.around(500, 400, 100, 1000, 1000);
+        assertEquals(450, crop.size);
+        assertEquals(275, crop.left);
+        assertEquals(211, crop.top);
+    }
+
+    @Test
+    public void cropIsKeptInsideTheImage() {
+        FaceCrop nearEdge = FaceCrop.around(50, 40, 100, 1000, 800);
+        assertEquals(0, nearEdge.left);
+        assertEquals(0, nearEdge.top);
+
+        FaceCrop tooBig = FaceCrop.around(300, 200, 200, 600, 400);
+        assertEquals(400, tooBig.size);
+        assertEquals(0, tooBig.top);
+        assertEquals(100, tooBig.left);
+    }
+
+    @Test
+    public void scaledCropStaysInsideTheImage() {
+        FaceCrop crop = new FaceCrop(100, 50, 200).scale(4, 1000, 1000);
+        assertEquals(800, crop.size);
+        assertEquals(200, crop.left);
+        assertEquals(200, crop.top);
+    }
+
+    //A stored image of 400 x 300 with a marked pixel, checked against where the crop lands in each orientation
+    @Test
+    public void unrotatedCropCoversTheSamePixels() {
+        int storedWidth = 400;
+        int storedHeight = 300;
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            boolean swapped = rotation == 90 || rotation == 270;
+            int uprightWidth = swapped ? storedHeight : storedWidth;
+            int uprightHeight = swapped ? storedWidth : storedHeight;
+            FaceCrop upright = new FaceCrop(30, 60, 100);
+            FaceCrop stored = upright.unrotate(rotation, uprightWidth, uprightHeight);
+
+            //Top left corner pixel of the upright crop, mapped to stored coordinates by rotating anticlockwise
+            int u = upright.left;
+            int v = upright.top;
+            int x;
+            int y;
+            switch (rotation) {
+                case 90: x = v; y = storedHeight - 1 - u; break;
+                case 180: x = storedWidth - 1 - u; y = storedHeight - 1 - v; break;
+                case 270: x = storedWidth - 1 - v; y = u; break;
+                default: x = u; y = v;
+            }
+            assertTrue("rotation " + rotation, x >= stored.left && x < stored.left + stored.size);
+            assertTrue("rotation " + rotation, y >= stored.top && y < stored.top + stored.size);
+            assertTrue(stored.left >= 0 && stored.left + stored.size <= storedWidth);
+            assertTrue(stored.top >= 0 && stored.top + stored.size <= storedHeight);
+        }
+    }
+}
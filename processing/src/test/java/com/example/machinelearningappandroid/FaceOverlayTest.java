@@ -0,0 +1,49 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class FaceOverlayTest {
+    private static final int[] PALETTE = new int[] {0xFFFF0000, 0xFF00FF00};
+    private static final int UNTOUCHED = 0x12345678;
+
+    //2 x 2 label map with class 0 on the left column, class 1 at the top right and background at the bottom right
+    private static LabelMap createLabels() {
+        float[] scores = new float[] {
+                1, 0, 1, 0,
+                0, 1, 0, 0
+        };
+        return LabelMap.compute(FloatBuffer.wrap(scores), 2, 2, 2, 0.5f, ForkJoinPool.commonPool());
+    }
+
+    @Test
+    public void labelsAreDrawnWhereTheCropWasTaken() {
+        //A crop 4 pixels across at (2, 2) of an 8 x 8 image, drawn onto a copy at half the size
+        int[] pixels = new int[4 * 4];
+        Arrays.fill(pixels, UNTOUCHED);
+        FaceOverlay.render(createLabels(), new FaceCrop(2, 2, 4), 0.5f, PALETTE, pixels, 4, 4);
+
+        assertEquals(PALETTE[0], pixels[1 * 4 + 1]);
+        assertEquals(PALETTE[1], pixels[1 * 4 + 2]);
+        assertEquals(PALETTE[0], pixels[2 * 4 + 1]);
+        //Background labels and pixels outside the crop keep what was there
+        assertEquals(UNTOUCHED, pixels[2 * 4 + 2]);
+        assertEquals(UNTOUCHED, pixels[0]);
+        assertEquals(UNTOUCHED, pixels[3 * 4 + 3]);
+    }
+
+    @Test
+    public void cropsPastTheEdgeAreClipped() {
+        int[] pixels = new int[3 * 3];
+        Arrays.fill(pixels, UNTOUCHED);
+        FaceOverlay.render(createLabels(), new FaceCrop(2, 2, 2), 1, PALETTE, pixels, 3, 3);
+
+        assertEquals(PALETTE[0], pixels[2 * 3 + 2]);
+        assertEquals(UNTOUCHED, pixels[1 * 3 + 1]);
+    }
+}
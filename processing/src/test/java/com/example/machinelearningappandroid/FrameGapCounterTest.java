@@ -0,0 +1,40 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameGapCounterTest {
+    private static final long INTERVAL = 33333333L;
+
+    @Test
+    public void gapsCountTheFramesBetweenThem() {
+        FrameGapCounter counter = new FrameGapCounter();
+        assertEquals(0, counter.onFrame(0));
+        assertEquals(0, counter.onFrame(INTERVAL));
+        //Three frames dropped by the camera while the analyzer was busy
+        assertEquals(3, counter.onFrame(5 * INTERVAL));
+        assertEquals(0, counter.onFrame(6 * INTERVAL));
+        assertEquals(3, counter.getFramesMissed());
+    }
+
+    @Test
+    public void jitterIsNotCountedAsADrop() {
+        FrameGapCounter counter = new FrameGapCounter();
+        counter.onFrame(0);
+        counter.onFrame(INTERVAL);
+        assertEquals(0, counter.onFrame(2 * INTERVAL + INTERVAL / 3));
+        assertEquals(1, counter.onFrame(4 * INTERVAL + INTERVAL / 3));
+        assertEquals(1, counter.getFramesMissed());
+    }
+
+    @Test
+    public void repeatedOrOlderTimestampsAreIgnored() {
+        FrameGapCounter counter = new FrameGapCounter();
+        counter.onFrame(INTERVAL);
+        assertEquals(0, counter.onFrame(INTERVAL));
+        assertEquals(0, counter.onFrame(0));
+        assertEquals(0, counter.onFrame(INTERVAL));
+        assertEquals(0, counter.getFramesMissed());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FrameScheduleTest {
+    @Test
+    public void framesAreLimitedToTheTargetRate() {
+        FrameSchedule schedule = new FrameSchedule(200, 2000, 4);
+        assertEquals(FrameSchedule.RUN, schedule.checkTime(0));
+        schedule.onInference(0);
+        assertEquals(FrameSchedule.SKIP_RATE, schedule.checkTime(150));
+        assertEquals(FrameSchedule.RUN, schedule.checkTime(200));
+    }
+
+    @Test
+    public void staticSceneIsOnlyRefreshedOccasionally() {
+        FrameSchedule schedule = new FrameSchedule(200, 2000, 4);
+        schedule.onInference(0);
+        assertEquals(FrameSchedule.SKIP_STATIC, schedule.checkChange(500, 1));
+        assertEquals(FrameSchedule.RUN, schedule.checkChange(500, 10));
+        assertEquals(FrameSchedule.RUN, schedule.checkChange(2000, 1));
+    }
+
+    @Test
+    public void thermalStatusSlowsThenStopsInference() {
+        FrameSchedule schedule = new FrameSchedule(200, 2000, 4);
+        schedule.onInference(0);
+        schedule.setThermalStatus(FrameSchedule.THERMAL_STATUS_MODERATE);
+        assertEquals(800, schedule.getIntervalMillis());
+        assertEquals(FrameSchedule.SKIP_THERMAL, schedule.checkTime(500));
+        assertEquals(FrameSchedule.RUN, schedule.checkTime(800));
+        schedule.setThermalStatus(FrameSchedule.THERMAL_STATUS_SEVERE);
+        assertEquals(FrameSchedule.SKIP_THERMAL, schedule.checkTime(10000));
+    }
+
+    @Test
+    public void changeIsMeasuredAgainstTheLastAcceptedFrame() {
+        int width = 64;
+        int height = 48;
+        int rowStride = 80;
+        ByteBuffer frame = ByteBuffer.allocate(rowStride * height);
+        FrameChangeDetector detector = new FrameChangeDetector(8);
+        assertEquals(255, detector.measure(frame, rowStride, 1, width, height), 0);
+        detector.acceptMeasured();
+        assertEquals(0, detector.measure(frame, rowStride, 1, width, height), 0);
+
+        //Brightening the whole frame by 20 is seen as a change of 20, however many frames it took to get there
+        Arrays.fill(frame.array(), (byte) 10);
+        assertEquals(10, detector.measure(frame, rowStride, 1, width, height), 0);
+        Arrays.fill(frame.array(), (byte) 20);
+        assertEquals(20, detector.measure(frame, rowStride, 1, width, height), 0);
+        assertEquals(0, frame.position());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class HeadSchedulerTest {
+    private static final long IMAGE = 42;
+
+    //Runs models that output one 2 x 1 mask and one attribute for whichever heads they have, and keeps stored results
+    private static class CountingSource implements HeadScheduler.Source {
+        final List<ModelType> forwards = new ArrayList<>();
+        final EnumMap<ModelType, ResultRecord> stored = new EnumMap<>(ModelType.class);
+
+        @Override
+        public HeadScheduler.Outputs read(long inputHash, ModelType modelType) {
+            ResultRecord record = stored.get(modelType);
+            return record == null ? null : new HeadScheduler.Outputs(inputHash, modelType, null, record, "stored");
+        }
+
+        @Override
+        public HeadScheduler.Outputs forward(ModelType modelType) {
+            forwards.add(modelType);
+            InferenceBackend.Outputs heads = new InferenceBackend.Outputs(
+                    modelType != ModelType.ATTRIBUTES ? FloatBuffer.wrap(new float[] {1, 0}) : null, 1, 2, 1,
+                    modelType != ModelType.SEGMENTATION ? FloatBuffer.wrap(new float[] {0.5f}) : null, 1);
+            return new HeadScheduler.Outputs(IMAGE, modelType, heads, null, "run");
+        }
+    }
+
+    @Test
+    public void secondHeadOfTheSameImageCostsNoForwardPass() throws Exception {
+        HeadScheduler scheduler = new HeadScheduler();
+        CountingSource source = new CountingSource();
+        HeadScheduler.Outputs segmentation = scheduler.get(IMAGE, ModelType.SEGMENTATION, false, source);
+        assertEquals(ModelType.JOINT, segmentation.modelType);
+
+        HeadScheduler.Outputs attributes = scheduler.get(IMAGE, ModelType.ATTRIBUTES, false, source);
+        assertSame(segmentation, attributes);
+        assertEquals(0.5f, attributes.heads.attributes.get(0), 0);
+        assertEquals(1, scheduler.getForwardPasses());
+        assertEquals(1, scheduler.getCacheHits());
+        assertEquals(1, source.forwards.size());
+
+        //Another image needs its own forward pass
+        scheduler.get(IMAGE + 1, ModelType.ATTRIBUTES, false, source);
+        assertEquals(2, scheduler.getForwardPasses());
+    }
+
+    @Test
+    public void tightMemoryRunsTheSingleHeadModels() throws Exception {
+        HeadScheduler scheduler = new HeadScheduler();
+        CountingSource source = new CountingSource();
+        assertEquals(ModelType.SEGMENTATION, scheduler.get(IMAGE, ModelType.SEGMENTATION, true, source).modelType);
+        //The segmentation model's outputs can't answer for the attributes
+        assertEquals(ModelType.ATTRIBUTES, scheduler.get(IMAGE, ModelType.ATTRIBUTES, true, source).modelType);
+        //Both heads at once still need the joint model
+        assertEquals(ModelType.JOINT, scheduler.get(IMAGE, ModelType.JOINT, true, source).modelType);
+        assertEquals(3, scheduler.getForwardPasses());
+    }
+
+    @Test
+    public void storedJointResultAnswersEitherHead() throws Exception {
+        HeadScheduler scheduler = new HeadScheduler();
+        CountingSource source = new CountingSource();
+        FloatBuffer scores = FloatBuffer.wrap(new float[] {1, 0});
+        ResultRecord record = ResultRecord.fromOutputs(scores, 1, 2, 1, 0.5f, FloatBuffer.wrap(new float[] {0.5f}), 1)
+                .withLabelMap(LabelMap.compute(scores, 1, 2, 1, 0.5f, new ForkJoinPool(1)));
+        source.stored.put(ModelType.JOINT, record);
+
+        assertSame(record, scheduler.get(IMAGE, ModelType.ATTRIBUTES, true, source).record);
+        scheduler.clear();
+        assertSame(record, scheduler.get(IMAGE, ModelType.SEGMENTATION, false, source).record);
+        assertEquals(0, scheduler.getForwardPasses());
+        assertTrue(source.forwards.isEmpty());
+    }
+
+    @Test
+    public void storedMasksWithoutALabelMapAreRunAgain() throws Exception {
+        HeadScheduler scheduler = new HeadScheduler();
+        CountingSource source = new CountingSource();
+        source.stored.put(ModelType.SEGMENTATION, ResultRecord.fromOutputs(FloatBuffer.wrap(new float[] {1, 0}), 1, 2,
+                1, 0.5f, null, 0));
+        assertEquals(ModelType.JOINT, scheduler.get(IMAGE, ModelType.SEGMENTATION, false, source).modelType);
+        assertEquals(1, scheduler.getForwardPasses());
+    }
+}
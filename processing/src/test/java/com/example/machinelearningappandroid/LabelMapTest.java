@@ -0,0 +1,78 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class LabelMapTest {
+    private static final float THRESHOLD = 0.8f;
+
+    @Test
+    public void highestChannelAboveThresholdWins() {
+        //Two classes over a 2x1 image, the first pixel is class 1 and the second has nothing above the threshold
+        FloatBuffer values = FloatBuffer.wrap(new float[] {
+                0.85f, 0.5f,
+                0.9f, 0.8f
+        });
+        LabelMap labelMap = LabelMap.compute(values, 2, 2, 1, THRESHOLD, ForkJoinPool.commonPool());
+        assertArrayEquals(new byte[] {1, LabelMap.BACKGROUND}, labelMap.getLabels());
+        assertEquals(0, labelMap.getPixelCount(0));
+        assertEquals(1, labelMap.getPixelCount(1));
+        assertEquals(0.5f, labelMap.getArea(1), 0f);
+        assertEquals(0.9f, labelMap.getMeanConfidence(1), 1e-6f);
+        assertEquals(0f, labelMap.getMeanConfidence(0), 0f);
+    }
+
+    @Test
+    public void parallelBandsMatchSequentialArgmax() {
+        int numClasses = 5;
+        int width = 37;
+        int height = 101;
+        int planeSize = width * height;
+        Random random = new Random(3);
+        float[] scores = new float[numClasses * planeSize];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextFloat();
+        }
+
+        LabelMap labelMap = LabelMap.compute(FloatBuffer.wrap(scores), numClasses, width, height, THRESHOLD,
+                new ForkJoinPool(4));
+        int[] expectedCounts = new int[numClasses];
+        for (int i = 0; i < planeSize; i++) {
+            int expected = LabelMap.BACKGROUND;
+            float best = THRESHOLD;
+            for (int c = 0; c < numClasses; c++) {
+                if (scores[c * planeSize + i] > best) {
+                    best = scores[c * planeSize + i];
+                    expected = c;
+                }
+            }
+            assertEquals("pixel " + i, expected, labelMap.getLabels()[i]);
+            if (expected != LabelMap.BACKGROUND) {
+                expectedCounts[expected]++;
+            }
+        }
+        for (int c = 0; c < numClasses; c++) {
+            assertEquals(expectedCounts[c], labelMap.getPixelCount(c));
+        }
+    }
+
+    @Test
+    public void renderUsesPaletteAndBackground() {
+        FloatBuffer values = FloatBuffer.wrap(new float[] {0.9f, 0.1f, 0.1f, 0.9f});
+        LabelMap labelMap = LabelMap.compute(values, 2, 2, 1, THRESHOLD, ForkJoinPool.commonPool());
+        int[] palette = new int[] {0xFF112233, 0xFF445566};
+        int[] pixels = new int[3];
+        labelMap.render(pixels, 1, palette, 0);
+        assertArrayEquals(new int[] {0, 0xFF112233, 0xFF445566}, pixels);
+
+        values = FloatBuffer.wrap(new float[] {0.1f, 0.1f, 0.1f, 0.1f});
+        LabelMap.compute(values, 2, 2, 1, THRESHOLD, ForkJoinPool.commonPool()).render(pixels, 0, palette, 7);
+        assertEquals(7, pixels[0]);
+        assertEquals(7, pixels[1]);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ModelPipelineTest {
+    private static final int INPUT_SIZE = 8;
+
+    //One mask of the pixels brighter than average in the red channel, and the mean red value as an attribute
+    private static class ThresholdBackend implements InferenceBackend {
+        @Override
+        public Outputs forward(FloatBuffer input, int inputSize) {
+            int planeSize = inputSize * inputSize;
+            float[] mask = new float[planeSize];
+            float sum = 0;
+            for (int i = 0; i < planeSize; i++) {
+                mask[i] = input.get(i) > 0 ? 1 : 0;
+                sum += mask[i];
+            }
+            return new Outputs(FloatBuffer.wrap(mask), 1, inputSize, inputSize,
+                    FloatBuffer.wrap(new float[] {sum / planeSize}), 1);
+        }
+    }
+
+    private static int[] halfRedImage(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i % width < width / 2 ? 0xFFFF0000 : 0xFF000000;
+        }
+        return pixels;
+    }
+
+    @Test
+    public void pipelineProducesRecordOfBothHeads() throws Exception {
+        ModelPipeline pipeline = new ModelPipeline(new ThresholdBackend(), INPUT_SIZE, 0.5f);
+        ResultRecord record = pipeline.run(halfRedImage(16, 16), 16, 16, 0);
+        assertEquals(1, record.getNumMasks());
+        assertEquals(INPUT_SIZE, record.getWidth());
+        assertEquals(0.5f, record.getAttributes()[0], 0);
+
+        FloatBuffer mask = FloatBuffer.allocate(INPUT_SIZE * INPUT_SIZE);
+        record.decodeSegmentation(mask);
+        assertEquals(ResultRecord.MASK_VALUE, mask.get(0), 0);
+        assertEquals(ResultRecord.BACKGROUND_VALUE, mask.get(INPUT_SIZE - 1), 0);
+    }
+
+    @Test
+    public void rotatedInputGivesRotatedMask() throws Exception {
+        ModelPipeline pipeline = new ModelPipeline(new ThresholdBackend(), INPUT_SIZE, 0.5f);
+        ResultRecord record = pipeline.run(halfRedImage(16, 16), 16, 16, 90);
+        FloatBuffer mask = FloatBuffer.allocate(INPUT_SIZE * INPUT_SIZE);
+        record.decodeSegmentation(mask);
+        //The left half turned clockwise becomes the top half
+        assertEquals(ResultRecord.MASK_VALUE, mask.get(INPUT_SIZE - 1), 0);
+        assertEquals(ResultRecord.BACKGROUND_VALUE, mask.get(INPUT_SIZE * INPUT_SIZE - 1), 0);
+    }
+
+    @Test
+    public void headsOfABatchAreSlicedPerImage() {
+        //Two images of one 1 x 2 mask each, and two attributes each
+        FloatBuffer segmentation = FloatBuffer.wrap(new float[] {1, 2, 3, 4});
+        FloatBuffer attributes = FloatBuffer.wrap(new float[] {5, 6, 7, 8});
+        InferenceBackend.Outputs second = InferenceBackend.Outputs.fromHeads(segmentation, new long[] {2, 1, 1, 2},
+                attributes, new long[] {2, 2}, 1, null);
+        assertEquals(1, second.numMasks);
+        assertEquals(2, second.maskWidth);
+        assertEquals(1, second.maskHeight);
+        assertEquals(2, second.segmentation.remaining());
+        assertEquals(3, second.segmentation.get(0), 0);
+        assertEquals(2, second.numAttributes);
+        assertEquals(7, second.attributes.get(0), 0);
+
+        InferenceBackend.Outputs attributesOnly = InferenceBackend.Outputs.fromHeads(null, null, attributes,
+                new long[] {2, 2}, 0, null);
+        assertNull(attributesOnly.segmentation);
+        assertEquals(5, attributesOnly.attributes.get(0), 0);
+    }
+
+    @Test
+    public void goldenDiffOfSameResultIsPerfect() throws Exception {
+        ModelPipeline pipeline = new ModelPipeline(new ThresholdBackend(), INPUT_SIZE, 0.5f);
+        ResultRecord record = pipeline.run(halfRedImage(16, 16), 16, 16, 0);
+        GoldenDiff diff = GoldenDiff.compare(record, record, 0.5f);
+        assertEquals(1, diff.maskIou, 0);
+        assertEquals(0, diff.maxAttributeDelta, 0);
+        assertEquals(1, diff.getAccuracy(), 0);
+    }
+
+    @Test
+    public void goldenDiffOfDifferentResultIsScaledAndMeasured() throws Exception {
+        ResultRecord result = new ModelPipeline(new ThresholdBackend(), INPUT_SIZE, 0.5f)
+                .run(halfRedImage(16, 16), 16, 16, 0);
+        //A golden result at twice the size whose mask covers the whole image
+        float[] fullMask = new float[4 * INPUT_SIZE * INPUT_SIZE];
+        Arrays.fill(fullMask, 1);
+        ResultRecord golden = ResultRecord.fromOutputs(FloatBuffer.wrap(fullMask), 1, 2 * INPUT_SIZE, 2 * INPUT_SIZE,
+                0.5f, FloatBuffer.wrap(new float[] {0.75f}), 1);
+        GoldenDiff diff = GoldenDiff.compare(result, golden, 0.6f);
+        assertEquals(0.5f, diff.maskIou, 1e-6f);
+        assertEquals(0.25f, diff.maxAttributeDelta, 1e-6f);
+        assertEquals(0, diff.attributeAgreement, 0);
+        assertEquals(0.25f, diff.getAccuracy(), 1e-6f);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ProgressiveMaskRendererTest {
+    private static final int SIZE = 16;
+    private static final int NUM_MASKS = 3;
+
+    //Each mask covers a different number of whole 8 x 8 blocks, so every preview matches the exact mask
+    private static SegmentationResult createResult() {
+        float[] values = new float[NUM_MASKS * SIZE * SIZE];
+        for (int mask = 0; mask < NUM_MASKS; mask++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    int block = (y / 8) * 2 + x / 8;
+                    values[(mask * SIZE + y) * SIZE + x] = block <= mask ? 1 : 0;
+                }
+            }
+        }
+        return new SegmentationResult(FloatBuffer.wrap(values), null, NUM_MASKS, SIZE, SIZE, 0.5f);
+    }
+
+    @Test
+    public void selectedMaskIsPreviewedThenEveryMaskFollows() {
+        List<String> calls = new ArrayList<>();
+        int rendered = new ProgressiveMaskRenderer().render(createResult(), 1,
+                (maskIndex, step, pixels) -> calls.add(maskIndex + "@" + step));
+
+        assertEquals(NUM_MASKS, rendered);
+        assertEquals(Arrays.asList("1@8", "1@4", "1@2", "1@1", "2@1", "0@1"), calls);
+    }
+
+    @Test
+    public void firstMaskCanBeRenderedAlone() {
+        List<String> calls = new ArrayList<>();
+        int rendered = new ProgressiveMaskRenderer().renderFirst(createResult(), 2,
+                (maskIndex, step, pixels) -> calls.add(maskIndex + "@" + step));
+
+        assertEquals(1, rendered);
+        assertEquals(Arrays.asList("2@8", "2@4", "2@2", "2@1"), calls);
+    }
+
+    @Test
+    public void storedMasksSkipThePreviews() throws Exception {
+        float[] values = new float[SIZE * SIZE];
+        values[3] = 1;
+        FloatBuffer scores = FloatBuffer.wrap(values);
+        ResultRecord record = ResultRecord.fromOutputs(scores, 1, SIZE, SIZE, 0.5f, null, 0)
+                .withLabelMap(LabelMap.compute(scores, 1, SIZE, SIZE, 0.5f, new ForkJoinPool(1)));
+        List<String> calls = new ArrayList<>();
+        new ProgressiveMaskRenderer().renderFirst(new SegmentationResult(record), 0,
+                (maskIndex, step, pixels) -> calls.add(maskIndex + "@" + step));
+
+        assertEquals(Arrays.asList("0@1"), calls);
+    }
+
+    @Test
+    public void previewsAreFullSizeAndMatchTheExactMask() {
+        SegmentationResult result = createResult();
+        int[] exact = new int[SIZE * SIZE];
+        result.renderMask(2, exact, 0, SegmentationResult.MASK_COLOUR, SegmentationResult.BACKGROUND_COLOUR);
+
+        new ProgressiveMaskRenderer().render(result, 2, (maskIndex, step, pixels) -> {
+            if (maskIndex == 2) {
+                assertArrayEquals("Preview at step " + step, exact, pixels);
+            }
+        });
+    }
+
+    @Test
+    public void previewFillsEachBlockFromItsMiddle() {
+        //A single mask pixel at (4, 4) is the middle of the first 8 x 8 block but not of any 4 x 4 block
+        float[] values = new float[SIZE * SIZE];
+        values[4 * SIZE + 4] = 1;
+        SegmentationResult result = new SegmentationResult(FloatBuffer.wrap(values), null, 1, SIZE, SIZE, 0.5f);
+        int[] pixels = new int[SIZE * SIZE];
+
+        result.renderMaskPreview(0, 8, pixels, 0, 1, 0);
+        assertEquals(1, pixels[0]);
+        assertEquals(1, pixels[7 * SIZE + 7]);
+        assertEquals(0, pixels[8]);
+        assertEquals(0, pixels[8 * SIZE]);
+
+        result.renderMaskPreview(0, 4, pixels, 0, 1, 0);
+        assertEquals(0, pixels[0]);
+        assertEquals(0, pixels[4 * SIZE + 4]);
+    }
+
+    @Test
+    public void interruptedRenderStopsEarly() {
+        List<Integer> exactMasks = new ArrayList<>();
+        int rendered = new ProgressiveMaskRenderer().render(createResult(), 0, (maskIndex, step, pixels) -> {
+            if (step == 1) {
+                exactMasks.add(maskIndex);
+                Thread.currentThread().interrupt();
+            }
+        });
+        //Clears the flag so it doesn't leak into other tests
+        assertTrue(Thread.interrupted());
+
+        assertEquals(1, rendered);
+        assertEquals(Arrays.asList(0), exactMasks);
+    }
+}
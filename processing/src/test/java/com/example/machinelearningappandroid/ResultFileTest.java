@@ -0,0 +1,107 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResultFileTest {
+    private static final float THRESHOLD = 0.8f;
+    private static final int NUM_MASKS = 3;
+    private static final int SIZE = 64;
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("result", ".rec");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void mappedResultMatchesWhatWasWritten() throws IOException {
+        FloatBuffer segmentation = randomScores(NUM_MASKS * SIZE * SIZE, 5);
+        FloatBuffer attributes = randomScores(40, 6);
+        ResultFile.write(file, ResultRecord.fromOutputs(segmentation, NUM_MASKS, SIZE, SIZE, THRESHOLD, attributes, 40));
+
+        ResultRecord record = ResultFile.map(file);
+        assertEquals(NUM_MASKS, record.getNumMasks());
+        assertEquals(SIZE, record.getWidth());
+        assertEquals(SIZE, record.getHeight());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(attributes.get(i), record.getAttributes()[i], 0f);
+        }
+
+        FloatBuffer decoded = FloatBuffer.allocate(NUM_MASKS * SIZE * SIZE);
+        record.decodeSegmentation(decoded);
+        for (int i = 0; i < decoded.capacity(); i++) {
+            float expected = segmentation.get(i) > THRESHOLD ? ResultRecord.MASK_VALUE : ResultRecord.BACKGROUND_VALUE;
+            assertEquals("value " + i, expected, decoded.get(i), 0f);
+        }
+    }
+
+    @Test
+    public void recordsCanBeDecodedMoreThanOnce() throws IOException {
+        ResultFile.write(file, ResultRecord.fromOutputs(randomScores(NUM_MASKS * SIZE * SIZE, 7), NUM_MASKS, SIZE,
+                SIZE, THRESHOLD, null, 0));
+        ResultRecord record = ResultFile.map(file);
+        assertFalse(record.hasAttributes());
+
+        FloatBuffer first = FloatBuffer.allocate(NUM_MASKS * SIZE * SIZE);
+        FloatBuffer second = FloatBuffer.allocate(NUM_MASKS * SIZE * SIZE);
+        record.decodeSegmentation(first);
+        record.decodeSegmentation(second);
+        assertArrayEquals(first.array(), second.array(), 0f);
+    }
+
+    @Test
+    public void rewritingReplacesTheWholeFile() throws IOException {
+        ResultFile.write(file, ResultRecord.fromOutputs(randomScores(NUM_MASKS * SIZE * SIZE, 8), NUM_MASKS, SIZE,
+                SIZE, THRESHOLD, randomScores(40, 9), 40));
+        ResultFile.write(file, ResultRecord.fromOutputs(null, 0, 0, 0, THRESHOLD, FloatBuffer.wrap(new float[] {0.5f}), 1));
+
+        ResultRecord record = ResultFile.map(file);
+        assertFalse(record.hasSegmentation());
+        assertArrayEquals(new float[] {0.5f}, record.getAttributes(), 0f);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFilesAreRejected() throws IOException {
+        ResultFile.write(file, ResultRecord.fromOutputs(randomScores(NUM_MASKS * SIZE * SIZE, 10), NUM_MASKS, SIZE,
+                SIZE, THRESHOLD, null, 0));
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() / 2);
+        }
+        ResultFile.map(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(new byte[] {'n', 'o', 't', ' ', 'a', ' ', 'r', 'e', 'c', 'o', 'r', 'd'});
+        }
+        ResultFile.map(file);
+    }
+
+    private static FloatBuffer randomScores(int count, long seed) {
+        Random random = new Random(seed);
+        FloatBuffer values = FloatBuffer.allocate(count);
+        for (int i = 0; i < count; i++) {
+            values.put(i, random.nextFloat());
+        }
+        return values;
+    }
+}
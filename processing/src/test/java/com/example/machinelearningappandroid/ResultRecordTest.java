@@ -0,0 +1,111 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ResultRecordTest {
+    private static final float THRESHOLD = 0.8f;
+
+    @Test
+    public void segmentationAndAttributesSurviveARoundTrip() throws IOException {
+        FloatBuffer segmentation = FloatBuffer.wrap(new float[] {
+                0.9f, 0.1f, 0.95f, 0.2f,
+                0.1f, 0.1f, 0.85f, 0.81f
+        });
+        FloatBuffer attributes = FloatBuffer.wrap(new float[] {0.25f, 0.75f, 0.5f});
+        ResultRecord record = ResultRecord.fromOutputs(segmentation, 2, 2, 2, THRESHOLD, attributes, 3);
+
+        ResultRecord copy = roundTrip(record);
+        assertTrue(copy.hasSegmentation());
+        assertEquals(2, copy.getNumMasks());
+        assertEquals(2, copy.getWidth());
+        assertEquals(2, copy.getHeight());
+        assertArrayEquals(new float[] {0.25f, 0.75f, 0.5f}, copy.getAttributes(), 0f);
+
+        FloatBuffer decoded = FloatBuffer.allocate(8);
+        copy.decodeSegmentation(decoded);
+        assertArrayEquals(new float[] {1, 0, 1, 0, 0, 0, 1, 1}, decoded.array(), 0f);
+    }
+
+    @Test
+    public void missingHeadsStayMissing() throws IOException {
+        ResultRecord record = ResultRecord.fromOutputs(null, 0, 0, 0, THRESHOLD, FloatBuffer.wrap(new float[] {1f}), 1);
+        ResultRecord copy = roundTrip(record);
+        assertFalse(copy.hasSegmentation());
+        assertTrue(copy.hasAttributes());
+        assertEquals(4, copy.getSizeBytes());
+    }
+
+    @Test
+    public void storedLabelMapKeepsTheRawScoreWinners() throws IOException {
+        //Both masks cover the first two pixels, only the raw scores say which one wins there
+        FloatBuffer segmentation = FloatBuffer.wrap(new float[] {
+                0.85f, 0.99f, 0.1f, 0.1f,
+                0.95f, 0.9f, 0.1f, 0.9f
+        });
+        LabelMap labelMap = LabelMap.compute(segmentation, 2, 2, 2, THRESHOLD, new ForkJoinPool(1));
+        ResultRecord record = ResultRecord.fromOutputs(segmentation, 2, 2, 2, THRESHOLD, null, 0)
+                .withLabelMap(labelMap);
+
+        ResultRecord copy = roundTrip(record);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        record.write(new DataOutputStream(bytes));
+        ResultRecord mapped = ResultRecord.read(ByteBuffer.wrap(bytes.toByteArray()));
+        for (ResultRecord stored : new ResultRecord[] {copy, mapped}) {
+            LabelMap storedLabels = stored.getLabelMap();
+            assertArrayEquals(new byte[] {1, 0, LabelMap.BACKGROUND, 1}, storedLabels.getLabels());
+            assertEquals(2, storedLabels.getPixelCount(1));
+            assertEquals(labelMap.getMeanConfidence(0), storedLabels.getMeanConfidence(0), 1e-6f);
+            assertEquals(labelMap.getMeanConfidence(1), storedLabels.getMeanConfidence(1), 1e-6f);
+        }
+    }
+
+    @Test
+    public void singleMasksDecodeFromAStoredResult() throws IOException {
+        FloatBuffer segmentation = FloatBuffer.wrap(new float[] {
+                0.9f, 0.1f, 0.95f, 0.2f,
+                0.1f, 0.1f, 0.85f, 0.81f
+        });
+        ResultRecord record = ResultRecord.fromOutputs(segmentation, 2, 2, 2, THRESHOLD, null, 0)
+                .withLabelMap(LabelMap.compute(segmentation, 2, 2, 2, THRESHOLD, new ForkJoinPool(1)));
+        SegmentationResult result = new SegmentationResult(roundTrip(record));
+
+        int[] pixels = new int[4];
+        result.renderMask(1, pixels, 0, 1, 0);
+        assertArrayEquals(new int[] {0, 0, 1, 1}, pixels);
+        result.renderMask(0, pixels, 0, 1, 0);
+        assertArrayEquals(new int[] {1, 0, 1, 0}, pixels);
+        assertArrayEquals(new byte[] {0, LabelMap.BACKGROUND, 0, 1},
+                result.computeLabelMap(new ForkJoinPool(1)).getLabels());
+    }
+
+    @Test
+    public void labelMapIsOptional() throws IOException {
+        ResultRecord record = ResultRecord.fromOutputs(FloatBuffer.wrap(new float[] {0.9f, 0.1f}), 1, 2, 1, THRESHOLD,
+                null, 0);
+        ResultRecord copy = roundTrip(record);
+        assertTrue(copy.hasSegmentation());
+        assertFalse(copy.hasLabelMap());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        ResultRecord.read(new DataInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 0, 0, 0, 1})));
+    }
+
+    private static ResultRecord roundTrip(ResultRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        record.write(new DataOutputStream(bytes));
+        return ResultRecord.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
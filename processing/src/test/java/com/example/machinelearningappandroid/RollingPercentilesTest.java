@@ -0,0 +1,38 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RollingPercentilesTest {
+    @Test
+    public void emptyWindowReturnsZero() {
+        assertEquals(0, new RollingPercentiles(10).getPercentile(50));
+    }
+
+    @Test
+    public void percentilesUseNearestRank() {
+        RollingPercentiles percentiles = new RollingPercentiles(100);
+        for (int i = 100; i >= 1; i--) {
+            percentiles.add(i);
+        }
+        assertEquals(50, percentiles.getPercentile(50));
+        assertEquals(95, percentiles.getPercentile(95));
+        assertEquals(99, percentiles.getPercentile(99));
+        assertEquals(100, percentiles.getPercentile(100));
+        assertEquals(1, percentiles.getPercentile(0));
+    }
+
+    @Test
+    public void oldSamplesLeaveTheWindow() {
+        RollingPercentiles percentiles = new RollingPercentiles(4);
+        for (int i = 0; i < 4; i++) {
+            percentiles.add(1000);
+        }
+        for (int i = 0; i < 4; i++) {
+            percentiles.add(1);
+        }
+        assertEquals(4, percentiles.getCount());
+        assertEquals(1, percentiles.getPercentile(99));
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the single pass input writer produces the same tensor as converting a bitmap with
+ * TensorImageUtils.bitmapToFloat32Tensor after rotating and cropping it.
+ */
+public class TensorInputWriterTest {
+    private static final float[] MEAN = new float[] {0.485f, 0.456f, 0.406f};
+    private static final float[] STD = new float[] {0.229f, 0.224f, 0.225f};
+    private static final float TOLERANCE = 1e-5f;
+
+    @Test
+    public void argbMatchesBitmapToFloat32Tensor() {
+        int size = 64;
+        int[] pixels = randomPixels(size, size, 1);
+        float[] expected = referenceTensor(pixels, size, size);
+
+        TensorInputWriter writer = new TensorInputWriter(size, MEAN, STD);
+        FloatBuffer out = FloatBuffer.allocate(writer.getTensorSize());
+        writer.writeArgb(pixels, size, size, 0, out, 0);
+
+        assertArrayEquals(expected, out.array(), TOLERANCE);
+    }
+
+    @Test
+    public void rotationMatchesRotatingFirst() {
+        int width = 48;
+        int height = 32;
+        int[] pixels = randomPixels(width, height, 2);
+        for (int rotation : new int[] {0, 90, 180, 270}) {
+            int[] rotated = rotate(pixels, width, height, rotation);
+            boolean swapAxes = rotation == 90 || rotation == 270;
+            int rotatedWidth = swapAxes ? height : width;
+            int rotatedHeight = swapAxes ? width : height;
+            int side = Math.min(rotatedWidth, rotatedHeight);
+            int[] cropped = crop(rotated, rotatedWidth, (rotatedWidth - side) / 2, (rotatedHeight - side) / 2, side);
+
+            TensorInputWriter writer = new TensorInputWriter(side, MEAN, STD);
+            FloatBuffer out = FloatBuffer.allocate(writer.getTensorSize());
+            writer.writeArgb(pixels, width, height, rotation, out, 0);
+
+            assertArrayEquals("Rotation " + rotation, referenceTensor(cropped, side, side), out.array(), TOLERANCE);
+        }
+    }
+
+    @Test
+    public void downscaleSamplesNearestPixel() {
+        int[] pixels = randomPixels(8, 8, 3);
+        TensorInputWriter writer = new TensorInputWriter(4, MEAN, STD);
+        FloatBuffer out = FloatBuffer.allocate(writer.getTensorSize());
+        writer.writeArgb(pixels, 8, 8, 0, out, 0);
+
+        int[] sampled = new int[16];
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                sampled[y * 4 + x] = pixels[(y * 2) * 8 + x * 2];
+            }
+        }
+        assertArrayEquals(referenceTensor(sampled, 4, 4), out.array(), TOLERANCE);
+    }
+
+    @Test
+    public void yuvMatchesConvertingToArgbFirst() {
+        int width = 40;
+        int height = 24;
+        Random random = new Random(4);
+        //Pad the rows and interleave the chroma planes the way camera frames are laid out
+        int yRowStride = width + 8;
+        int uvRowStride = width + 8;
+        int uvPixelStride = 2;
+        byte[] y = new byte[yRowStride * height];
+        byte[] uv = new byte[uvRowStride * height / 2 + 1];
+        random.nextBytes(y);
+        random.nextBytes(uv);
+        ByteBuffer yPlane = ByteBuffer.wrap(y);
+        ByteBuffer uPlane = ByteBuffer.wrap(uv);
+        ByteBuffer vPlane = ByteBuffer.wrap(uv, 1, uv.length - 1).slice();
+
+        int[] argb = new int[width * height];
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int uvIndex = (row / 2) * uvRowStride + (column / 2) * uvPixelStride;
+                argb[row * width + column] = TensorInputWriter.yuvToRgb(y[row * yRowStride + column] & 0xFF,
+                        uv[uvIndex] & 0xFF, uv[uvIndex + 1] & 0xFF);
+            }
+        }
+
+        TensorInputWriter writer = new TensorInputWriter(16, MEAN, STD);
+        FloatBuffer expected = FloatBuffer.allocate(writer.getTensorSize());
+        FloatBuffer actual = FloatBuffer.allocate(writer.getTensorSize());
+        writer.writeArgb(argb, width, height, 270, expected, 0);
+        writer.writeYuv420(yPlane, yRowStride, 1, uPlane, vPlane, uvRowStride, uvPixelStride,
+                width, height, 270, actual, 0);
+
+        assertArrayEquals(expected.array(), actual.array(), TOLERANCE);
+    }
+
+    @Test
+    public void writesAtOffsetWithoutTouchingRestOfBuffer() {
+        int[] pixels = randomPixels(4, 4, 5);
+        TensorInputWriter writer = new TensorInputWriter(4, MEAN, STD);
+        FloatBuffer out = FloatBuffer.allocate(writer.getTensorSize() * 2);
+        writer.writeArgb(pixels, 4, 4, 0, out, writer.getTensorSize());
+
+        for (int i = 0; i < writer.getTensorSize(); i++) {
+            assertEquals(0f, out.get(i), 0f);
+        }
+        float[] written = new float[writer.getTensorSize()];
+        out.position(writer.getTensorSize());
+        out.get(written);
+        assertArrayEquals(referenceTensor(pixels, 4, 4), written, TOLERANCE);
+    }
+
+    //Same arithmetic as TensorImageUtils.bitmapToFloat32Tensor
+    private static float[] referenceTensor(int[] pixels, int width, int height) {
+        int planeSize = width * height;
+        float[] tensor = new float[3 * planeSize];
+        for (int i = 0; i < planeSize; i++) {
+            int colour = pixels[i];
+            tensor[i] = (((colour >> 16) & 0xff) / 255.0f - MEAN[0]) / STD[0];
+            tensor[planeSize + i] = (((colour >> 8) & 0xff) / 255.0f - MEAN[1]) / STD[1];
+            tensor[2 * planeSize + i] = ((colour & 0xff) / 255.0f - MEAN[2]) / STD[2];
+        }
+        return tensor;
+    }
+
+    private static int[] randomPixels(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+
+    //Rotates clockwise in the same way as Matrix.postRotate followed by createBitmap
+    private static int[] rotate(int[] pixels, int width, int height, int degrees) {
+        int[] rotated = new int[pixels.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int colour = pixels[y * width + x];
+                switch (degrees) {
+                    case 90:
+                        rotated[x * height + (height - 1 - y)] = colour;
+                        break;
+                    case 180:
+                        rotated[(height - 1 - y) * width + (width - 1 - x)] = colour;
+                        break;
+                    case 270:
+                        rotated[(width - 1 - x) * height + y] = colour;
+                        break;
+                    default:
+                        rotated[y * width + x] = colour;
+                }
+            }
+        }
+        return rotated;
+    }
+
+    private static int[] crop(int[] pixels, int width, int left, int top, int side) {
+        int[] cropped = new int[side * side];
+        for (int y = 0; y < side; y++) {
+            System.arraycopy(pixels, (top + y) * width + left, cropped, y * side, side);
+        }
+        return cropped;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TiledSegmenterTest {
+    private static final int TILE = 16;
+    private static final int OVERLAP = 4;
+    private static final int NUM_MASKS = 2;
+    private static final float THRESHOLD = 0.5f;
+
+    @Test
+    public void ownedRegionsCoverEveryPixelOnce() {
+        for (int length = TILE; length < 5 * TILE; length++) {
+            TileGrid grid = new TileGrid(length, TILE, OVERLAP);
+            assertEquals(0, grid.getOwnedStart(0));
+            assertEquals(length, grid.getOwnedEnd(grid.getCount() - 1));
+            for (int i = 0; i < grid.getCount(); i++) {
+                assertTrue(grid.getOrigin(i) + TILE <= length);
+                assertTrue(grid.getOwnedStart(i) >= grid.getOrigin(i));
+                assertTrue(grid.getOwnedEnd(i) <= grid.getOrigin(i) + TILE);
+                if (i > 0) {
+                    assertEquals(grid.getOwnedEnd(i - 1), grid.getOwnedStart(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stitchedMasksMatchTheWholeImage() throws Exception {
+        int width = 53;
+        int height = 37;
+        TiledSegmenter segmenter = new TiledSegmenter(TILE, OVERLAP, NUM_MASKS, THRESHOLD);
+        //A model whose output only depends on where each pixel is in the whole image, so stitching errors show up
+        ResultRecord record = segmenter.run(width, height, (x, y, size) -> {
+            FloatBuffer scores = FloatBuffer.allocate(NUM_MASKS * size * size);
+            for (int mask = 0; mask < NUM_MASKS; mask++) {
+                for (int i = 0; i < size * size; i++) {
+                    scores.put(mask * size * size + i, isMask(mask, x + i % size, y + i / size) ? 1f : 0f);
+                }
+            }
+            return scores;
+        });
+        assertEquals(5 * 3, segmenter.getTilesRun());
+        assertEquals(width, record.getWidth());
+        assertEquals(height, record.getHeight());
+
+        FloatBuffer decoded = FloatBuffer.allocate(NUM_MASKS * width * height);
+        record.decodeSegmentation(decoded);
+        for (int mask = 0; mask < NUM_MASKS; mask++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    float expected = isMask(mask, x, y) ? ResultRecord.MASK_VALUE : ResultRecord.BACKGROUND_VALUE;
+                    assertEquals(mask + " " + x + "," + y, expected, decoded.get((mask * height + y) * width + x), 0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stitchedLabelMapMatchesTheWholeImage() throws Exception {
+        int width = 53;
+        int height = 37;
+        FloatBuffer whole = FloatBuffer.allocate(NUM_MASKS * width * height);
+        for (int mask = 0; mask < NUM_MASKS; mask++) {
+            for (int i = 0; i < width * height; i++) {
+                whole.put(mask * width * height + i, score(mask, i % width, i / width));
+            }
+        }
+        LabelMap expected = LabelMap.compute(whole, NUM_MASKS, width, height, THRESHOLD, new ForkJoinPool(2));
+
+        ResultRecord record = new TiledSegmenter(TILE, OVERLAP, NUM_MASKS, THRESHOLD).run(width, height,
+                (x, y, size) -> {
+                    FloatBuffer scores = FloatBuffer.allocate(NUM_MASKS * size * size);
+                    for (int mask = 0; mask < NUM_MASKS; mask++) {
+                        for (int i = 0; i < size * size; i++) {
+                            scores.put(mask * size * size + i, score(mask, x + i % size, y + i / size));
+                        }
+                    }
+                    return scores;
+                });
+        LabelMap labelMap = record.getLabelMap();
+        assertArrayEquals(expected.getLabels(), labelMap.getLabels());
+        for (int mask = 0; mask < NUM_MASKS; mask++) {
+            assertEquals(expected.getPixelCount(mask), labelMap.getPixelCount(mask));
+            assertEquals(expected.getMeanConfidence(mask), labelMap.getMeanConfidence(mask), 1e-5f);
+        }
+    }
+
+    @Test
+    public void scaledRecordKeepsItsLabelMap() throws Exception {
+        //Class 0 wins the left half of a 4x2 image with 0.9, class 1 the right half with 0.6
+        FloatBuffer scores = FloatBuffer.wrap(new float[] {
+                0.9f, 0.9f, 0, 0,
+                0.9f, 0.9f, 0, 0,
+                0, 0, 0.6f, 0.6f,
+                0, 0, 0.6f, 0.6f
+        });
+        ResultRecord record = ResultRecord.fromOutputs(scores, 2, 4, 2, THRESHOLD, null, 0)
+                .withLabelMap(LabelMap.compute(scores, 2, 4, 2, THRESHOLD, new ForkJoinPool(1)));
+        ResultRecord scaled = record.scaled(2, 1);
+        assertEquals(2, scaled.getWidth());
+        assertEquals(1, scaled.getHeight());
+        FloatBuffer decoded = FloatBuffer.allocate(2 * 2);
+        scaled.decodeSegmentation(decoded);
+        assertArrayEquals(new float[] {1, 0, 0, 1}, decoded.array(), 0f);
+
+        LabelMap labelMap = scaled.getLabelMap();
+        assertArrayEquals(new byte[] {0, 1}, labelMap.getLabels());
+        assertEquals(1, labelMap.getPixelCount(0));
+        assertEquals(0.9f, labelMap.getMeanConfidence(0), 1e-6f);
+        assertEquals(0.6f, labelMap.getMeanConfidence(1), 1e-6f);
+    }
+
+    @Test
+    public void scaledDecodeSamplesNearestPixels() throws Exception {
+        //A 4x4 mask with only the bottom right quarter set, and a second mask that is all set
+        FloatBuffer scores = FloatBuffer.wrap(new float[] {
+                0, 0, 0, 0,
+                0, 0, 0, 0,
+                0, 0, 1, 1,
+                0, 0, 1, 1,
+                1, 1, 1, 1,
+                1, 1, 1, 1,
+                1, 1, 1, 1,
+                1, 1, 1, 1
+        });
+        ResultRecord record = ResultRecord.fromOutputs(scores, 2, 4, 4, THRESHOLD, null, 0);
+        FloatBuffer scaled = FloatBuffer.allocate(2 * 2 * 2);
+        record.decodeSegmentationScaled(scaled, 2, 2);
+        assertArrayEquals(new float[] {0, 0, 0, 1, 1, 1, 1, 1}, scaled.array(), 0f);
+    }
+
+    //Scores that cross each other and the threshold, so every label including the background shows up
+    private static float score(int mask, int x, int y) {
+        return ((x * (mask + 3) + y * (5 - mask)) % 11) / 10f;
+    }
+
+    private static boolean isMask(int mask, int x, int y) {
+        return mask == 0 ? (x * 7 + y * 3) % 5 == 0 : x > y;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.machinelearningappandroid;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VariantSelectorTest {
+    @Test
+    public void fastestVariantWithinToleranceIsChosen() {
+        List<VariantSelector.Measurement> measurements = Arrays.asList(
+                new VariantSelector.Measurement("fp32", 100, 1f),
+                new VariantSelector.Measurement("int8", 40, 0.97f),
+                new VariantSelector.Measurement("int8_256", 20, 0.80f));
+        assertEquals(1, VariantSelector.select(measurements, 0, 0.05f));
+        assertEquals(2, VariantSelector.select(measurements, 0, 0.25f));
+        assertEquals(0, VariantSelector.select(measurements, 0, 0.01f));
+    }
+
+    @Test
+    public void baselineIsKeptWhenItIsFastest() {
+        List<VariantSelector.Measurement> measurements = Arrays.asList(
+                new VariantSelector.Measurement("fp32", 30, 1f),
+                new VariantSelector.Measurement("int8", 45, 0.99f));
+        assertEquals(0, VariantSelector.select(measurements, 0, 0.05f));
+    }
+
+    @Test
+    public void medianOfOddAndEvenCounts() {
+        assertEquals(3f, VariantSelector.median(new long[] {5, 1, 3}), 0f);
+        assertEquals(2.5f, VariantSelector.median(new long[] {4, 1, 3, 2}), 0f);
+    }
+
+    @Test
+    public void maskIouComparesThresholdedMasks() {
+        FloatBuffer baseline = FloatBuffer.wrap(new float[] {1, 1, 0, 0, 0, 0, 0, 0});
+        FloatBuffer candidate = FloatBuffer.wrap(new float[] {0.9f, 0.1f, 0.9f, 0, 0, 0, 0, 0});
+        //First mask overlaps on one of three pixels, second mask is empty in both
+        assertEquals((1 / 3f + 1f) / 2, OutputAgreement.meanMaskIou(candidate, baseline, 2, 4, 0.8f), 1e-6f);
+    }
+
+    @Test
+    public void attributeAgreementCountsMatchingDecisions() {
+        FloatBuffer candidate = FloatBuffer.wrap(new float[] {0.9f, 0.2f, 0.6f, 0.4f});
+        assertEquals(0.5f, OutputAgreement.attributeAgreement(candidate, new float[] {0.8f, 0.1f, 0.3f, 0.7f}, 0.5f), 0f);
+    }
+}